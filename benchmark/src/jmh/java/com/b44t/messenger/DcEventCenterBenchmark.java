@@ -0,0 +1,78 @@
+package com.b44t.messenger;
+
+import android.os.Looper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The delivery of a burst of events, as emitted by the core while fetching messages.
+ *
+ * For the "main" caller, the events are delivered directly;
+ * for the "background" caller, they go through the main queue where duplicates are coalesced,
+ * and the queue is drained at the end of each burst as the main loop would do.
+ * With "chatScoped", each observer is added for one chat, as an open conversation is.
+ */
+@State(Scope.Thread)
+public class DcEventCenterBenchmark {
+
+  private static final int EVENT_MSGS_CHANGED = 2000; // DcContext.DC_EVENT_MSGS_CHANGED
+  private static final int EVENT_INCOMING_MSG = 2005; // DcContext.DC_EVENT_INCOMING_MSG
+  private static final int BURST              = 64;
+  private static final int CHATS              = 4;
+
+  @Param({"main", "background"})
+  public String caller;
+
+  @Param({"1", "8"})
+  public int observers;
+
+  @Param({"false", "true"})
+  public boolean chatScoped;
+
+  private final Long[] chatIds = new Long[CHATS];
+
+  private DcEventCenter eventCenter;
+  private long          handled;
+
+  @Setup
+  public void setUp() throws InterruptedException {
+    if (caller.equals("main")) {
+      Looper.prepareMainLooper();
+    } else {
+      Thread mainThread = new Thread(Looper::prepareMainLooper);
+      mainThread.start();
+      mainThread.join();
+    }
+
+    for (int i = 0; i < CHATS; i++) {
+      chatIds[i] = 1000L + i;
+    }
+
+    eventCenter = new DcEventCenter();
+    for (int i = 0; i < observers; i++) {
+      DcEventCenter.DcEventDelegate observer = (eventId, data1, data2) -> handled++;
+      if (chatScoped) {
+        eventCenter.addChatObserver(EVENT_MSGS_CHANGED, chatIds[i % CHATS].intValue(), observer);
+        eventCenter.addChatObserver(EVENT_INCOMING_MSG, chatIds[i % CHATS].intValue(), observer);
+      } else {
+        eventCenter.addObserver(EVENT_MSGS_CHANGED, observer);
+        eventCenter.addObserver(EVENT_INCOMING_MSG, observer);
+      }
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BURST)
+  public long sendBurst() {
+    for (int i = 0; i < BURST; i++) {
+      eventCenter.sendToObservers(i % 2 == 0 ? EVENT_MSGS_CHANGED : EVENT_INCOMING_MSG, chatIds[i % CHATS], 0);
+    }
+    Looper.getMainLooper().runPending();
+    return handled;
+  }
+}
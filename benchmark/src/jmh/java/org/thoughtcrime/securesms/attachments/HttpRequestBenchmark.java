@@ -0,0 +1,39 @@
+package org.thoughtcrime.securesms.attachments;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The parsing of a request as sent by the media player while seeking in a video.
+ */
+@State(Scope.Benchmark)
+public class HttpRequestBenchmark {
+
+  private static final String HEADER = "GET /a1b2c3d4e5f6/video%20clip.mp4?nocache=1 HTTP/1.1\r\n" +
+                                       "User-Agent: stagefright/1.2 (Linux;Android 9)\r\n" +
+                                       "Host: 127.0.0.1:38291\r\n" +
+                                       "Connection: Keep-Alive\r\n" +
+                                       "Accept-Encoding: gzip\r\n" +
+                                       "Range: bytes=1048576-\r\n" +
+                                       "\r\n";
+
+  private final byte[] buffer = HEADER.getBytes(StandardCharsets.ISO_8859_1);
+
+  @Benchmark
+  public int findHeaderEnd() {
+    return HttpRequest.findHeaderEnd(buffer, buffer.length);
+  }
+
+  @Benchmark
+  public HttpRequest parse() {
+    return HttpRequest.parse(HEADER);
+  }
+
+  @Benchmark
+  public long[] parseRange() {
+    return HttpRequest.parseRange("bytes=1048576-", 25_000_000L);
+  }
+}
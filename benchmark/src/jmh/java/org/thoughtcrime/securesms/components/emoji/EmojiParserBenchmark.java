@@ -0,0 +1,61 @@
+package org.thoughtcrime.securesms.components.emoji;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.thoughtcrime.securesms.components.emoji.parsing.EmojiDrawInfo;
+import org.thoughtcrime.securesms.components.emoji.parsing.EmojiPageBitmap;
+import org.thoughtcrime.securesms.components.emoji.parsing.EmojiParser;
+import org.thoughtcrime.securesms.components.emoji.parsing.EmojiTree;
+import org.thoughtcrime.securesms.util.Pair;
+
+/**
+ * The emoji parsing done for every message text that is bound,
+ * with the emoji tree built from all pages as in {@link EmojiProvider}.
+ */
+@State(Scope.Benchmark)
+public class EmojiParserBenchmark {
+
+  private static final String PLAIN      = "Hi, are we still meeting at the station tomorrow? I can bring the documents we talked about on Monday.";
+  private static final String MIXED      = "Hi 😀 are we still meeting tomorrow? 👍🏽 I can bring the documents 📄📄 see you ❤️";
+  private static final String EMOJI_ONLY = "😂😂👍🏻🎉";
+
+  @Param({"plain", "mixed", "emojiOnly"})
+  public String text;
+
+  private EmojiParser parser;
+  private String      input;
+
+  @Setup
+  public void setUp() {
+    EmojiTree       emojiTree  = new EmojiTree();
+    EmojiPageBitmap pageBitmap = new EmojiPageBitmap();
+
+    for (EmojiPageModel page : EmojiPages.PAGES) {
+      if (page.hasSpriteMap()) {
+        for (int i = 0; i < page.getEmoji().length; i++) {
+          emojiTree.add(page.getEmoji()[i], new EmojiDrawInfo(pageBitmap, i));
+        }
+      }
+    }
+
+    for (Pair<String, String> obsolete : EmojiPages.OBSOLETE) {
+      emojiTree.add(obsolete.first(), emojiTree.getEmoji(obsolete.second(), 0, obsolete.second().length()));
+    }
+
+    parser = new EmojiParser(emojiTree);
+
+    switch (text) {
+      case "plain": input = PLAIN;      break;
+      case "mixed": input = MIXED;      break;
+      default:      input = EMOJI_ONLY; break;
+    }
+  }
+
+  @Benchmark
+  public EmojiParser.CandidateList findCandidates() {
+    return parser.findCandidates(input);
+  }
+}
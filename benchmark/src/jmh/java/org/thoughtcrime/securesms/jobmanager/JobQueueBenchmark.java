@@ -0,0 +1,62 @@
+package org.thoughtcrime.securesms.jobmanager;
+
+import androidx.annotation.NonNull;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.thoughtcrime.securesms.jobmanager.requirements.Requirement;
+
+/**
+ * Adding a job and taking it for running, while other jobs wait for their requirements,
+ * eg. for the network to come back.
+ */
+@State(Scope.Thread)
+public class JobQueueBenchmark {
+
+  private static final String GROUP_ID = "benchmark";
+
+  @Param({"0", "10", "100"})
+  public int waiting;
+
+  private JobQueue jobQueue;
+  private Job      readyJob;
+
+  @Setup
+  public void setUp() {
+    jobQueue = new JobQueue();
+    for (int i = 0; i < waiting; i++) {
+      jobQueue.add(new BenchmarkJob(JobParameters.newBuilder()
+                                                 .withRequirement(new UnmetRequirement())
+                                                 .withGroupId("waiting" + i)
+                                                 .create()));
+    }
+    readyJob = new BenchmarkJob(JobParameters.newBuilder().withGroupId(GROUP_ID).create());
+  }
+
+  @Benchmark
+  public Job addAndGetNext() {
+    jobQueue.add(readyJob);
+    Job next = jobQueue.getNext();
+    jobQueue.setGroupIdAvailable(next.getGroupId());
+    return next;
+  }
+
+  private static class BenchmarkJob extends Job {
+    BenchmarkJob(JobParameters parameters) {
+      super(parameters);
+    }
+
+    @Override public void onAdded() {}
+    @Override protected void onRun() {}
+    @Override public boolean onShouldRetry(Exception exception) { return false; }
+    @Override public void onCanceled() {}
+  }
+
+  private static class UnmetRequirement implements Requirement {
+    @Override public boolean isPresent(@NonNull Job job) { return false; }
+    @Override public void onRetry(@NonNull Job job) {}
+  }
+}
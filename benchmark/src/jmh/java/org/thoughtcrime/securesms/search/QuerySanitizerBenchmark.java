@@ -0,0 +1,21 @@
+package org.thoughtcrime.securesms.search;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The sanitizing done for every key typed into the search field.
+ */
+@State(Scope.Benchmark)
+public class QuerySanitizerBenchmark {
+
+  @Param({"alice", "alice (work) - bob's *notes*", "the quick brown fox jumps over the lazy dog again and again"})
+  public String query;
+
+  @Benchmark
+  public String sanitize() {
+    return QuerySanitizer.sanitize(query);
+  }
+}
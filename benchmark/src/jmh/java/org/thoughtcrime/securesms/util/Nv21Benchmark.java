@@ -0,0 +1,42 @@
+package org.thoughtcrime.securesms.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * The rotation of a camera preview frame; the JPEG encoding that follows
+ * in BitmapUtil.createFromNV21() is native and not part of this.
+ */
+@State(Scope.Benchmark)
+public class Nv21Benchmark {
+
+  private static final int WIDTH  = 1280;
+  private static final int HEIGHT = 720;
+
+  @Param({"90", "180", "270"})
+  public int rotation;
+
+  private byte[] frame;
+
+  @Setup
+  public void setUp() {
+    frame = new byte[WIDTH * HEIGHT * 3 / 2];
+    new Random(42).nextBytes(frame);
+  }
+
+  @Benchmark
+  public byte[] rotate() throws IOException {
+    return Nv21Util.rotate(frame, WIDTH, HEIGHT, rotation, false);
+  }
+
+  @Benchmark
+  public byte[] rotateFlipped() throws IOException {
+    return Nv21Util.rotate(frame, WIDTH, HEIGHT, rotation, true);
+  }
+}
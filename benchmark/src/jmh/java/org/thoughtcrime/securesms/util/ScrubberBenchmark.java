@@ -0,0 +1,58 @@
+package org.thoughtcrime.securesms.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
+
+/**
+ * The scrubbing of the log before it is shown or shared;
+ * most lines do not contain anything to scrub.
+ */
+@State(Scope.Benchmark)
+public class ScrubberBenchmark {
+
+  private static final String LINE       = "10-18 12:00:01.123  1234  5678 I DeltaChat: src/imap.rs:1234: IMAP IDLE has data.";
+  private static final String PHONE_LINE = "10-18 12:00:01.123  1234  5678 I DeltaChat: contact +4915112345678 changed.";
+  private static final int    LOG_LINES  = 20_000;
+
+  private final Scrubber scrubber = new Scrubber();
+  private       String   log;
+
+  @Setup
+  public void setUp() {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < LOG_LINES; i++) {
+      builder.append(i % 100 == 0 ? PHONE_LINE : LINE).append('\n');
+    }
+    log = builder.toString();
+  }
+
+  @Benchmark
+  public String scrubLine() {
+    return scrubber.scrub(LINE);
+  }
+
+  @Benchmark
+  public String scrubPhoneLine() {
+    return scrubber.scrub(PHONE_LINE);
+  }
+
+  @Benchmark
+  public int scrubLog() throws IOException {
+    return scrubber.scrub(new BufferedReader(new StringReader(log)), new NullWriter());
+  }
+
+  private static class NullWriter extends Writer {
+    @Override public void write(char[] buf, int off, int len) {}
+    @Override public void write(String str) {}
+    @Override public void write(int c) {}
+    @Override public void flush() {}
+    @Override public void close() {}
+  }
+}
@@ -0,0 +1,132 @@
+package org.thoughtcrime.securesms.util.collections;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.thoughtcrime.securesms.util.LRUCache;
+
+import java.lang.ref.SoftReference;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compares the primitive collections with the boxed ones they replaced,
+ * using the access patterns of the message cache, the chat list selection and the map data.
+ * The allocation per operation is reported by the gc profiler as gc.alloc.rate.norm.
+ */
+@State(Scope.Thread)
+public class PrimitiveCollectionsBenchmark {
+
+  private static final int OPERATIONS = 1024;
+
+  // message ids are far above the range of the boxed Integer cache
+  private static final int ID_BASE  = 10_000;
+  private static final int ID_RANGE = 1000;
+
+  private final int[]                 ids   = new int[OPERATIONS];
+  private final SoftReference<Object> value = new SoftReference<>(new Object());
+
+  private Map<Integer, SoftReference<Object>> lruCache;
+  private IntLruCache<SoftReference<Object>>  intLruCache;
+  private Set<Long>                           hashSet;
+  private IntSet                              intSet;
+  private ConcurrentHashMap<Integer, Object>  concurrentHashMap;
+  private IntObjectMap<Object>                intObjectMap;
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(42);
+    int    id     = ID_BASE;
+    for (int i = 0; i < ids.length; i++) {
+      // mostly scrolling through neighbouring messages, with some jumps
+      id = random.nextInt(50) == 0 ? ID_BASE + random.nextInt(ID_RANGE)
+                                   : ID_BASE + Math.floorMod(id - ID_BASE + random.nextInt(9) - 4, ID_RANGE);
+      ids[i] = id;
+    }
+
+    lruCache          = Collections.synchronizedMap(new LRUCache<>(120));
+    intLruCache       = new IntLruCache<>(120);
+    hashSet           = Collections.synchronizedSet(new HashSet<>());
+    intSet            = new IntSet();
+    concurrentHashMap = new ConcurrentHashMap<>();
+    intObjectMap      = new IntObjectMap<>();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(OPERATIONS)
+  public int messageCacheLRUCache() {
+    int hits = 0;
+    for (int msgId : ids) {
+      if (lruCache.get(msgId) != null) hits++;
+      else lruCache.put(msgId, value);
+    }
+    return hits;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(OPERATIONS)
+  public int messageCacheIntLruCache() {
+    int hits = 0;
+    for (int msgId : ids) {
+      synchronized (intLruCache) {
+        if (intLruCache.get(msgId) != null) hits++;
+        else intLruCache.put(msgId, value);
+      }
+    }
+    return hits;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(OPERATIONS)
+  public int selectionHashSet() {
+    int selected = 0;
+    for (int chatId : ids) {
+      if (!hashSet.remove((long) chatId)) hashSet.add((long) chatId);
+      if (hashSet.contains((long) chatId + 1)) selected++;
+    }
+    return selected;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(OPERATIONS)
+  public int selectionIntSet() {
+    int selected = 0;
+    for (int chatId : ids) {
+      if (!intSet.remove(chatId)) intSet.add(chatId);
+      if (intSet.contains(chatId + 1)) selected++;
+    }
+    return selected;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(OPERATIONS)
+  public int byContactConcurrentHashMap() {
+    int found = 0;
+    for (int contactId : ids) {
+      if (concurrentHashMap.get(contactId) != null) found++;
+      else concurrentHashMap.put(contactId, value);
+      if (contactId % 7 == 0) concurrentHashMap.remove(contactId);
+    }
+    return found;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(OPERATIONS)
+  public int byContactIntObjectMap() {
+    int found = 0;
+    for (int contactId : ids) {
+      synchronized (intObjectMap) {
+        if (intObjectMap.get(contactId) != null) found++;
+        else intObjectMap.put(contactId, value);
+        if (contactId % 7 == 0) intObjectMap.remove(contactId);
+      }
+    }
+    return found;
+  }
+}
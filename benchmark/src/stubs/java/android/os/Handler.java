@@ -0,0 +1,29 @@
+package android.os;
+
+public class Handler {
+
+  private final Looper looper;
+
+  public Handler() {
+    this(Looper.getMainLooper());
+  }
+
+  public Handler(Looper looper) {
+    this.looper = looper;
+  }
+
+  public void handleMessage(Message msg) {
+  }
+
+  public final boolean sendEmptyMessage(int what) {
+    Message message = new Message();
+    message.what = what;
+    looper.enqueue(() -> handleMessage(message));
+    return true;
+  }
+
+  public final boolean post(Runnable runnable) {
+    looper.enqueue(runnable);
+    return true;
+  }
+}
@@ -0,0 +1,60 @@
+package android.os;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * A looper without a thread of its own: the thread that calls {@link #prepareMainLooper()} is the
+ * main thread and runs the queued messages by calling {@link #runPending()},
+ * like one iteration of the real main loop.
+ */
+public final class Looper {
+
+  private static volatile Looper mainLooper;
+
+  private final Thread          thread = Thread.currentThread();
+  private final Queue<Runnable> queue  = new ArrayDeque<>();
+
+  private Looper() {}
+
+  public static synchronized void prepareMainLooper() {
+    mainLooper = new Looper();
+  }
+
+  public static Looper getMainLooper() {
+    if (mainLooper == null) {
+      prepareMainLooper();
+    }
+    return mainLooper;
+  }
+
+  public static Looper myLooper() {
+    Looper looper = getMainLooper();
+    return looper.thread == Thread.currentThread() ? looper : null;
+  }
+
+  public Thread getThread() {
+    return thread;
+  }
+
+  synchronized void enqueue(Runnable runnable) {
+    queue.add(runnable);
+  }
+
+  /**
+   * @return the number of messages that were handled.
+   */
+  public int runPending() {
+    int count = 0;
+    Runnable runnable;
+    while ((runnable = poll()) != null) {
+      runnable.run();
+      count++;
+    }
+    return count;
+  }
+
+  private synchronized Runnable poll() {
+    return queue.poll();
+  }
+}
@@ -0,0 +1,7 @@
+package android.os;
+
+public final class PowerManager {
+
+  public final class WakeLock {
+  }
+}
@@ -0,0 +1,19 @@
+package org.thoughtcrime.securesms;
+
+/**
+ * The resource ids referred to by the benchmarked classes, the values are never resolved.
+ */
+public final class R {
+
+  public static final class attr {
+    public static final int emoji_category_people    = 1;
+    public static final int emoji_category_nature    = 2;
+    public static final int emoji_category_foods     = 3;
+    public static final int emoji_category_activity  = 4;
+    public static final int emoji_category_places    = 5;
+    public static final int emoji_category_objects   = 6;
+    public static final int emoji_category_symbol    = 7;
+    public static final int emoji_category_flags     = 8;
+    public static final int emoji_category_emoticons = 9;
+  }
+}
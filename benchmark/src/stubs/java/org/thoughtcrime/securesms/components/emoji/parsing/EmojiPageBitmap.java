@@ -0,0 +1,7 @@
+package org.thoughtcrime.securesms.components.emoji.parsing;
+
+/**
+ * The parser only passes the page through, the bitmap itself is never loaded in the benchmarks.
+ */
+public class EmojiPageBitmap {
+}
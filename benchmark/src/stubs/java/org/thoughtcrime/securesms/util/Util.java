@@ -0,0 +1,24 @@
+package org.thoughtcrime.securesms.util;
+
+import android.os.Looper;
+
+/**
+ * The part of the app's Util used by the benchmarked classes.
+ * Background work runs at once on the calling thread, so that it is part of the measurement.
+ */
+public final class Util {
+
+  private Util() {}
+
+  public static void runOnBackground(final Runnable runnable) {
+    runnable.run();
+  }
+
+  public static boolean isMainThread() {
+    return Looper.myLooper() == Looper.getMainLooper();
+  }
+
+  public static boolean equals(Object a, Object b) {
+    return a == b || (a != null && a.equals(b));
+  }
+}
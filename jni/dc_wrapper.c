@@ -596,12 +596,57 @@ JNIEXPORT jint Java_com_b44t_messenger_DcContext_getFreshMsgCount(JNIEnv *env, j
 }
 
 
+JNIEXPORT jintArray Java_com_b44t_messenger_DcContext_getFreshMsgCounts(JNIEnv *env, jobject obj, jintArray chat_ids)
+{
+	/* same as getFreshMsgCount() for several chats at once */
+	int i, chat_ids_cnt = 0;
+	uint32_t* chat_ids_ptr = jintArray2uint32Pointer(env, chat_ids, &chat_ids_cnt);
+	jintArray ret = (*env)->NewIntArray(env, chat_ids_cnt);
+	if (ret && chat_ids_cnt) {
+		dc_context_t* context = get_dc_context(env, obj);
+		jint* temp = calloc(chat_ids_cnt, sizeof(jint));
+		if (temp) {
+			for (i = 0; i < chat_ids_cnt; i++) {
+				temp[i] = dc_get_fresh_msg_cnt(context, chat_ids_ptr[i]);
+			}
+			(*env)->SetIntArrayRegion(env, ret, 0, chat_ids_cnt, temp);
+			free(temp);
+		}
+	}
+	free(chat_ids_ptr);
+	return ret;
+}
+
+
 JNIEXPORT jlong Java_com_b44t_messenger_DcContext_getMsgCPtr(JNIEnv *env, jobject obj, jint id)
 {
 	return (jlong)dc_get_msg(get_dc_context(env, obj), id);
 }
 
 
+JNIEXPORT jlongArray Java_com_b44t_messenger_DcContext_getMsgCPtrs(JNIEnv *env, jobject obj, jintArray msg_ids)
+{
+	/* fetches several messages with a single JNI call;
+	the returned pointers are owned by the caller and are wrapped into DcMsg objects there. */
+	int i, msg_ids_cnt = 0;
+	uint32_t* msg_ids_ptr = jintArray2uint32Pointer(env, msg_ids, &msg_ids_cnt);
+	jlongArray ret = (*env)->NewLongArray(env, msg_ids_cnt);
+	if (ret && msg_ids_cnt) {
+		dc_context_t* context = get_dc_context(env, obj);
+		jlong* ptrs = calloc(msg_ids_cnt, sizeof(jlong));
+		if (ptrs) {
+			for (i = 0; i < msg_ids_cnt; i++) {
+				ptrs[i] = (jlong)dc_get_msg(context, msg_ids_ptr[i]);
+			}
+			(*env)->SetLongArrayRegion(env, ret, 0, msg_ids_cnt, ptrs);
+			free(ptrs);
+		}
+	}
+	free(msg_ids_ptr);
+	return ret;
+}
+
+
 JNIEXPORT jlong Java_com_b44t_messenger_DcContext_createMsgCPtr(JNIEnv *env, jobject obj, jint viewtype)
 {
 	return (jlong)dc_msg_new(get_dc_context(env, obj), viewtype);
@@ -867,12 +912,6 @@ static dc_array_t* get_dc_array(JNIEnv *env, jobject obj)
 }
 
 
-JNIEXPORT void Java_com_b44t_messenger_DcArray_unrefArrayCPtr(JNIEnv *env, jobject obj)
-{
-	dc_array_unref(get_dc_array(env, obj));
-}
-
-
 JNIEXPORT jint Java_com_b44t_messenger_DcArray_getCnt(JNIEnv *env, jobject obj)
 {
 	return dc_array_get_cnt(get_dc_array(env, obj));
@@ -952,12 +991,6 @@ static dc_chatlist_t* get_dc_chatlist(JNIEnv *env, jobject obj)
 }
 
 
-JNIEXPORT void Java_com_b44t_messenger_DcChatlist_unrefChatlistCPtr(JNIEnv *env, jobject obj)
-{
-	dc_chatlist_unref(get_dc_chatlist(env, obj));
-}
-
-
 JNIEXPORT jint Java_com_b44t_messenger_DcChatlist_getCnt(JNIEnv *env, jobject obj)
 {
 	return dc_chatlist_get_cnt(get_dc_chatlist(env, obj));
@@ -1015,12 +1048,6 @@ static dc_chat_t* get_dc_chat(JNIEnv *env, jobject obj)
 }
 
 
-JNIEXPORT void Java_com_b44t_messenger_DcChat_unrefChatCPtr(JNIEnv *env, jobject obj)
-{
-	dc_chat_unref(get_dc_chat(env, obj));
-}
-
-
 JNIEXPORT jint Java_com_b44t_messenger_DcChat_getId(JNIEnv *env, jobject obj)
 {
 	return dc_chat_get_id(get_dc_chat(env, obj));
@@ -1120,6 +1147,52 @@ JNIEXPORT jintArray Java_com_b44t_messenger_DcContext_getChatMsgs(JNIEnv *env, j
 }
 
 
+JNIEXPORT jintArray Java_com_b44t_messenger_DcContext_getChatMsgsTail(JNIEnv *env, jobject obj, jint chat_id, jint flags, jint marker1before, jint max_cnt)
+{
+	/* like getChatMsgs(), however, only the newest max_cnt ids are copied to Java. */
+	dc_array_t* ca = dc_get_chat_msgs(get_dc_context(env, obj), chat_id, flags, marker1before);
+	int icnt = ca? dc_array_get_cnt(ca) : 0;
+	int start = (max_cnt > 0 && icnt > max_cnt)? icnt - max_cnt : 0;
+	jintArray ret = (*env)->NewIntArray(env, icnt - start);
+	if (ret && icnt - start > 0) {
+		const uint32_t* ca_data = dc_array_get_raw(ca);
+		jint* temp = calloc(icnt - start, sizeof(jint));
+		if (temp) {
+			int i;
+			for (i = start; i < icnt; i++) {
+				temp[i - start] = (jint)ca_data[i];
+			}
+			(*env)->SetIntArrayRegion(env, ret, 0, icnt - start, temp);
+			free(temp);
+		}
+	}
+	dc_array_unref(ca);
+	return ret;
+}
+
+
+JNIEXPORT jint Java_com_b44t_messenger_DcContext_findLastSeenIndex(JNIEnv *env, jobject obj, jintArray msg_ids, jlong timestamp)
+{
+	/* walks msg_ids from the newest (last) to the oldest message
+	and returns the index of the first message that is outgoing or not newer than timestamp, -1 if there is none.
+	this is done natively to avoid creating a DcMsg object for each message. */
+	int i, msg_ids_cnt = 0, ret = -1;
+	uint32_t* msg_ids_ptr = jintArray2uint32Pointer(env, msg_ids, &msg_ids_cnt);
+	dc_context_t* context = get_dc_context(env, obj);
+	for (i = msg_ids_cnt - 1; i >= 0; i--) {
+		dc_msg_t* msg = dc_get_msg(context, msg_ids_ptr[i]);
+		int seen = dc_msg_get_from_id(msg)==DC_CONTACT_ID_SELF || JTIMESTAMP(dc_msg_get_timestamp(msg)) <= timestamp;
+		dc_msg_unref(msg);
+		if (seen) {
+			ret = i;
+			break;
+		}
+	}
+	free(msg_ids_ptr);
+	return ret;
+}
+
+
 JNIEXPORT jintArray Java_com_b44t_messenger_DcContext_searchMsgs(JNIEnv *env, jobject obj, jint chat_id, jstring query)
 {
 	CHAR_REF(query);
@@ -1164,12 +1237,6 @@ static dc_msg_t* get_dc_msg(JNIEnv *env, jobject obj)
 }
 
 
-JNIEXPORT void Java_com_b44t_messenger_DcMsg_unrefMsgCPtr(JNIEnv *env, jobject obj)
-{
-	dc_msg_unref(get_dc_msg(env, obj));
-}
-
-
 JNIEXPORT jint Java_com_b44t_messenger_DcMsg_getId(JNIEnv *env, jobject obj)
 {
 	return dc_msg_get_id(get_dc_msg(env, obj));
@@ -1402,12 +1469,6 @@ static dc_contact_t* get_dc_contact(JNIEnv *env, jobject obj)
 }
 
 
-JNIEXPORT void Java_com_b44t_messenger_DcContact_unrefContactCPtr(JNIEnv *env, jobject obj)
-{
-	dc_contact_unref(get_dc_contact(env, obj));
-}
-
-
 JNIEXPORT jint Java_com_b44t_messenger_DcContact_getId(JNIEnv *env, jobject obj)
 {
 	return dc_contact_get_id(get_dc_contact(env, obj));
@@ -1547,9 +1608,22 @@ JNIEXPORT jint Java_com_b44t_messenger_DcLot_getId(JNIEnv *env, jobject obj)
 }
 
 
-JNIEXPORT void Java_com_b44t_messenger_DcLot_unrefLotCPtr(JNIEnv *env, jobject obj)
+/*******************************************************************************
+ * DcCleaner
+ ******************************************************************************/
+
+
+JNIEXPORT void Java_com_b44t_messenger_DcCleaner_unrefCPtr(JNIEnv *env, jclass cls, jint type, jlong cptr)
 {
-	dc_lot_unref(get_dc_lot(env, obj));
+	/* the type constants are defined in DcCleaner.java */
+	switch (type) {
+		case 0: dc_msg_unref((dc_msg_t*)cptr); break;
+		case 1: dc_chat_unref((dc_chat_t*)cptr); break;
+		case 2: dc_chatlist_unref((dc_chatlist_t*)cptr); break;
+		case 3: dc_lot_unref((dc_lot_t*)cptr); break;
+		case 4: dc_contact_unref((dc_contact_t*)cptr); break;
+		case 5: dc_array_unref((dc_array_t*)cptr); break;
+	}
 }
 
 
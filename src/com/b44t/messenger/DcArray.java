@@ -1,15 +1,18 @@
 package com.b44t.messenger;
 
-public class DcArray {
+public class DcArray implements AutoCloseable {
 
     public DcArray(long arrayCPtr) {
         this.arrayCPtr = arrayCPtr;
+        cleanerRef = DcCleaner.register(this, DcCleaner.TYPE_ARRAY, arrayCPtr);
     }
 
-    @Override protected void finalize() throws Throwable {
-        super.finalize();
-        unrefArrayCPtr();
+    @Override
+    public void close() {
         arrayCPtr = 0;
+        if (cleanerRef != null) {
+            cleanerRef.clean();
+        }
     }
 
     public native int       getCnt       ();
@@ -24,5 +27,5 @@ public class DcArray {
 
     // working with raw c-data
     private long        arrayCPtr;    // CAVE: the name is referenced in the JNI
-    private native void unrefArrayCPtr();
+    private DcCleaner.Ref cleanerRef;
 }
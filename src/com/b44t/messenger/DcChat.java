@@ -1,6 +1,6 @@
 package com.b44t.messenger;
 
-public class DcChat {
+public class DcChat implements AutoCloseable {
 
     public static final int DC_CHAT_NO_CHAT          = 0;
     public final static int DC_CHAT_ID_DEADDROP      = 1;
@@ -11,12 +11,15 @@ public class DcChat {
 
     public DcChat(long chatCPtr) {
         this.chatCPtr = chatCPtr;
+        cleanerRef = DcCleaner.register(this, DcCleaner.TYPE_CHAT, chatCPtr);
     }
 
-    @Override protected void finalize() throws Throwable {
-        super.finalize();
-        unrefChatCPtr();
+    @Override
+    public void close() {
         chatCPtr = 0;
+        if (cleanerRef != null) {
+            cleanerRef.clean();
+        }
     }
 
     public native int     getId             ();
@@ -34,6 +37,6 @@ public class DcChat {
 
     // working with raw c-data
     private long        chatCPtr;    // CAVE: the name is referenced in the JNI
-    private native void unrefChatCPtr();
+    private DcCleaner.Ref cleanerRef;
     public long         getChatCPtr  () { return chatCPtr; }
 }
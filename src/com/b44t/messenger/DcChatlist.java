@@ -3,16 +3,19 @@ package com.b44t.messenger;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-public class DcChatlist {
+public class DcChatlist implements AutoCloseable {
 
     public DcChatlist(long chatlistCPtr) {
         this.chatlistCPtr = chatlistCPtr;
+        cleanerRef = DcCleaner.register(this, DcCleaner.TYPE_CHATLIST, chatlistCPtr);
     }
 
-    @Override protected void finalize() throws Throwable {
-        super.finalize();
-        unrefChatlistCPtr();
+    @Override
+    public void close() {
         chatlistCPtr = 0;
+        if (cleanerRef != null) {
+            cleanerRef.clean();
+        }
     }
 
     public native int       getCnt    ();
@@ -38,7 +41,7 @@ public class DcChatlist {
 
     // working with raw c-data
     private long        chatlistCPtr;    // CAVE: the name is referenced in the JNI
-    private native void unrefChatlistCPtr();
+    private DcCleaner.Ref cleanerRef;
     private native long getChatCPtr      (int index);
     private native long getMsgCPtr       (int index);
     private native long getSummaryCPtr   (int index, long chatCPtr);
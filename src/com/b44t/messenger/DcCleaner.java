@@ -0,0 +1,108 @@
+package com.b44t.messenger;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Frees the C-objects wrapped by DcMsg, DcChat and the other wrappers.
+ *
+ * The wrappers free their C-objects on close();
+ * wrappers that are not closed explicitly are freed by a background thread
+ * as soon as the garbage collector has found them unreachable.
+ * Other than finalize(), this does not need a separate GC cycle and does not block the finalizer thread.
+ */
+public class DcCleaner {
+
+    public final static int TYPE_MSG      = 0;
+    public final static int TYPE_CHAT     = 1;
+    public final static int TYPE_CHATLIST = 2;
+    public final static int TYPE_LOT      = 3;
+    public final static int TYPE_CONTACT  = 4;
+    public final static int TYPE_ARRAY    = 5;
+    private final static String[] TYPE_NAMES = {"msg", "chat", "chatlist", "lot", "contact", "array"};
+
+    private final static ReferenceQueue<Object> queue = new ReferenceQueue<>();
+
+    // phantom references must stay reachable themselves until they are enqueued
+    private final static Set<Ref> refs = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    private final static AtomicInteger[] liveCounts = new AtomicInteger[TYPE_NAMES.length];
+
+    static {
+        for (int i = 0; i < liveCounts.length; i++) {
+            liveCounts[i] = new AtomicInteger();
+        }
+
+        Thread thread = new Thread(() -> {
+            while (true) {
+                try {
+                    ((Ref) queue.remove()).clean();
+                } catch (InterruptedException e) {
+                    // continue waiting
+                }
+            }
+        }, "DcCleaner");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return a reference that frees cPtr when clean() is called or when owner is garbage collected,
+     * null if there is nothing to free.
+     */
+    static Ref register(Object owner, int type, long cPtr) {
+        if (cPtr == 0) {
+            return null;
+        }
+        Ref ref = new Ref(owner, type, cPtr);
+        refs.add(ref);
+        liveCounts[type].incrementAndGet();
+        return ref;
+    }
+
+    public static int getLiveCount(int type) {
+        return liveCounts[type].get();
+    }
+
+    public static String getLiveCountsAsString() {
+        StringBuilder builder = new StringBuilder();
+        for (int type = 0; type < TYPE_NAMES.length; type++) {
+            if (type > 0) {
+                builder.append(", ");
+            }
+            builder.append(TYPE_NAMES[type]).append(": ").append(getLiveCount(type));
+        }
+        return builder.toString();
+    }
+
+    static class Ref extends PhantomReference<Object> {
+        private final int type;
+        private long      cPtr;
+
+        private Ref(Object owner, int type, long cPtr) {
+            super(owner, queue);
+            this.type = type;
+            this.cPtr = cPtr;
+        }
+
+        void clean() {
+            long toFree;
+            synchronized (this) {
+                toFree = cPtr;
+                cPtr = 0;
+            }
+            if (toFree != 0) {
+                clear();
+                refs.remove(this);
+                liveCounts[type].decrementAndGet();
+                unrefCPtr(type, toFree);
+            }
+        }
+    }
+
+    private native static void unrefCPtr(int type, long cPtr);
+}
@@ -1,6 +1,6 @@
 package com.b44t.messenger;
 
-public class DcContact {
+public class DcContact implements AutoCloseable {
 
     public final static int DC_CONTACT_ID_SELF               = 1;
     public final static int DC_CONTACT_ID_DEVICE             = 2;
@@ -13,13 +13,15 @@ public class DcContact {
 
     public DcContact(long contactCPtr) {
         this.contactCPtr = contactCPtr;
+        cleanerRef = DcCleaner.register(this, DcCleaner.TYPE_CONTACT, contactCPtr);
     }
 
     @Override
-    protected void finalize() throws Throwable {
-        super.finalize();
-        unrefContactCPtr();
+    public void close() {
         contactCPtr = 0;
+        if (cleanerRef != null) {
+            cleanerRef.clean();
+        }
     }
 
 
@@ -51,5 +53,5 @@ public class DcContact {
 
     // working with raw c-data
     private long        contactCPtr;    // CAVE: the name is referenced in the JNI
-    private native void unrefContactCPtr();
+    private DcCleaner.Ref cleanerRef;
 }
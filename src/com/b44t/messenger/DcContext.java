@@ -142,6 +142,8 @@ public class DcContext {
     public native int          setChatName          (int chat_id, String name);
     public native int          setChatProfileImage  (int chat_id, String name);
     public native int[]        getChatMsgs          (int chat_id, int flags, int marker1before);
+    public native int[]        getChatMsgsTail      (int chat_id, int flags, int marker1before, int max_cnt);
+    public native int          findLastSeenIndex    (int msg_ids[], long timestamp);
     public native int[]        searchMsgs           (int chat_id, String query);
     public native int[]        getFreshMsgs         ();
     public native int[]        getChatMedia         (int chat_id, int type1, int type2, int type3);
@@ -149,8 +151,10 @@ public class DcContext {
     public native int[]        getChatContacts      (int chat_id);
     public native void         deleteChat           (int chat_id);
     public @NonNull DcMsg      getMsg               (int msg_id) { return new DcMsg(getMsgCPtr(msg_id)); }
+    public @NonNull DcMsg[]    getMsgs              (int msg_ids[]) { return wrapMsgCPtrs(getMsgCPtrs(msg_ids)); }
     public native String       getMsgInfo           (int id);
     public native int          getFreshMsgCount     (int chat_id);
+    public native int[]        getFreshMsgCounts    (int chat_ids[]);
     public native void         deleteMsgs           (int msg_ids[]);
     public native void         forwardMsgs          (int msg_ids[], int chat_id);
     public native int          prepareMsg           (int chat_id, DcMsg msg);
@@ -172,6 +176,14 @@ public class DcContext {
      */
     public native boolean      setLocation          (float latitude, float longitude, float accuracy);
 
+    private static @NonNull DcMsg[] wrapMsgCPtrs(long[] msgCPtrs) {
+        DcMsg[] msgs = new DcMsg[msgCPtrs.length];
+        for (int i = 0; i < msgCPtrs.length; i++) {
+            msgs[i] = new DcMsg(msgCPtrs[i]);
+        }
+        return msgs;
+    }
+
     // event handling - you should @Override this function in derived classes
     public long handleEvent(int event, long data1, long data2) {
         return 0;
@@ -189,6 +201,7 @@ public class DcContext {
     private native long getChatlistCPtr  (int listflags, String query, int queryId);
     private native long getChatCPtr      (int chat_id);
     private native long getMsgCPtr       (int id);
+    private native long[] getMsgCPtrs    (int ids[]);
     private native long getDraftCPtr    (int id);
     private native long getContactCPtr   (int id);
     private native long getLocationsCPtr (int chat_id, int contact_id, long timestamp_start, long timestamp_end);
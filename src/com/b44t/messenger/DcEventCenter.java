@@ -1,19 +1,64 @@
 package com.b44t.messenger;
 
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+
 import org.thoughtcrime.securesms.util.Util;
 
 import java.util.ArrayList;
-import java.util.Hashtable;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class DcEventCenter {
-    private Hashtable<Integer, ArrayList<DcEventDelegate>> allObservers = new Hashtable<>();
-    private final Object LOCK = new Object();
+
+    // the registry is replaced as a whole on every change (copy-on-write);
+    // sendToObservers() only reads the volatile reference and never locks.
+    // adding/removing observers is rare compared to sending events, so the copying does not matter.
+    private volatile Registry registry = Registry.EMPTY;
+    private final Object WRITE_LOCK = new Object();
+
+    // events for the main thread are collected here and delivered by a single handler message.
+    private final ConcurrentLinkedQueue<PendingEvent> mainQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean mainDrainScheduled = new AtomicBoolean(false);
+    private final Handler mainHandler = new Handler(Looper.getMainLooper()) {
+        @Override
+        public void handleMessage(Message msg) {
+            drainMainQueue();
+        }
+    };
+    private static final int MSG_DRAIN = 1;
+
+    private final AtomicLong eventsIn = new AtomicLong();
+    private final AtomicLong eventsDispatched = new AtomicLong();
+    private final AtomicLong eventsCoalesced = new AtomicLong();
+    private final AtomicLong eventsFiltered = new AtomicLong();
+
+    // observers added without a chat get the events of all chats.
+    private static final int ANY_CHAT = 0;
 
     public interface DcEventDelegate {
         void handleEvent(int eventId, Object data1, Object data2);
         default boolean runOnMain() {
             return true;
         }
+
+        /**
+         * Called instead of handleEvent() if the observer was added for a single chat
+         * and the event belongs to another one; called on the sending thread, so it must return quickly.
+         */
+        default void onEventFiltered(int eventId) {
+        }
+    }
+
+    /**
+     * Implemented by event data that names several chats, eg. merged events;
+     * the event is then routed to the observers of these chats only.
+     */
+    public interface AffectedChats {
+        boolean affectsChat(int chatId);
     }
 
     /**
@@ -25,63 +70,329 @@ public class DcEventCenter {
     }
 
     public void addObserver(int eventId, DcEventDelegate observer) {
-        synchronized (LOCK) {
-            ArrayList<DcEventDelegate> idObservers = allObservers.get(eventId);
-            if (idObservers == null) {
-                allObservers.put(eventId, (idObservers = new ArrayList<>()));
+        addChatObserver(eventId, ANY_CHAT, observer);
+    }
+
+    /**
+     * Adds an observer for the events of a single chat, the chat id is expected as data1.
+     * Events naming another chat are not delivered to the observer;
+     * events naming no chat (data1 is 0) are delivered unless the data tell the affected chats by {@link AffectedChats}.
+     */
+    public void addChatObserver(int eventId, int chatId, DcEventDelegate observer) {
+        long key = key(eventId, chatId);
+        synchronized (WRITE_LOCK) {
+            DcEventDelegate[] keyObservers = registry.get(key);
+            if (keyObservers == null) {
+                keyObservers = new DcEventDelegate[] { observer };
+            } else {
+                keyObservers = Arrays.copyOf(keyObservers, keyObservers.length + 1);
+                keyObservers[keyObservers.length - 1] = observer;
             }
-            idObservers.add(observer);
+            registry = registry.with(key, keyObservers);
         }
     }
 
+    /**
+     * Removes the observer from the event, for all chats it was added for.
+     */
     public void removeObserver(int eventId, DcEventDelegate observer) {
-        synchronized (LOCK) {
-            ArrayList<DcEventDelegate> idObservers = allObservers.get(eventId);
-            if (idObservers != null) {
-                idObservers.remove(observer);
+        synchronized (WRITE_LOCK) {
+            Registry r = registry;
+            int start = r.blockStart(eventId);
+            int end = start;
+            while (end < r.keys.length && eventIdOf(r.keys[end]) == eventId) {
+                end++;
             }
+            registry = r.without(observer, start, end);
         }
     }
 
     public void removeObservers(DcEventDelegate observer) {
-        synchronized (LOCK) {
-            for(Integer eventId : allObservers.keySet()) {
-                ArrayList<DcEventDelegate> idObservers = allObservers.get(eventId);
-                if (idObservers != null) {
-                    idObservers.remove(observer);
+        synchronized (WRITE_LOCK) {
+            registry = registry.without(observer, 0, registry.keys.length);
+        }
+    }
+
+    public void sendToObservers(int eventId, Object data1, Object data2) {
+        eventsIn.incrementAndGet();
+
+        Registry r = registry;
+        int blockStart = r.blockStart(eventId);
+        DcEventDelegate[] idObservers = null;
+        int chatKeys = blockStart;
+        if (blockStart < r.keys.length && r.keys[blockStart] == key(eventId, ANY_CHAT)) {
+            idObservers = r.observers[blockStart];
+            chatKeys++;
+        }
+        if (chatKeys < r.keys.length && eventIdOf(r.keys[chatKeys]) == eventId) {
+            idObservers = withChatObservers(r, chatKeys, idObservers, eventId, data1, data2);
+        }
+        if (idObservers == null || idObservers.length == 0) {
+            return;
+        }
+
+        boolean hasMainObservers = false;
+        for (DcEventDelegate observer : idObservers) {
+            if (observer.runOnMain()) {
+                hasMainObservers = true;
+            } else {
+                Util.runOnBackground(() -> dispatch(observer, eventId, data1, data2));
+            }
+        }
+
+        if (hasMainObservers) {
+            if (Util.isMainThread() && mainQueue.isEmpty()) {
+                // already on the main thread and nothing queued before - deliver directly, keeping the order.
+                dispatchToMainObservers(idObservers, eventId, data1, data2);
+            } else {
+                enqueueForMain(new PendingEvent(eventId, data1, data2, idObservers));
+            }
+        }
+    }
+
+    /**
+     * @return the observers of all chats plus the observers of the chats the event belongs to.
+     */
+    private DcEventDelegate[] withChatObservers(Registry r, int start, DcEventDelegate[] anyChatObservers,
+                                                int eventId, Object data1, Object data2) {
+        int chatId = data1 instanceof Number? ((Number) data1).intValue() : ANY_CHAT;
+        AffectedChats affectedChats = (chatId == ANY_CHAT && data2 instanceof AffectedChats)? (AffectedChats) data2 : null;
+
+        DcEventDelegate[] result = anyChatObservers;
+        for (int i = start; i < r.keys.length && eventIdOf(r.keys[i]) == eventId; i++) {
+            int observedChatId = chatIdOf(r.keys[i]);
+            boolean matches = chatId != ANY_CHAT? observedChatId == chatId
+                                                : (affectedChats == null || affectedChats.affectsChat(observedChatId));
+            if (matches) {
+                result = concat(result, r.observers[i]);
+            } else {
+                for (DcEventDelegate observer : r.observers[i]) {
+                    eventsFiltered.incrementAndGet();
+                    observer.onEventFiltered(eventId);
                 }
             }
         }
+        return result;
     }
 
-    public void sendToObservers(int eventId, Object data1, Object data2) {
-        synchronized (LOCK) {
-            ArrayList<DcEventDelegate> idObservers = allObservers.get(eventId);
-            if (idObservers != null) {
-                for (DcEventDelegate observer : idObservers) {
-                    // using try/catch blocks as under some circumstances eg. getContext() may return NULL -
-                    // and as this function is used virtually everywhere, also in libs,
-                    // it's not feasible to check all single occurrences.
-                    if(observer.runOnMain()) {
-                        Util.runOnMain(() -> {
-                            try {
-                                observer.handleEvent(eventId, data1, data2);
-                            }
-                            catch(Exception e) {
-                                e.printStackTrace();
-                            }
-                        });
-                    } else {
-                        Util.runOnBackground(() -> {
-                            try {
-                                observer.handleEvent(eventId, data1, data2);
-                            }
-                            catch (Exception e) {
-                                e.printStackTrace();
-                            }
-                        });
-                    }
+    private void enqueueForMain(PendingEvent event) {
+        // an identical event that is still waiting for delivery would be handled twice without any benefit;
+        // the queue is short as it is drained once per main loop iteration.
+        for (PendingEvent pending : mainQueue) {
+            if (pending.isSameAs(event)) {
+                eventsCoalesced.incrementAndGet();
+                return;
+            }
+        }
+        mainQueue.add(event);
+
+        if (mainDrainScheduled.compareAndSet(false, true)) {
+            mainHandler.sendEmptyMessage(MSG_DRAIN);
+        }
+    }
+
+    private void drainMainQueue() {
+        mainDrainScheduled.set(false);
+        PendingEvent event;
+        while ((event = mainQueue.poll()) != null) {
+            dispatchToMainObservers(event.observers, event.eventId, event.data1, event.data2);
+        }
+    }
+
+    private void dispatchToMainObservers(DcEventDelegate[] observers, int eventId, Object data1, Object data2) {
+        for (DcEventDelegate observer : observers) {
+            if (observer.runOnMain() && isRegistered(eventId, observer)) {
+                dispatch(observer, eventId, data1, data2);
+            }
+        }
+    }
+
+    private boolean isRegistered(int eventId, DcEventDelegate observer) {
+        // the observer may have been removed while the event was waiting in the queue,
+        // eg. when an activity is destroyed - do not call into it then.
+        Registry r = registry;
+        for (int i = r.blockStart(eventId); i < r.keys.length && eventIdOf(r.keys[i]) == eventId; i++) {
+            for (DcEventDelegate o : r.observers[i]) {
+                if (o == observer) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void dispatch(DcEventDelegate observer, int eventId, Object data1, Object data2) {
+        // using try/catch blocks as under some circumstances eg. getContext() may return NULL -
+        // and as this function is used virtually everywhere, also in libs,
+        // it's not feasible to check all single occurrences.
+        try {
+            eventsDispatched.incrementAndGet();
+            observer.handleEvent(eventId, data1, data2);
+        }
+        catch(Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    public long getEventsIn() {
+        return eventsIn.get();
+    }
+
+    public long getEventsDispatched() {
+        return eventsDispatched.get();
+    }
+
+    public long getEventsCoalesced() {
+        return eventsCoalesced.get();
+    }
+
+    /**
+     * @return number of deliveries skipped as the observer was added for another chat.
+     */
+    public long getEventsFiltered() {
+        return eventsFiltered.get();
+    }
+
+    private static long key(int eventId, int chatId) {
+        return ((long) eventId << 32) | (chatId & 0xFFFFFFFFL);
+    }
+
+    private static int eventIdOf(long key) {
+        return (int) (key >> 32);
+    }
+
+    private static int chatIdOf(long key) {
+        return (int) key;
+    }
+
+    private static DcEventDelegate[] concat(DcEventDelegate[] a, DcEventDelegate[] b) {
+        if (a == null || a.length == 0) {
+            return b;
+        }
+        DcEventDelegate[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+
+    private static DcEventDelegate[] without(DcEventDelegate[] observers, DcEventDelegate observer) {
+        ArrayList<DcEventDelegate> result = new ArrayList<>(observers.length);
+        boolean removed = false;
+        for (DcEventDelegate o : observers) {
+            if (!removed && o == observer) {
+                removed = true;
+            } else {
+                result.add(o);
+            }
+        }
+        return removed? result.toArray(new DcEventDelegate[0]) : observers;
+    }
+
+    private static class PendingEvent {
+        final int eventId;
+        final Object data1;
+        final Object data2;
+        final DcEventDelegate[] observers;
+
+        PendingEvent(int eventId, Object data1, Object data2, DcEventDelegate[] observers) {
+            this.eventId = eventId;
+            this.data1 = data1;
+            this.data2 = data2;
+            this.observers = observers;
+        }
+
+        boolean isSameAs(PendingEvent other) {
+            return eventId == other.eventId
+                && Arrays.equals(observers, other.observers)
+                && Util.equals(data1, other.data1)
+                && Util.equals(data2, other.data2);
+        }
+    }
+
+    /**
+     * Immutable map from event id and chat id to observers,
+     * the keys are kept sorted so that lookups are a binary search on a primitive array;
+     * all keys of an event are adjacent, starting with the observers of all chats.
+     */
+    private static class Registry {
+        static final Registry EMPTY = new Registry(new long[0], new DcEventDelegate[0][]);
+
+        final long[] keys;
+        final DcEventDelegate[][] observers;
+
+        Registry(long[] keys, DcEventDelegate[][] observers) {
+            this.keys = keys;
+            this.observers = observers;
+        }
+
+        DcEventDelegate[] get(long key) {
+            int index = Arrays.binarySearch(keys, key);
+            return index >= 0? observers[index] : null;
+        }
+
+        /**
+         * @return the index of the first key of the event or where it would be inserted.
+         */
+        int blockStart(int eventId) {
+            int index = Arrays.binarySearch(keys, key(eventId, ANY_CHAT));
+            return index >= 0? index : -(index + 1);
+        }
+
+        /**
+         * @return the registry with the observer removed from the keys at index from to to (exclusive);
+         *         keys left without observers are dropped, in a single pass, as the indices shift then.
+         */
+        Registry without(DcEventDelegate observer, int from, int to) {
+            long[] newKeys = new long[keys.length];
+            DcEventDelegate[][] newObservers = new DcEventDelegate[keys.length][];
+            int count = 0;
+            boolean changed = false;
+            for (int i = 0; i < keys.length; i++) {
+                DcEventDelegate[] keyObservers = observers[i];
+                if (i >= from && i < to) {
+                    DcEventDelegate[] remaining = DcEventCenter.without(keyObservers, observer);
+                    changed |= remaining != keyObservers;
+                    keyObservers = remaining;
+                }
+                if (keyObservers.length > 0) {
+                    newKeys[count] = keys[i];
+                    newObservers[count] = keyObservers;
+                    count++;
+                }
+            }
+            if (!changed) {
+                return this;
+            }
+            return new Registry(Arrays.copyOf(newKeys, count), Arrays.copyOf(newObservers, count));
+        }
+
+        Registry with(long key, DcEventDelegate[] keyObservers) {
+            int index = Arrays.binarySearch(keys, key);
+            if (index >= 0) {
+                if (keyObservers.length == 0) {
+                    long[] newKeys = new long[keys.length - 1];
+                    DcEventDelegate[][] newObservers = new DcEventDelegate[keys.length - 1][];
+                    System.arraycopy(keys, 0, newKeys, 0, index);
+                    System.arraycopy(keys, index + 1, newKeys, index, keys.length - index - 1);
+                    System.arraycopy(observers, 0, newObservers, 0, index);
+                    System.arraycopy(observers, index + 1, newObservers, index, observers.length - index - 1);
+                    return new Registry(newKeys, newObservers);
                 }
+                DcEventDelegate[][] newObservers = observers.clone();
+                newObservers[index] = keyObservers;
+                return new Registry(keys, newObservers);
+            } else if (keyObservers.length == 0) {
+                return this;
+            } else {
+                int insertAt = -(index + 1);
+                long[] newKeys = new long[keys.length + 1];
+                DcEventDelegate[][] newObservers = new DcEventDelegate[keys.length + 1][];
+                System.arraycopy(keys, 0, newKeys, 0, insertAt);
+                System.arraycopy(observers, 0, newObservers, 0, insertAt);
+                newKeys[insertAt] = key;
+                newObservers[insertAt] = keyObservers;
+                System.arraycopy(keys, insertAt, newKeys, insertAt + 1, keys.length - insertAt);
+                System.arraycopy(observers, insertAt, newObservers, insertAt + 1, observers.length - insertAt);
+                return new Registry(newKeys, newObservers);
             }
         }
     }
@@ -1,6 +1,6 @@
 package com.b44t.messenger;
 
-public class DcLot {
+public class DcLot implements AutoCloseable {
 
     public final static int DC_TEXT1_DRAFT    = 1;
     public final static int DC_TEXT1_USERNAME = 2;
@@ -8,12 +8,15 @@ public class DcLot {
 
     public DcLot(long lotCPtr) {
         this.lotCPtr = lotCPtr;
+        cleanerRef = DcCleaner.register(this, DcCleaner.TYPE_LOT, lotCPtr);
     }
 
-    @Override protected void finalize() throws Throwable {
-        super.finalize();
-        unrefLotCPtr();
+    @Override
+    public void close() {
         lotCPtr = 0;
+        if (cleanerRef != null) {
+            cleanerRef.clean();
+        }
     }
 
     public native String getText1       ();
@@ -25,5 +28,5 @@ public class DcLot {
 
     // working with raw c-data
     private long        lotCPtr;    // CAVE: the name is referenced in the JNI
-    private native void unrefLotCPtr();
+    private DcCleaner.Ref cleanerRef;
 }
@@ -5,7 +5,7 @@ import androidx.annotation.NonNull;
 import java.io.File;
 import java.util.Set;
 
-public class DcMsg {
+public class DcMsg implements AutoCloseable {
 
     public final static int DC_MSG_UNDEFINED = 0;
     public final static int DC_MSG_TEXT = 10;
@@ -29,20 +29,28 @@ public class DcMsg {
     public static final int DC_MSG_NO_ID = 0;
     public final static int DC_MSG_ID_MARKER1 = 1;
     public final static int DC_MSG_ID_DAYMARKER = 9;
+    public final static int DC_MSG_ID_LAST_SPECIAL = 9;
 
     public DcMsg(DcContext context, int viewtype) {
         msgCPtr = context.createMsgCPtr(viewtype);
+        cleanerRef = DcCleaner.register(this, DcCleaner.TYPE_MSG, msgCPtr);
     }
 
     public DcMsg(long msgCPtr) {
         this.msgCPtr = msgCPtr;
+        cleanerRef = DcCleaner.register(this, DcCleaner.TYPE_MSG, msgCPtr);
     }
 
+    /**
+     * Frees the C-object at once, the object must not be used afterwards.
+     * Objects that are not closed are freed by DcCleaner after they are garbage collected.
+     */
     @Override
-    protected void finalize() throws Throwable {
-        super.finalize();
-        unrefMsgCPtr();
+    public void close() {
         msgCPtr = 0;
+        if (cleanerRef != null) {
+            cleanerRef.clean();
+        }
     }
 
     @Override
@@ -169,6 +177,6 @@ public class DcMsg {
 
     // working with raw c-data
     private long        msgCPtr;        // CAVE: the name is referenced in the JNI
-    private native void unrefMsgCPtr    ();
+    private DcCleaner.Ref cleanerRef;
     private native long getSummaryCPtr  (long chatCPtr);
 };
@@ -64,6 +64,7 @@ public class ApplicationContext extends MultiDexApplication implements DefaultLi
     initializeIncomingMessageNotifier();
     ProcessLifecycleOwner.get().getLifecycle().addObserver(this);
     MessageNotifierCompat.init(this);
+    MessageNotifierCompat.restoreNotifications();
 
     dcLocationManager = new DcLocationManager(this);
     try {
@@ -6,9 +6,9 @@ import com.b44t.messenger.DcLot;
 
 import org.thoughtcrime.securesms.database.model.ThreadRecord;
 import org.thoughtcrime.securesms.mms.GlideRequests;
+import org.thoughtcrime.securesms.util.collections.IntSet;
 
 import java.util.Locale;
-import java.util.Set;
 
 public interface BindableConversationListItem extends Unbindable {
 
@@ -16,5 +16,5 @@ public interface BindableConversationListItem extends Unbindable {
                    int msgId,
                    @NonNull DcLot dcSummary,
                    @NonNull GlideRequests glideRequests, @NonNull Locale locale,
-                   @NonNull Set<Long> selectedThreads, boolean batchMode);
+                   @NonNull IntSet selectedThreads, boolean batchMode);
 }
@@ -18,11 +18,9 @@ package org.thoughtcrime.securesms;
 
 
 import android.Manifest;
-import android.annotation.SuppressLint;
 import android.content.res.Configuration;
 import android.content.res.TypedArray;
 import android.graphics.Color;
-import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
 import androidx.annotation.NonNull;
@@ -53,7 +51,7 @@ import org.thoughtcrime.securesms.components.RecyclerViewFastScroller;
 import org.thoughtcrime.securesms.connect.ApplicationDcContext;
 import org.thoughtcrime.securesms.connect.DcContactsLoader;
 import org.thoughtcrime.securesms.connect.DcHelper;
-import org.thoughtcrime.securesms.contacts.ContactAccessor;
+import org.thoughtcrime.securesms.contacts.AddressBookSync;
 import org.thoughtcrime.securesms.contacts.ContactSelectionListAdapter;
 import org.thoughtcrime.securesms.contacts.ContactSelectionListItem;
 import org.thoughtcrime.securesms.mms.GlideApp;
@@ -324,31 +322,8 @@ public class ContactSelectionListFragment extends    Fragment
     fastScroller.setVisibility(View.GONE);
   }
 
-  @SuppressLint("StaticFieldLeak")
   private void handleContactPermissionGranted() {
-    new AsyncTask<Void, Void, Void>() {
-
-      @Override
-      protected Void doInBackground(Void... voids) {
-        loadSystemContacts();
-        return null;
-      }
-
-    }.execute();
-  }
-
-  private void loadSystemContacts() {
-    Thread thread = new Thread() {
-      @Override
-      public void run() {
-        ContactAccessor contactAccessor = ContactAccessor.getInstance();
-        String allSystemContacts = contactAccessor.getAllSystemContactsAsString(getContext());
-        if (!allSystemContacts.isEmpty()) {
-          dcContext.addAddressBook(allSystemContacts);
-        }
-      }
-    };
-    thread.start();
+    AddressBookSync.requestSync(getContext());
   }
 
   private class ListClickListener implements ContactSelectionListAdapter.ItemClickListener {
@@ -89,6 +89,7 @@ import org.thoughtcrime.securesms.mms.AudioSlide;
 import org.thoughtcrime.securesms.mms.GlideApp;
 import org.thoughtcrime.securesms.mms.GlideRequests;
 import org.thoughtcrime.securesms.mms.MediaConstraints;
+import org.thoughtcrime.securesms.mms.MediaPreparer;
 import org.thoughtcrime.securesms.mms.PartAuthority;
 import org.thoughtcrime.securesms.mms.SlideDeck;
 import org.thoughtcrime.securesms.notifications.MessageNotifierCompat;
@@ -1090,14 +1091,14 @@ public class ConversationActivity extends PassphraseRequiredActionBarActivity
     }
 
     private void handleSharing(Activity activity) {
-      DcContext dcContext = DcHelper.getContext(activity);
       ArrayList<Uri> uris = getSharedUris(activity);
       try {
+        ArrayList<DcMsg> messages = new ArrayList<>(uris.size());
         for(Uri uri : uris) {
-          DcMsg message = createMessage(activityRef.get(), uri);
-          dcContext.sendMsg(chatId, message);
+          messages.add(createMessage(activityRef.get(), uri));
           cleanup(activity, uri);
         }
+        new MediaPreparer(activity, chatId).prepareAndSend(messages, null);
       } catch (NullPointerException npe) {
         Log.w(TAG, "Activity destroyed before background task finished. " +
                 "Cancelling message relaying. " +
@@ -20,6 +20,7 @@ import android.content.Context;
 import androidx.annotation.LayoutRes;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -35,19 +36,23 @@ import org.thoughtcrime.securesms.connect.DcHelper;
 import org.thoughtcrime.securesms.mms.GlideRequests;
 import org.thoughtcrime.securesms.recipients.Recipient;
 import org.thoughtcrime.securesms.util.DateUtils;
-import org.thoughtcrime.securesms.util.LRUCache;
 import org.thoughtcrime.securesms.util.StickyHeaderDecoration;
+import org.thoughtcrime.securesms.util.ThreadUtil;
 import org.thoughtcrime.securesms.util.Util;
 import org.thoughtcrime.securesms.util.ViewUtil;
+import org.thoughtcrime.securesms.util.collections.IntLruCache;
+import org.thoughtcrime.securesms.util.collections.IntSet;
 
 import java.lang.ref.SoftReference;
 import java.util.Calendar;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.Locale;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * A DC adapter for a conversation thread.  Ultimately
@@ -62,10 +67,18 @@ public class ConversationAdapter <V extends View & BindableConversationItem>
   implements StickyHeaderDecoration.StickyHeaderAdapter<HeaderViewHolder>
 {
 
-  private static final int MAX_CACHE_SIZE = 40;
+  private static final int MAX_CACHE_SIZE = 120;
+  private static final int PREFETCH_WINDOW = 30;
   private static final String TAG = ConversationAdapter.class.getSimpleName();
-  private final Map<Integer,SoftReference<DcMsg>> recordCache =
-      Collections.synchronizedMap(new LRUCache<Integer,SoftReference<DcMsg>>(MAX_CACHE_SIZE));
+
+  // the cache is keyed by message id, so that entries stay valid when positions shift on new messages
+  private final IntLruCache<SoftReference<DcMsg>> recordCache = new IntLruCache<>(MAX_CACHE_SIZE);
+
+  // a single thread is enough, if scrolling is faster than prefetching, only the latest window is loaded
+  private static final Executor          prefetchExecutor = ThreadUtil.newDynamicSingleThreadedExecutor();
+  private final AtomicReference<int[]>   pendingPrefetch  = new AtomicReference<>();
+  private long                           cacheHits;
+  private long                           cacheMisses;
 
   private static final int MESSAGE_TYPE_OUTGOING           = 0;
   private static final int MESSAGE_TYPE_INCOMING           = 1;
@@ -93,6 +106,10 @@ public class ConversationAdapter <V extends View & BindableConversationItem>
   private int                  positionToPulseHighlight = -1;
   private int                  lastSeenPosition = -1;
   private long                 lastSeen = -1;
+  private int                  changeDataGeneration = 0;
+
+  // changed messages of incremental updates that are not applied yet, main thread only
+  private final IntSet pendingChangedMsgIds = new IntSet();
 
   protected static class ViewHolder extends RecyclerView.ViewHolder {
     public <V extends View & BindableConversationItem> ViewHolder(final @NonNull V itemView) {
@@ -153,20 +170,84 @@ public class ConversationAdapter <V extends View & BindableConversationItem>
       return new DcMsg(0);
     }
 
-    final SoftReference<DcMsg> reference = recordCache.get(position);
+    final int msgId = (int)getItemId(position);
+    final SoftReference<DcMsg> reference;
+    synchronized (recordCache) {
+      reference = recordCache.get(msgId);
+    }
     if (reference != null) {
       final DcMsg fromCache = reference.get();
       if (fromCache != null) {
+        cacheHits++;
         return fromCache;
       }
     }
 
-    final DcMsg fromDb = dcContext.getMsg((int)getItemId(position));
-    recordCache.put(position, new SoftReference<>(fromDb));
+    cacheMisses++;
+    final DcMsg fromDb = dcContext.getMsg(msgId);
+    synchronized (recordCache) {
+      recordCache.put(msgId, new SoftReference<>(fromDb));
+    }
     return fromDb;
   }
 
 
+  /**
+   * Loads the messages that will become visible next into the cache, in the background.
+   *
+   * @param towardsOlder true if the user scrolls towards older messages, ie. higher positions
+   */
+  public void prefetch(int firstVisiblePosition, int lastVisiblePosition, boolean towardsOlder) {
+    int from = towardsOlder? lastVisiblePosition + 1 : firstVisiblePosition - PREFETCH_WINDOW;
+    int to   = towardsOlder? lastVisiblePosition + PREFETCH_WINDOW : firstVisiblePosition - 1;
+    from = Math.max(from, 0);
+    to   = Math.min(to, dcMsgList.length - 1);
+
+    int[] missing = new int[Math.max(to - from + 1, 0)];
+    int   missingCount = 0;
+    synchronized (recordCache) {
+      for (int position = from; position <= to; position++) {
+        int msgId = (int)getItemId(position);
+        SoftReference<DcMsg> reference = recordCache.get(msgId);
+        if (msgId > DcMsg.DC_MSG_ID_LAST_SPECIAL && (reference == null || reference.get() == null)) {
+          missing[missingCount++] = msgId;
+        }
+      }
+    }
+    if (missingCount == 0) {
+      return;
+    }
+
+    if (pendingPrefetch.getAndSet(Arrays.copyOf(missing, missingCount)) == null) {
+      final int generation = changeDataGeneration;
+      prefetchExecutor.execute(() -> {
+        int[] msgIds = pendingPrefetch.getAndSet(null);
+        if (msgIds == null) {
+          return;
+        }
+        DcMsg[] msgs = dcContext.getMsgs(msgIds);
+        Util.runOnMain(() -> {
+          // if the list was changed meanwhile, the loaded messages may be outdated
+          if (generation == changeDataGeneration) {
+            synchronized (recordCache) {
+              for (DcMsg msg : msgs) {
+                recordCache.put(msg.getId(), new SoftReference<>(msg));
+              }
+            }
+          }
+        });
+      });
+    }
+  }
+
+  public long getCacheHits() {
+    return cacheHits;
+  }
+
+  public long getCacheMisses() {
+    return cacheMisses;
+  }
+
   static class HeaderViewHolder extends RecyclerView.ViewHolder {
     TextView textView;
 
@@ -336,13 +417,92 @@ public class ConversationAdapter <V extends View & BindableConversationItem>
 
   public void changeData(@Nullable int[] dcMsgList) {
     // should be called when there are new messages
+    changeDataGeneration++;
+    pendingChangedMsgIds.clear(); // the whole cache is dropped anyway
     this.dcMsgList = dcMsgList == null ? new int[0] : dcMsgList;
     reloadData();
   }
 
+  /**
+   * Like changeData(), however, only the differences to the current list are notified
+   * and only the messages given in changedMsgIds are loaded again.
+   * The diff is calculated in the background, the list is updated on the main thread afterwards
+   * and onApplied is called then.
+   * If a newer call comes in before that, the changed messages of this call are loaded again by the newer one.
+   */
+  public void changeDataIncrementally(@NonNull int[] newMsgList, @NonNull int[] changedMsgIds, @Nullable Runnable onApplied) {
+    pendingChangedMsgIds.addAll(changedMsgIds);
+
+    final int   generation = ++changeDataGeneration;
+    final int[] oldMsgList = this.dcMsgList;
+    final int[] changed    = pendingChangedMsgIds.toArray();
+    Arrays.sort(changed);
+
+    Util.runOnBackground(() -> {
+      DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new MsgListDiffCallback(oldMsgList, newMsgList, changed), false);
+
+      Util.runOnMain(() -> {
+        if (generation != changeDataGeneration) {
+          return; // a newer list is already on its way
+        }
+
+        this.dcMsgList = newMsgList;
+        pendingChangedMsgIds.clear();
+        synchronized (recordCache) {
+          for (int msgId : changed) {
+            recordCache.remove(msgId);
+          }
+        }
+        updateLastSeenPosition();
+        diff.dispatchUpdatesTo(this);
+
+        if (onApplied != null) {
+          onApplied.run();
+        }
+      });
+    });
+  }
+
+  private static class MsgListDiffCallback extends DiffUtil.Callback {
+    // the message lists are sorted oldest-first, the adapter positions are newest-first
+    private final int[] oldMsgList;
+    private final int[] newMsgList;
+    private final int[] sortedChangedMsgIds;
+
+    MsgListDiffCallback(int[] oldMsgList, int[] newMsgList, int[] sortedChangedMsgIds) {
+      this.oldMsgList          = oldMsgList;
+      this.newMsgList          = newMsgList;
+      this.sortedChangedMsgIds = sortedChangedMsgIds;
+    }
+
+    @Override
+    public int getOldListSize() {
+      return oldMsgList.length;
+    }
+
+    @Override
+    public int getNewListSize() {
+      return newMsgList.length;
+    }
+
+    @Override
+    public boolean areItemsTheSame(int oldPosition, int newPosition) {
+      return oldMsgList[oldMsgList.length-1-oldPosition] == newMsgList[newMsgList.length-1-newPosition];
+    }
+
+    @Override
+    public boolean areContentsTheSame(int oldPosition, int newPosition) {
+      // messages are unchanged unless the core told us otherwise
+      int msgId = newMsgList[newMsgList.length-1-newPosition];
+      return Arrays.binarySearch(sortedChangedMsgIds, msgId) < 0;
+    }
+  }
+
   private void reloadData() {
     // should be called when some items in a message are changed, eg. seen-state
-    recordCache.clear();
+    synchronized (recordCache) {
+      recordCache.clear();
+    }
     updateLastSeenPosition();
     notifyDataSetChanged();
   }
@@ -351,17 +511,14 @@ public class ConversationAdapter <V extends View & BindableConversationItem>
     if (lastSeen <= 0)     return -1;
     if (!isActive())       return -1;
 
-    int count = getItemCount();
-
-
-    for (int i = 0; i < count; i++) {
-      DcMsg msg = getMsg(i);
-      if (msg.isOutgoing() || msg.getTimestamp() <= lastSeen) {
-        return i - 1;
-      }
+    // the first seen message is searched natively, so there is no need to load all the new messages here
+    int index = dcContext.findLastSeenIndex(dcMsgList, lastSeen);
+    if (index < 0) {
+      return -1;
     }
 
-    return -1;
+    int position = dcMsgList.length - 1 - index;
+    return position - 1;
   }
 
   public HeaderViewHolder onCreateLastSeenViewHolder(ViewGroup parent) {
@@ -27,8 +27,11 @@ import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 import androidx.fragment.app.Fragment;
+import androidx.loader.app.LoaderManager;
+import androidx.loader.content.Loader;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.view.ActionMode;
@@ -60,7 +63,9 @@ import com.b44t.messenger.DcMsg;
 
 import org.thoughtcrime.securesms.ConversationAdapter.ItemClickListener;
 import org.thoughtcrime.securesms.connect.ApplicationDcContext;
+import org.thoughtcrime.securesms.connect.DcEventCoalescer;
 import org.thoughtcrime.securesms.connect.DcHelper;
+import org.thoughtcrime.securesms.connect.DcMsgListLoader;
 import org.thoughtcrime.securesms.database.Address;
 import org.thoughtcrime.securesms.mms.GlideApp;
 import org.thoughtcrime.securesms.permissions.Permissions;
@@ -68,7 +73,9 @@ import org.thoughtcrime.securesms.recipients.Recipient;
 import org.thoughtcrime.securesms.util.Debouncer;
 import org.thoughtcrime.securesms.util.SaveAttachmentTask;
 import org.thoughtcrime.securesms.util.StickyHeaderDecoration;
+import org.thoughtcrime.securesms.util.Util;
 import org.thoughtcrime.securesms.util.ViewUtil;
+import org.thoughtcrime.securesms.util.collections.IntSet;
 
 import java.util.Collections;
 import java.util.Comparator;
@@ -76,20 +83,23 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
-import static com.b44t.messenger.DcContact.DC_CONTACT_ID_SELF;
 import static org.thoughtcrime.securesms.util.RelayUtil.REQUEST_RELAY;
 import static org.thoughtcrime.securesms.util.RelayUtil.setForwardingMessageIds;
 
 @SuppressLint("StaticFieldLeak")
 public class ConversationFragment extends Fragment
-        implements DcEventCenter.DcEventDelegate
+        implements DcEventCenter.DcEventDelegate, LoaderManager.LoaderCallbacks<int[]>
 {
     private static final String TAG       = ConversationFragment.class.getSimpleName();
     private static final String KEY_LIMIT = "limit";
 
     private static final int SCROLL_ANIMATION_THRESHOLD = 50;
+    private static final int PAGE_SIZE                  = 500;
+    private static final int LOAD_MORE_THRESHOLD        = 100;
     private static final int CODE_ADD_EDIT_CONTACT      = 77;
+    private static final int MSG_LIST_LOADER            = 0;
 
     private final ActionModeCallback actionModeCallback     = new ActionModeCallback();
     private final ItemClickListener  selectionClickListener = new ConversationFragmentItemClickListener();
@@ -99,6 +109,7 @@ public class ConversationFragment extends Fragment
     private Recipient                   recipient;
     private long                        chatId;
     private int                         startingPosition;
+    private int                         loadedMsgCount;
     private boolean                     firstLoad;
     private ActionMode                  actionMode;
     private Locale                      locale;
@@ -112,19 +123,19 @@ public class ConversationFragment extends Fragment
 
     private Debouncer markseenDebouncer;
 
+    // messages changed since the last load; applied when the next load is finished
+    private final IntSet pendingChangedMsgIds = new IntSet();
+    private boolean      pendingFullReload;
+
+    private       long       eventsHandled;
+    private final AtomicLong eventsFiltered = new AtomicLong();
+
     @Override
     public void onCreate(Bundle icicle) {
         super.onCreate(icicle);
         this.locale = (Locale) getArguments().getSerializable(PassphraseRequiredActionBarActivity.LOCALE_EXTRA);
         this.dcContext = DcHelper.getContext(getContext());
 
-        dcContext.eventCenter.addObserver(DcContext.DC_EVENT_INCOMING_MSG, this);
-        dcContext.eventCenter.addObserver(DcContext.DC_EVENT_MSGS_CHANGED, this);
-        dcContext.eventCenter.addObserver(DcContext.DC_EVENT_MSG_DELIVERED, this);
-        dcContext.eventCenter.addObserver(DcContext.DC_EVENT_MSG_FAILED, this);
-        dcContext.eventCenter.addObserver(DcContext.DC_EVENT_MSG_READ, this);
-        dcContext.eventCenter.addObserver(DcContext.DC_EVENT_CHAT_MODIFIED, this);
-
         markseenDebouncer = new Debouncer(800);
     }
 
@@ -189,6 +200,11 @@ public class ConversationFragment extends Fragment
     @Override
     public void onDestroy() {
         dcContext.eventCenter.removeObservers(this);
+        if (list != null && getListAdapter() != null) {
+            Log.i(TAG, "message cache hits: " + getListAdapter().getCacheHits() + ", misses: " + getListAdapter().getCacheMisses());
+        }
+        Log.i(TAG, "events handled: " + eventsHandled + ", filtered as of other chats: " + eventsFiltered.get());
+        dcContext.markseenQueue.logStatistics();
         super.onDestroy();
     }
 
@@ -252,23 +268,48 @@ public class ConversationFragment extends Fragment
         this.recipient         = Recipient.from(getActivity(), Address.fromChat((int)this.chatId));
         this.startingPosition  = this.getActivity().getIntent().getIntExtra(ConversationActivity.STARTING_POSITION_EXTRA, -1);
         this.firstLoad         = true;
+        this.loadedMsgCount    = Math.max(startingPosition, 0) + PAGE_SIZE;
 
         OnScrollListener scrollListener = new ConversationScrollListener(getActivity());
         list.addOnScrollListener(scrollListener);
     }
 
     private void initializeListAdapter() {
+        subscribeToChatEvents();
+
         if (this.recipient != null && this.chatId != -1) {
             ConversationAdapter adapter = new ConversationAdapter(getActivity(), this.recipient.getChat(), GlideApp.with(this), locale, selectionClickListener, this.recipient);
             list.setAdapter(adapter);
             dateDecoration = new StickyHeaderDecoration(adapter, false, false);
             list.addItemDecoration(dateDecoration);
 
-            reloadList();
+            pendingChangedMsgIds.clear();
+            pendingFullReload = true;
+            getLoaderManager().restartLoader(MSG_LIST_LOADER, null, this);
             updateLocationButton();
         }
     }
 
+    /**
+     * Only the events of the shown chat are delivered,
+     * so that traffic in other chats does not cause reloads here.
+     */
+    private void subscribeToChatEvents() {
+        DcEventCenter eventCenter = dcContext.eventCenter;
+        eventCenter.removeObservers(this);
+        if (chatId == -1) {
+            return;
+        }
+
+        int observedChatId = (int) chatId;
+        eventCenter.addChatObserver(DcContext.DC_EVENT_INCOMING_MSG, observedChatId, this);
+        eventCenter.addChatObserver(DcContext.DC_EVENT_MSGS_CHANGED, observedChatId, this);
+        eventCenter.addChatObserver(DcContext.DC_EVENT_MSG_DELIVERED, observedChatId, this);
+        eventCenter.addChatObserver(DcContext.DC_EVENT_MSG_FAILED, observedChatId, this);
+        eventCenter.addChatObserver(DcContext.DC_EVENT_MSG_READ, observedChatId, this);
+        eventCenter.addChatObserver(DcContext.DC_EVENT_CHAT_MODIFIED, observedChatId, this);
+    }
+
     private void setCorrectMenuVisibility(Menu menu) {
         Set<DcMsg>         messageRecords = getListAdapter().getSelectedItems();
 
@@ -448,11 +489,60 @@ public class ConversationFragment extends Fragment
     }
 
     private void reloadList() {
+        reloadList(null);
+    }
+
+    /**
+     * Loads the message list again in the background, see onLoadFinished().
+     *
+     * @param changedMsgIds messages that may have changed besides new or deleted ones;
+     *                      null if this is unknown, all messages are reloaded then.
+     */
+    private void reloadList(@Nullable int[] changedMsgIds) {
+        if (changedMsgIds == null) {
+            pendingFullReload = true;
+        } else {
+            pendingChangedMsgIds.addAll(changedMsgIds);
+        }
+
+        // if the fragment is stopped, the loader remembers the change and loads when started again
+        Loader<int[]> loader = getLoaderManager().getLoader(MSG_LIST_LOADER);
+        if (loader != null) {
+            loader.onContentChanged();
+        }
+    }
+
+    @Override
+    public @NonNull Loader<int[]> onCreateLoader(int id, @Nullable Bundle args) {
+        // only the newest messages are loaded, so that opening a chat does not depend on its size;
+        // older ones are added by loadMoreIfNeeded() when the user scrolls up.
+        return new DcMsgListLoader(getActivity(), (int) chatId, 0, 0, loadedMsgCount);
+    }
+
+    @Override
+    public void onLoadFinished(@NonNull Loader<int[]> loader, int[] msgs) {
         ConversationAdapter adapter = getListAdapter();
         if (adapter == null) {
             return;
         }
 
+        int[] changedMsgIds = pendingFullReload? null : pendingChangedMsgIds.toArray();
+        pendingFullReload = false;
+        pendingChangedMsgIds.clear();
+
+        if (!firstLoad && changedMsgIds != null && adapter.isActive()) {
+            boolean wasAtBottom = ((LinearLayoutManager) list.getLayoutManager()).findFirstCompletelyVisibleItemPosition() == 0;
+            adapter.changeDataIncrementally(msgs, changedMsgIds, () -> {
+                // the RecyclerView keeps the visible items in place on granular updates;
+                // if the newest message was visible, show the newly arrived ones as well.
+                if (wasAtBottom) {
+                    list.scrollToPosition(0);
+                }
+                updateNoMessageText();
+            });
+            return;
+        }
+
         int oldCount = 0;
         int oldIndex = 0;
         int pixelOffset = 0;
@@ -463,7 +553,6 @@ public class ConversationFragment extends Fragment
             pixelOffset = (firstView == null) ? 0 : list.getBottom() - firstView.getBottom() - list.getPaddingBottom();
         }
 
-        int[] msgs = DcHelper.getContext(getContext()).getChatMsgs((int) chatId, 0, 0);
         adapter.changeData(msgs);
         int lastSeenPosition = adapter.getLastSeenPosition();
 
@@ -483,6 +572,31 @@ public class ConversationFragment extends Fragment
             ((LinearLayoutManager) list.getLayoutManager()).scrollToPositionWithOffset(newIndex, pixelOffset);
         }
 
+        updateNoMessageText();
+    }
+
+    @Override
+    public void onLoaderReset(@NonNull Loader<int[]> loader) {
+    }
+
+    private void loadMoreIfNeeded(int lastVisiblePosition) {
+        ConversationAdapter adapter = getListAdapter();
+        if (adapter == null || adapter.getItemCount() < loadedMsgCount) {
+            return; // all messages are loaded
+        }
+
+        if (lastVisiblePosition >= adapter.getItemCount() - LOAD_MORE_THRESHOLD) {
+            loadedMsgCount += PAGE_SIZE;
+            getLoaderManager().restartLoader(MSG_LIST_LOADER, null, this);
+        }
+    }
+
+    private void updateNoMessageText() {
+        ConversationAdapter adapter = getListAdapter();
+        if (adapter == null) {
+            return;
+        }
+
         if(!adapter.isActive()){
             setNoMessageText();
             noMessageTextView.setVisibility(View.VISIBLE);
@@ -554,6 +668,17 @@ public class ConversationFragment extends Fragment
 //            lastPositionId        = positionId;
 
             markseenDebouncer.publish(() -> manageMessageSeenState());
+
+            if (dy != 0) {
+                // the list is laid out reversed, scrolling up (dy < 0) shows older messages
+                LinearLayoutManager layoutManager = (LinearLayoutManager) rv.getLayoutManager();
+                getListAdapter().prefetch(layoutManager.findFirstVisibleItemPosition(),
+                                          layoutManager.findLastVisibleItemPosition(),
+                                          dy < 0);
+                if (dy < 0) {
+                    loadMoreIfNeeded(layoutManager.findLastVisibleItemPosition());
+                }
+            }
         }
 
         @Override
@@ -600,16 +725,14 @@ public class ConversationFragment extends Fragment
             return;
         }
 
+        // the ids come from the adapter's id list, checking whether the messages
+        // are incoming and not yet seen is up to the queue on its background thread
+        ConversationAdapter adapter = getListAdapter();
         int[] ids = new int[lastPos - firstPos + 1];
-        int index = 0;
         for(int pos = firstPos; pos <= lastPos; pos++) {
-            DcMsg message = ((ConversationAdapter) list.getAdapter()).getMsg(pos);
-            if (message.getFromId() != DC_CONTACT_ID_SELF && !message.isSeen()) {
-                ids[index] = message.getId();
-                index++;
-            }
+            ids[pos - firstPos] = (int) adapter.getItemId(pos);
         }
-        dcContext.markseenMsgs(ids);
+        dcContext.markseenQueue.add(ids);
     }
 
 
@@ -817,6 +940,8 @@ public class ConversationFragment extends Fragment
 
     @Override
     public void handleEvent(int eventId, Object data1, Object data2) {
+        eventsHandled++;
+
         if (eventId == DcContext.DC_EVENT_CHAT_MODIFIED) {
             updateLocationButton();
         }
@@ -828,6 +953,32 @@ public class ConversationFragment extends Fragment
             setLastSeen(-1);
         }*/
 
-        reloadList();
+        reloadList(getChangedMsgIds(eventId, data2));
+    }
+
+    @Override
+    public void onEventFiltered(int eventId) {
+        eventsFiltered.incrementAndGet();
+    }
+
+    private @Nullable int[] getChangedMsgIds(int eventId, Object data2) {
+        switch (eventId) {
+            case DcContext.DC_EVENT_INCOMING_MSG:
+            case DcContext.DC_EVENT_MSG_DELIVERED:
+            case DcContext.DC_EVENT_MSG_FAILED:
+            case DcContext.DC_EVENT_MSG_READ:
+                int msgId = Util.objectToInt(data2);
+                return msgId != 0? new int[]{msgId} : null;
+
+            case DcContext.DC_EVENT_MSGS_CHANGED:
+                if (data2 instanceof DcEventCoalescer.ChangedSet) {
+                    DcEventCoalescer.ChangedSet changedSet = (DcEventCoalescer.ChangedSet) data2;
+                    return changedSet.isAnyMsg()? null : changedSet.getMsgIds();
+                }
+                return null;
+
+            default:
+                return null;
+        }
     }
 }
@@ -47,6 +47,7 @@ import org.thoughtcrime.securesms.components.AvatarImageView;
 import org.thoughtcrime.securesms.components.ConversationItemFooter;
 import org.thoughtcrime.securesms.components.ConversationItemThumbnail;
 import org.thoughtcrime.securesms.components.DocumentView;
+import org.thoughtcrime.securesms.components.emoji.EmojiTextView;
 import org.thoughtcrime.securesms.connect.ApplicationDcContext;
 import org.thoughtcrime.securesms.connect.DcHelper;
 import org.thoughtcrime.securesms.mms.AudioSlide;
@@ -62,6 +63,7 @@ import org.thoughtcrime.securesms.util.MediaUtil;
 import org.thoughtcrime.securesms.util.Prefs;
 import org.thoughtcrime.securesms.util.ViewUtil;
 import org.thoughtcrime.securesms.util.views.Stub;
+import org.thoughtcrime.securesms.video.VideoThumbnailCache;
 
 import java.util.HashSet;
 import java.util.Locale;
@@ -90,7 +92,7 @@ public class ConversationItem extends LinearLayout
   private GlideRequests glideRequests;
 
   protected ViewGroup              bodyBubble;
-  private   TextView               bodyText;
+  private   EmojiTextView          bodyText;
   private   ConversationItemFooter footer;
   private   TextView               groupSender;
   private   View                   groupSenderHolder;
@@ -337,7 +339,7 @@ public class ConversationItem extends LinearLayout
       bodyText.setVisibility(View.GONE);
     }
     else {
-      bodyText.setText(linkifyMessageBody(new SpannableString(text), batchSelected.isEmpty()));
+      bodyText.setText(linkifyMessageBody(new SpannableString(text), batchSelected.isEmpty()), messageRecord.getId());
       bodyText.setVisibility(View.VISIBLE);
     }
 
@@ -421,7 +423,7 @@ public class ConversationItem extends LinearLayout
       MediaUtil.ThumbnailSize thumbnailSize = new MediaUtil.ThumbnailSize(messageRecord.getWidth(0), messageRecord.getHeight(0));
       if ((thumbnailSize.width<=0||thumbnailSize.height<=0)) {
         if(messageRecord.getType()==DcMsg.DC_MSG_VIDEO) {
-          MediaUtil.createVideoThumbnailIfNeeded(context, slide.getUri(), slide.getThumbnailUri(), thumbnailSize);
+          VideoThumbnailCache.getInstance(context).readVideoSize(context, slide.getUri(), thumbnailSize);
         }
         if (thumbnailSize.width<=0||thumbnailSize.height<=0) {
           thumbnailSize.width = 180;
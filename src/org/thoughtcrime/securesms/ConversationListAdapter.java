@@ -26,17 +26,15 @@ import android.view.View;
 import android.view.ViewGroup;
 
 import com.b44t.messenger.DcChat;
-import com.b44t.messenger.DcChatlist;
-import com.b44t.messenger.DcLot;
+import com.b44t.messenger.DcMsg;
 
 import org.thoughtcrime.securesms.connect.ApplicationDcContext;
+import org.thoughtcrime.securesms.connect.DcChatlistSnapshot;
 import org.thoughtcrime.securesms.connect.DcHelper;
 import org.thoughtcrime.securesms.mms.GlideRequests;
+import org.thoughtcrime.securesms.util.collections.IntSet;
 
-import java.util.Collections;
-import java.util.HashSet;
 import java.util.Locale;
-import java.util.Set;
 
 /**
  * A CursorAdapter for building a list of conversation threads.
@@ -51,13 +49,13 @@ class ConversationListAdapter extends RecyclerView.Adapter {
   private static final int MESSAGE_TYPE_DEADDROP       = 4; // DEADDROP and THREAD share the same class, however, for DEADDROP it is modified on construction so it cannot be reused
 
   private final @NonNull  ApplicationDcContext dcContext;
-  private @NonNull        DcChatlist           dcChatlist;
+  private @NonNull        DcChatlistSnapshot   dcChatlist;
   private final @NonNull  GlideRequests        glideRequests;
   private final @NonNull  Locale               locale;
   private final @NonNull  LayoutInflater       inflater;
   private final @Nullable ItemClickListener    clickListener;
 
-  private final Set<Long> batchSet  = Collections.synchronizedSet(new HashSet<Long>());
+  private final IntSet    batchSet  = new IntSet();
   private       boolean   batchMode = false;
 
   protected static class ViewHolder extends RecyclerView.ViewHolder {
@@ -90,7 +88,7 @@ class ConversationListAdapter extends RecyclerView.Adapter {
     super();
     this.glideRequests  = glideRequests;
     this.dcContext      = DcHelper.getContext(context);
-    this.dcChatlist     = new DcChatlist(0);
+    this.dcChatlist     = DcChatlistSnapshot.empty();
     this.locale         = locale;
     this.inflater       = LayoutInflater.from(context);
     this.clickListener  = clickListener;
@@ -130,9 +128,7 @@ class ConversationListAdapter extends RecyclerView.Adapter {
   @Override
   public void onBindViewHolder(RecyclerView.ViewHolder viewHolder, int i) {
     ViewHolder holder = (ViewHolder)viewHolder;
-    DcChat chat = dcContext.getChat(dcChatlist.getChatId(i));
-    DcLot summary = dcChatlist.getSummary(i, chat);
-    holder.getItem().bind(dcContext.getThreadRecord(summary, chat), dcChatlist.getMsgId(i), summary, glideRequests, locale, batchSet, batchMode);
+    holder.getItem().bind(dcChatlist.getThreadRecord(i), dcChatlist.getMsgId(i), dcChatlist.getSummary(i), glideRequests, locale, batchSet, batchMode);
   }
 
   @Override
@@ -152,15 +148,20 @@ class ConversationListAdapter extends RecyclerView.Adapter {
   }
 
   void toggleThreadInBatchSet(long threadId) {
-    if (batchSet.contains(threadId)) {
-      batchSet.remove(threadId);
-    } else if (threadId != -1) {
-      batchSet.add(threadId);
+    if (!batchSet.remove((int) threadId) && threadId != -1) {
+      batchSet.add((int) threadId);
     }
   }
 
-  Set<Long> getBatchSelections() {
-    return batchSet;
+  /**
+   * @return a copy of the selected chat ids, that can be used in the background.
+   */
+  int[] getBatchSelections() {
+    return batchSet.toArray();
+  }
+
+  int getBatchSelectionCount() {
+    return batchSet.size();
   }
 
   void initializeBatchMode(boolean toggle) {
@@ -175,9 +176,9 @@ class ConversationListAdapter extends RecyclerView.Adapter {
 
   void selectAllThreads() {
     for (int i = 0; i < dcChatlist.getCnt(); i++) {
-      long threadId = dcChatlist.getChatId(i);
-      if (threadId > DcChat.DC_CHAT_ID_LAST_SPECIAL) {
-        batchSet.add(threadId);
+      int chatId = dcChatlist.getChatId(i);
+      if (chatId > DcChat.DC_CHAT_ID_LAST_SPECIAL) {
+        batchSet.add(chatId);
       }
     }
     this.notifyDataSetChanged();
@@ -187,7 +188,9 @@ class ConversationListAdapter extends RecyclerView.Adapter {
   {
     for (int i = 0; i < dcChatlist.getCnt(); i++) {
       if (dcChatlist.getChatId(i) == DcChat.DC_CHAT_ID_DEADDROP) {
-       return dcContext.getMsg(dcChatlist.getMsgId(i)).getFromId();
+        try (DcMsg msg = dcContext.getMsg(dcChatlist.getMsgId(i))) {
+          return msg.getFromId();
+        }
       }
     }
     return 0;
@@ -199,8 +202,27 @@ class ConversationListAdapter extends RecyclerView.Adapter {
     void onSwitchToArchive();
   }
 
-  void changeData(@Nullable DcChatlist chatlist) {
-    dcChatlist = chatlist==null? new DcChatlist(0) : chatlist;
+  void changeData(@Nullable DcChatlistSnapshot chatlist) {
+    dcChatlist = chatlist==null? DcChatlistSnapshot.empty() : chatlist;
     notifyDataSetChanged();
   }
+
+  @NonNull DcChatlistSnapshot getData() {
+    return dcChatlist;
+  }
+
+  /**
+   * Replaces the data by a snapshot where only the given chats have changed, the order must be the same.
+   */
+  void changeChats(@NonNull DcChatlistSnapshot chatlist, @NonNull int[] chatIds) {
+    dcChatlist = chatlist;
+    for (int i = 0; i < dcChatlist.getCnt(); i++) {
+      for (int chatId : chatIds) {
+        if (dcChatlist.getChatId(i) == chatId) {
+          notifyItemChanged(i);
+          break;
+        }
+      }
+    }
+  }
 }
\ No newline at end of file
@@ -45,7 +45,6 @@ import android.view.ViewGroup;
 import android.widget.TextView;
 
 import com.b44t.messenger.DcChat;
-import com.b44t.messenger.DcChatlist;
 import com.b44t.messenger.DcContact;
 import com.b44t.messenger.DcContext;
 import com.b44t.messenger.DcEventCenter;
@@ -59,17 +58,18 @@ import org.thoughtcrime.securesms.components.reminder.Reminder;
 import org.thoughtcrime.securesms.components.reminder.ReminderView;
 import org.thoughtcrime.securesms.connect.ApplicationDcContext;
 import org.thoughtcrime.securesms.connect.DcChatlistLoader;
+import org.thoughtcrime.securesms.connect.DcChatlistSnapshot;
+import org.thoughtcrime.securesms.connect.DcEventCoalescer;
 import org.thoughtcrime.securesms.connect.DcHelper;
 import org.thoughtcrime.securesms.mms.GlideApp;
 import org.thoughtcrime.securesms.notifications.MessageNotifierCompat;
+import org.thoughtcrime.securesms.util.Util;
 import org.thoughtcrime.securesms.util.ViewUtil;
 import org.thoughtcrime.securesms.util.guava.Optional;
 import org.thoughtcrime.securesms.util.task.SnackbarAsyncTask;
 import org.thoughtcrime.securesms.util.views.ProgressDialog;
 
-import java.util.HashSet;
 import java.util.Locale;
-import java.util.Set;
 
 import static org.thoughtcrime.securesms.util.RelayUtil.REQUEST_RELAY;
 import static org.thoughtcrime.securesms.util.RelayUtil.acquireRelayMessageContent;
@@ -77,7 +77,7 @@ import static org.thoughtcrime.securesms.util.RelayUtil.isRelayingMessageContent
 
 
 public class ConversationListFragment extends Fragment
-  implements LoaderManager.LoaderCallbacks<DcChatlist>, ActionMode.Callback, ItemClickListener, DcEventCenter.DcEventDelegate
+  implements LoaderManager.LoaderCallbacks<DcChatlistSnapshot>, ActionMode.Callback, ItemClickListener, DcEventCenter.DcEventDelegate
 {
   public static final String ARCHIVE = "archive";
 
@@ -218,7 +218,7 @@ public class ConversationListFragment extends Fragment
   @SuppressLint("StaticFieldLeak")
   private void handleArchiveAllSelected() {
     final DcContext dcContext             = DcHelper.getContext(getActivity());
-    final Set<Long> selectedConversations = new HashSet<>(getListAdapter().getBatchSelections());
+    final int[]     selectedConversations = getListAdapter().getBatchSelections();
     final boolean   archive               = this.archive;
 
     int snackBarTitleId;
@@ -226,7 +226,7 @@ public class ConversationListFragment extends Fragment
     if (archive) snackBarTitleId = R.plurals.chat_unarchived;
     else         snackBarTitleId = R.plurals.chat_archived;
 
-    int count            = selectedConversations.size();
+    int count            = selectedConversations.length;
     String snackBarTitle = getResources().getQuantityString(snackBarTitleId, count, count);
 
     new SnackbarAsyncTask<Void>(getView(), snackBarTitle,
@@ -246,20 +246,20 @@ public class ConversationListFragment extends Fragment
 
       @Override
       protected void executeAction(@Nullable Void parameter) {
-        for (long chatId : selectedConversations) {
+        for (int chatId : selectedConversations) {
           if (chatId == DcChat.DC_CHAT_ID_DEADDROP) {
             dcContext.marknoticedContact(getListAdapter().getDeaddropContactId());
           }
           else {
-            dcContext.archiveChat((int)chatId, !archive? 1 : 0);
+            dcContext.archiveChat(chatId, !archive? 1 : 0);
           }
         }
       }
 
       @Override
       protected void reverseAction(@Nullable Void parameter) {
-        for (long threadId : selectedConversations) {
-          dcContext.archiveChat((int)threadId, !archive? 0 : 1);
+        for (int threadId : selectedConversations) {
+          dcContext.archiveChat(threadId, !archive? 0 : 1);
         }
       }
     }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
@@ -268,17 +268,16 @@ public class ConversationListFragment extends Fragment
   @SuppressLint("StaticFieldLeak")
   private void handleDeleteAllSelected() {
     final DcContext     dcContext          = DcHelper.getContext(getActivity());
-    int                 conversationsCount = getListAdapter().getBatchSelections().size();
+    int                 conversationsCount = getListAdapter().getBatchSelectionCount();
     AlertDialog.Builder alert              = new AlertDialog.Builder(getActivity());
     alert.setMessage(getActivity().getResources().getQuantityString(R.plurals.ask_delete_chat,
                                                                     conversationsCount, conversationsCount));
     alert.setCancelable(true);
 
     alert.setPositiveButton(R.string.delete, (dialog, which) -> {
-      final Set<Long> selectedConversations = (getListAdapter())
-          .getBatchSelections();
+      final int[] selectedConversations = getListAdapter().getBatchSelections();
 
-      if (!selectedConversations.isEmpty()) {
+      if (selectedConversations.length > 0) {
         new AsyncTask<Void, Void, Void>() {
           private ProgressDialog dialog;
 
@@ -292,13 +291,13 @@ public class ConversationListFragment extends Fragment
 
           @Override
           protected Void doInBackground(Void... params) {
-            for (long chatId : selectedConversations) {
+            for (int chatId : selectedConversations) {
               if (chatId == DcChat.DC_CHAT_ID_DEADDROP) {
                 dcContext.marknoticedContact(getListAdapter().getDeaddropContactId());
               }
               else {
-                MessageNotifierCompat.removeNotifications((int) chatId);
-                dcContext.deleteChat((int) chatId);
+                MessageNotifierCompat.removeNotifications(chatId);
+                dcContext.deleteChat(chatId);
               }
             }
             return null;
@@ -322,7 +321,7 @@ public class ConversationListFragment extends Fragment
 
   private void handleSelectAllThreads() {
     getListAdapter().selectAllThreads();
-    actionMode.setTitle(String.valueOf(getListAdapter().getBatchSelections().size()));
+    actionMode.setTitle(String.valueOf(getListAdapter().getBatchSelectionCount()));
   }
 
   private void handleCreateConversation(int chatId) {
@@ -330,7 +329,7 @@ public class ConversationListFragment extends Fragment
   }
 
   @Override
-  public Loader<DcChatlist> onCreateLoader(int arg0, Bundle arg1) {
+  public Loader<DcChatlistSnapshot> onCreateLoader(int arg0, Bundle arg1) {
     int listflags = 0;
     if(archive) {
       listflags |= DcContext.DC_GCL_ARCHIVED_ONLY;
@@ -343,7 +342,7 @@ public class ConversationListFragment extends Fragment
 
 
   @Override
-  public void onLoadFinished(Loader<DcChatlist> arg0, DcChatlist chatlist) {
+  public void onLoadFinished(Loader<DcChatlistSnapshot> arg0, DcChatlistSnapshot chatlist) {
     if (chatlist.getCnt() <= 0 && TextUtils.isEmpty(queryFilter) && !archive) {
       list.setVisibility(View.INVISIBLE);
       emptyState.setVisibility(View.VISIBLE);
@@ -366,7 +365,7 @@ public class ConversationListFragment extends Fragment
   }
 
   @Override
-  public void onLoaderReset(Loader<DcChatlist> arg0) {
+  public void onLoaderReset(Loader<DcChatlistSnapshot> arg0) {
     getListAdapter().changeData(null);
   }
 
@@ -403,10 +402,10 @@ public class ConversationListFragment extends Fragment
       ConversationListAdapter adapter = (ConversationListAdapter)list.getAdapter();
       adapter.toggleThreadInBatchSet(item.getChatId());
 
-      if (adapter.getBatchSelections().size() == 0) {
+      if (adapter.getBatchSelectionCount() == 0) {
         actionMode.finish();
       } else {
-        actionMode.setTitle(String.valueOf(getListAdapter().getBatchSelections().size()));
+        actionMode.setTitle(String.valueOf(getListAdapter().getBatchSelectionCount()));
       }
 
       adapter.notifyDataSetChanged();
@@ -485,7 +484,33 @@ public class ConversationListFragment extends Fragment
 
   @Override
   public void handleEvent(int eventId, Object data1, Object data2) {
-    getLoaderManager().restartLoader(0,null,this);
+    if (eventId == DcContext.DC_EVENT_CHAT_MODIFIED && data2 instanceof DcEventCoalescer.ChangedSet
+     && !((DcEventCoalescer.ChangedSet) data2).isAnyChat()) {
+      refreshChats(((DcEventCoalescer.ChangedSet) data2).getChatIds());
+    } else {
+      getLoaderManager().restartLoader(0,null,this);
+    }
+  }
+
+  private void refreshChats(int[] chatIds) {
+    // a modified chat does not change the order of the chatlist,
+    // so it is sufficient to reload the affected rows.
+    ApplicationDcContext     dcContext = DcHelper.getContext(getActivity());
+    final DcChatlistSnapshot oldData   = getListAdapter().getData();
+    Util.runOnBackground(() -> {
+      DcChatlistSnapshot newData = oldData.withRefreshedChats(dcContext, chatIds);
+      Util.runOnMain(() -> {
+        if (!isAdded()) {
+          return;
+        }
+        if (getListAdapter().getData() == oldData) {
+          getListAdapter().changeChats(newData, chatIds);
+        } else {
+          // the list was reloaded meanwhile, maybe from an older state
+          getLoaderManager().restartLoader(0, null, this);
+        }
+      });
+    });
   }
 }
 
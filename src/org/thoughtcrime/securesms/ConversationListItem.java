@@ -44,6 +44,7 @@ import com.b44t.messenger.DcMsg;
 import org.thoughtcrime.securesms.components.AvatarImageView;
 import org.thoughtcrime.securesms.components.DeliveryStatusView;
 import org.thoughtcrime.securesms.components.FromTextView;
+import org.thoughtcrime.securesms.components.emoji.EmojiTextView;
 import org.thoughtcrime.securesms.connect.ApplicationDcContext;
 import org.thoughtcrime.securesms.connect.DcHelper;
 import org.thoughtcrime.securesms.database.model.ThreadRecord;
@@ -53,11 +54,10 @@ import org.thoughtcrime.securesms.util.DateUtils;
 import org.thoughtcrime.securesms.util.Prefs;
 import org.thoughtcrime.securesms.util.ThemeUtil;
 import org.thoughtcrime.securesms.util.ViewUtil;
+import org.thoughtcrime.securesms.util.collections.IntSet;
 
-import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
-import java.util.Set;
 
 public class ConversationListItem extends RelativeLayout
                                   implements BindableConversationListItem, Unbindable
@@ -68,12 +68,15 @@ public class ConversationListItem extends RelativeLayout
   private final static Typeface  BOLD_TYPEFACE  = Typeface.create("sans-serif-medium", Typeface.NORMAL);
   private final static Typeface  LIGHT_TYPEFACE = Typeface.create("sans-serif", Typeface.NORMAL);
 
+  // for items that cannot be selected, never modified
+  public final static IntSet NO_SELECTION = new IntSet(0);
+
   private DcLot              dcSummary;
-  private Set<Long>          selectedThreads;
+  private IntSet             selectedThreads;
   private long               chatId;
   private int                msgId;
   private GlideRequests      glideRequests;
-  private TextView           subjectView;
+  private EmojiTextView      subjectView;
   private FromTextView       fromView;
   private TextView           dateView;
   private TextView           archivedView;
@@ -112,7 +115,7 @@ public class ConversationListItem extends RelativeLayout
                    @NonNull DcLot dcSummary,
                    @NonNull GlideRequests glideRequests,
                    @NonNull Locale locale,
-                   @NonNull Set<Long> selectedThreads,
+                   @NonNull IntSet selectedThreads,
                    boolean batchMode)
   {
     bind(thread, msgId, dcSummary, glideRequests, locale, selectedThreads, batchMode, null);
@@ -123,7 +126,7 @@ public class ConversationListItem extends RelativeLayout
                    @NonNull DcLot dcSummary,
                    @NonNull GlideRequests glideRequests,
                    @NonNull Locale locale,
-                   @NonNull Set<Long> selectedThreads,
+                   @NonNull IntSet selectedThreads,
                    boolean batchMode,
                    @Nullable String highlightSubstring)
   {
@@ -141,7 +144,7 @@ public class ConversationListItem extends RelativeLayout
       this.fromView.setText(recipient, unreadCount == 0);
     }
 
-    this.subjectView.setText(thread.getDisplayBody());
+    this.subjectView.setText(thread.getDisplayBody(), msgId);
     this.subjectView.setTypeface(unreadCount == 0 ? LIGHT_TYPEFACE : BOLD_TYPEFACE);
     this.subjectView.setTextColor(unreadCount == 0 ? ThemeUtil.getThemedColor(getContext(), R.attr.conversation_list_item_subject_color)
                                                    : ThemeUtil.getThemedColor(getContext(), R.attr.conversation_list_item_unread_color));
@@ -163,7 +166,7 @@ public class ConversationListItem extends RelativeLayout
 
     ApplicationDcContext dcContext = DcHelper.getContext(getContext());
     if(chatId == DcChat.DC_CHAT_ID_DEADDROP) {
-      DcContact dcContact = dcContext.getContact(dcContext.getMsg(msgId).getFromId());
+      DcContact dcContact = dcContext.getContact(getContactId());
       this.contactPhotoImage.setAvatar(glideRequests, dcContext.getRecipient(dcContact), false);
     }
     else {
@@ -182,7 +185,7 @@ public class ConversationListItem extends RelativeLayout
                    @NonNull  Locale        locale,
                    @Nullable String        highlightSubstring)
   {
-    this.selectedThreads = Collections.emptySet();
+    this.selectedThreads = NO_SELECTION;
     Recipient recipient  = DcHelper.getContext(getContext()).getRecipient(contact);
     this.glideRequests   = glideRequests;
 
@@ -207,7 +210,7 @@ public class ConversationListItem extends RelativeLayout
   {
     ApplicationDcContext dcContext = DcHelper.getContext(getContext());
     DcContact sender = dcContext.getContact(messageResult.getFromId());
-    this.selectedThreads = Collections.emptySet();
+    this.selectedThreads = NO_SELECTION;
     Recipient recipient  = DcHelper.getContext(getContext()).getRecipient(sender);
     this.glideRequests   = glideRequests;
 
@@ -237,7 +240,7 @@ public class ConversationListItem extends RelativeLayout
   }
 
   private void setBatchState(boolean batch) {
-    setSelected(batch && selectedThreads.contains(chatId));
+    setSelected(batch && selectedThreads.contains((int) chatId));
   }
 
   public long getChatId() {
@@ -250,7 +253,9 @@ public class ConversationListItem extends RelativeLayout
 
   public int getContactId() {
     DcContext dcContext = DcHelper.getContext(getContext());
-    return dcContext.getMsg(msgId).getFromId();
+    try (DcMsg msg = dcContext.getMsg(msgId)) {
+      return msg.getFromId();
+    }
   }
 
   private void setStatusIcons(ThreadRecord thread) {
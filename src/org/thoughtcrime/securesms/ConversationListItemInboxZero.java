@@ -13,9 +13,9 @@ import com.b44t.messenger.DcLot;
 
 import org.thoughtcrime.securesms.database.model.ThreadRecord;
 import org.thoughtcrime.securesms.mms.GlideRequests;
+import org.thoughtcrime.securesms.util.collections.IntSet;
 
 import java.util.Locale;
-import java.util.Set;
 
 public class ConversationListItemInboxZero extends LinearLayout implements BindableConversationListItem{
   public ConversationListItemInboxZero(Context context) {
@@ -41,7 +41,7 @@ public class ConversationListItemInboxZero extends LinearLayout implements Binda
   }
 
   @Override
-  public void bind(@NonNull ThreadRecord thread, int msgId, @NonNull DcLot dcSummary, @NonNull GlideRequests glideRequests, @NonNull Locale locale, @NonNull Set<Long> selectedThreads, boolean batchMode) {
+  public void bind(@NonNull ThreadRecord thread, int msgId, @NonNull DcLot dcSummary, @NonNull GlideRequests glideRequests, @NonNull Locale locale, @NonNull IntSet selectedThreads, boolean batchMode) {
 
   }
 }
@@ -0,0 +1,74 @@
+package org.thoughtcrime.securesms;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+/**
+ * A single, already scrubbed line of the log together with the level and the tag of the entry.
+ */
+class LogLine {
+
+  final @NonNull String text;
+  final int             level;
+  final @NonNull String tag;
+  final boolean         header;
+
+  private LogLine(@NonNull String text, int level, @NonNull String tag, boolean header) {
+    this.text   = text;
+    this.level  = level;
+    this.tag    = tag;
+    this.header = header;
+  }
+
+  /**
+   * Lines of the description at the top, they are shown regardless of the filters.
+   */
+  static LogLine header(@NonNull String text) {
+    return new LogLine(text, Log.ASSERT, "", true);
+  }
+
+  /**
+   * Parses a line in the format of `logcat -v threadtime`, eg.
+   * `01-23 12:34:56.789  1234  5678 I DcContext: message`.
+   * Lines not in this format, as the `--------- beginning of main` separators,
+   * are taken as verbose lines without tag.
+   */
+  static LogLine parse(@NonNull String text) {
+    int pos = 0;
+    for (int field = 0; field < 4; field++) { // date, time, pid, tid
+      pos = skipSpaces(text, skipNonSpaces(text, skipSpaces(text, pos)));
+    }
+
+    if (pos + 1 < text.length() && text.charAt(pos + 1) == ' ') {
+      int level = toLevel(text.charAt(pos));
+      int colon = text.indexOf(": ", pos + 2);
+      if (level != 0 && colon != -1) {
+        return new LogLine(text, level, text.substring(pos + 2, colon).trim(), false);
+      }
+    }
+    return new LogLine(text, Log.VERBOSE, "", false);
+  }
+
+  private static int skipSpaces(String text, int pos) {
+    while (pos < text.length() && text.charAt(pos) == ' ') pos++;
+    return pos;
+  }
+
+  private static int skipNonSpaces(String text, int pos) {
+    while (pos < text.length() && text.charAt(pos) != ' ') pos++;
+    return pos;
+  }
+
+  private static int toLevel(char c) {
+    switch (c) {
+      case 'V': return Log.VERBOSE;
+      case 'D': return Log.DEBUG;
+      case 'I': return Log.INFO;
+      case 'W': return Log.WARN;
+      case 'E': return Log.ERROR;
+      case 'F': return Log.ASSERT;
+      default:  return 0;
+    }
+  }
+}
@@ -1,10 +1,14 @@
 package org.thoughtcrime.securesms;
 
+import android.content.Context;
 import android.os.Bundle;
+import androidx.appcompat.app.AlertDialog;
 import androidx.fragment.app.FragmentTransaction;
+import android.util.Log;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
+import android.widget.EditText;
 import android.widget.Toast;
 
 import org.thoughtcrime.securesms.util.DynamicLanguage;
@@ -63,15 +67,22 @@ public class LogViewActivity extends BaseActionBarActivity {
         finish();
         return true;
       case R.id.save_log:
-        if (logViewFragment.saveLogFile())
-          Toast.makeText(getApplicationContext(), R.string.pref_saved_log, Toast.LENGTH_LONG).show();
-        else
-          Toast.makeText(getApplicationContext(), R.string.pref_save_log_failed, Toast.LENGTH_LONG).show();
+        Context context = getApplicationContext();
+        Util.runOnBackground(() -> {
+          boolean saved = LogViewFragment.saveLogFile(context);
+          Util.runOnMain(() -> Toast.makeText(context, saved? R.string.pref_saved_log : R.string.pref_save_log_failed, Toast.LENGTH_LONG).show());
+        });
         return true;
       case R.id.copy_log_to_clipboard:
         Util.writeTextToClipboard(this, logViewFragment.getLogText());
         Toast.makeText(getApplicationContext(), R.string.done, Toast.LENGTH_SHORT).show();
         return true;
+      case R.id.log_level:
+        showLogLevelDialog();
+        return true;
+      case R.id.log_filter_tag:
+        showTagFilterDialog();
+        return true;
       case R.id.log_zoom_in:
         newSize = logViewFragment.getLogTextSize() + 2.0f;
         logViewFragment.setLogTextSize(newSize);
@@ -90,4 +101,29 @@ public class LogViewActivity extends BaseActionBarActivity {
 
     return false;
   }
+
+  private void showLogLevelDialog() {
+    new AlertDialog.Builder(this)
+        .setTitle(R.string.menu_log_level)
+        .setSingleChoiceItems(R.array.log_levels, logViewFragment.getMinLevel() - Log.VERBOSE, (dialog, which) -> {
+          logViewFragment.setFilter(Log.VERBOSE + which, logViewFragment.getTagFilter());
+          dialog.dismiss();
+        })
+        .setNegativeButton(android.R.string.cancel, null)
+        .show();
+  }
+
+  private void showTagFilterDialog() {
+    final EditText input = new EditText(this);
+    input.setSingleLine();
+    input.setText(logViewFragment.getTagFilter());
+
+    new AlertDialog.Builder(this)
+        .setTitle(R.string.menu_filter_log_by_tag)
+        .setView(input)
+        .setPositiveButton(android.R.string.ok, (dialog, which) ->
+            logViewFragment.setFilter(logViewFragment.getMinLevel(), input.getText().toString()))
+        .setNegativeButton(android.R.string.cancel, null)
+        .show();
+  }
 }
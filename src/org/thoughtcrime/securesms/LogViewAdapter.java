@@ -0,0 +1,180 @@
+package org.thoughtcrime.securesms;
+
+import android.util.Log;
+import android.util.TypedValue;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Shows the log line by line.
+ *
+ * The lines are kept in a ring buffer of MAX_LINES, older lines are dropped as new ones are added.
+ * Only the lines matching the level and tag filter are shown;
+ * the header lines with the description are always shown on top.
+ */
+class LogViewAdapter extends RecyclerView.Adapter<LogViewAdapter.LineViewHolder> {
+
+  static final int MAX_LINES = 20000;
+
+  private final List<LogLine> headerLines = new ArrayList<>();
+
+  // line number n is at lines[n % MAX_LINES] as long as n >= nextLineNumber - MAX_LINES
+  private final LogLine[] lines = new LogLine[MAX_LINES];
+  private long            nextLineNumber;
+
+  // line numbers of the lines matching the filter, in visible[visibleStart] to visible[visibleEnd-1]
+  private long[] visible = new long[1024];
+  private int    visibleStart;
+  private int    visibleEnd;
+
+  private int    minLevel  = Log.VERBOSE;
+  private String tagFilter = "";
+  private float  textSizePx;
+
+  LogViewAdapter(float textSizePx) {
+    this.textSizePx = textSizePx;
+  }
+
+  @Override
+  public @NonNull LineViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+    return new LineViewHolder(LayoutInflater.from(parent.getContext()).inflate(R.layout.log_view_item, parent, false));
+  }
+
+  @Override
+  public void onBindViewHolder(@NonNull LineViewHolder holder, int position) {
+    holder.textView.setTextSize(TypedValue.COMPLEX_UNIT_PX, textSizePx);
+    holder.textView.setText(getLine(position).text);
+  }
+
+  @Override
+  public int getItemCount() {
+    return headerLines.size() + visibleEnd - visibleStart;
+  }
+
+  private LogLine getLine(int position) {
+    if (position < headerLines.size()) {
+      return headerLines.get(position);
+    }
+    return lines[(int) (visible[visibleStart + position - headerLines.size()] % MAX_LINES)];
+  }
+
+  void setHeaderLines(@NonNull List<LogLine> newHeaderLines) {
+    int oldCount = headerLines.size();
+    headerLines.clear();
+    headerLines.addAll(newHeaderLines);
+    notifyItemRangeRemoved(0, oldCount);
+    notifyItemRangeInserted(0, headerLines.size());
+  }
+
+  void addLines(@NonNull List<LogLine> newLines) {
+    int oldCount = getItemCount();
+    for (LogLine line : newLines) {
+      lines[(int) (nextLineNumber % MAX_LINES)] = line;
+      if (matchesFilter(line)) {
+        appendVisible(nextLineNumber);
+      }
+      nextLineNumber++;
+    }
+    int inserted = getItemCount() - oldCount;
+
+    // drop lines that were overwritten in the ring buffer
+    long oldestLineNumber = Math.max(0, nextLineNumber - MAX_LINES);
+    int  removed          = 0;
+    while (visibleStart < visibleEnd && visible[visibleStart] < oldestLineNumber) {
+      visibleStart++;
+      removed++;
+    }
+
+    if (removed > 0) {
+      notifyItemRangeRemoved(headerLines.size(), removed);
+    }
+    if (inserted > 0) {
+      notifyItemRangeInserted(oldCount - removed, inserted);
+    }
+  }
+
+  private void appendVisible(long lineNumber) {
+    if (visibleEnd == visible.length) {
+      if (visibleStart > visible.length / 2) {
+        System.arraycopy(visible, visibleStart, visible, 0, visibleEnd - visibleStart);
+      } else {
+        long[] grown = new long[visible.length * 2];
+        System.arraycopy(visible, visibleStart, grown, 0, visibleEnd - visibleStart);
+        visible = grown;
+      }
+      visibleEnd -= visibleStart;
+      visibleStart = 0;
+    }
+    visible[visibleEnd++] = lineNumber;
+  }
+
+  private boolean matchesFilter(@NonNull LogLine line) {
+    return line.level >= minLevel
+        && (tagFilter.isEmpty() || line.tag.toLowerCase(Locale.ENGLISH).contains(tagFilter));
+  }
+
+  /**
+   * @param minLevel the minimal level of shown lines, eg. android.util.Log.WARN
+   * @param tagFilter only lines with a tag containing this string are shown, empty for all lines.
+   */
+  void setFilter(int minLevel, @NonNull String tagFilter) {
+    this.minLevel  = minLevel;
+    this.tagFilter = tagFilter.trim().toLowerCase(Locale.ENGLISH);
+
+    visibleStart = 0;
+    visibleEnd   = 0;
+    for (long lineNumber = Math.max(0, nextLineNumber - MAX_LINES); lineNumber < nextLineNumber; lineNumber++) {
+      if (matchesFilter(lines[(int) (lineNumber % MAX_LINES)])) {
+        appendVisible(lineNumber);
+      }
+    }
+    notifyDataSetChanged();
+  }
+
+  int getMinLevel() {
+    return minLevel;
+  }
+
+  @NonNull String getTagFilter() {
+    return tagFilter;
+  }
+
+  float getTextSize() {
+    return textSizePx;
+  }
+
+  void setTextSize(float textSizePx) {
+    this.textSizePx = textSizePx;
+    notifyDataSetChanged();
+  }
+
+  /**
+   * @return all shown lines as one string.
+   */
+  @NonNull String getText() {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < getItemCount(); i++) {
+      builder.append(getLine(i).text).append('\n');
+    }
+    return builder.toString();
+  }
+
+  static class LineViewHolder extends RecyclerView.ViewHolder {
+
+    final TextView textView;
+
+    LineViewHolder(View itemView) {
+      super(itemView);
+      textView = (TextView) itemView;
+    }
+  }
+}
@@ -27,19 +27,23 @@ import android.os.Build.VERSION;
 import android.os.Build.VERSION_CODES;
 import android.os.Bundle;
 import android.os.PowerManager;
+import android.os.SystemClock;
+import androidx.annotation.WorkerThread;
 import androidx.fragment.app.Fragment;
-import android.text.TextUtils;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 import android.util.Log;
 import android.util.TypedValue;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.EditText;
 
+import com.b44t.messenger.DcCleaner;
 import com.b44t.messenger.DcContext;
 
 import org.thoughtcrime.securesms.connect.DcHelper;
 import org.thoughtcrime.securesms.database.NoExternalStorageException;
+import org.thoughtcrime.securesms.notifications.MessageNotifierCompat;
 import org.thoughtcrime.securesms.util.Scrubber;
 import org.thoughtcrime.securesms.util.StorageUtil;
 
@@ -51,13 +55,22 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.lang.ref.WeakReference;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.Locale;
 
 public class LogViewFragment extends Fragment {
   private static final String TAG = LogViewFragment.class.getSimpleName();
 
-  private EditText logPreview;
+  private static final String LOGCAT_COMMAND = "logcat -v threadtime -d";
+  private static final int    BATCH_LINES    = 500;
+  private static final long   BATCH_MS       = 100;
+
+  private RecyclerView             logList;
+  private LogViewAdapter           adapter;
+  private PopulateLogcatAsyncTask  populateTask;
 
   public static LogViewFragment newInstance()
   {
@@ -84,71 +97,90 @@ public class LogViewFragment extends Fragment {
   public void onViewCreated(View view, Bundle savedInstanceState) {
     super.onViewCreated(view, savedInstanceState);
 
-    logPreview   = (EditText) getView().findViewById(R.id.log_preview);
-    new PopulateLogcatAsyncTask(getActivity()).execute();
+    float textSize = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, 12, getResources().getDisplayMetrics());
+    adapter = new LogViewAdapter(textSize);
+    logList = view.findViewById(R.id.log_list);
+    logList.setLayoutManager(new LinearLayoutManager(getActivity()));
+    logList.setAdapter(adapter);
+
+    populateTask = new PopulateLogcatAsyncTask(getActivity());
+    populateTask.execute();
+  }
+
+  @Override
+  public void onDestroyView() {
+    if (populateTask != null) {
+      populateTask.cancel(false);
+      populateTask = null;
+    }
+    super.onDestroyView();
   }
 
   public String getLogText() {
-    return logPreview==null? "null" : logPreview.getText().toString();
+    return adapter==null? "null" : adapter.getText();
   }
 
-  public Float getLogTextSize() { return logPreview.getTextSize(); }
+  public Float getLogTextSize() { return adapter.getTextSize(); }
 
   public void setLogTextSize(Float textSize) {
-    logPreview.setTextSize(TypedValue.COMPLEX_UNIT_PX, textSize);
+    adapter.setTextSize(textSize);
   }
 
-  public void scrollDownLog() { logPreview.setSelection(logPreview.getText().length()); }
+  public void scrollDownLog() { logList.scrollToPosition(Math.max(0, adapter.getItemCount() - 1)); }
+
+  public void scrollUpLog() { logList.scrollToPosition(0); }
 
-  public void scrollUpLog() { logPreview.setSelection(0); }
+  public int getMinLevel() { return adapter.getMinLevel(); }
 
-  public boolean saveLogFile() {
+  public String getTagFilter() { return adapter.getTagFilter(); }
 
-    File             outputDir   = null;
+  /**
+   * @param minLevel the minimal level of shown lines, eg. android.util.Log.WARN
+   * @param tagFilter only lines with a tag containing this string are shown, empty for all lines.
+   */
+  public void setFilter(int minLevel, String tagFilter) {
+    adapter.setFilter(minLevel, tagFilter);
+  }
+
+  /**
+   * Writes the description and the complete, scrubbed log to the downloads folder.
+   * The log is streamed from logcat to the file, so it is not limited to the lines shown.
+   */
+  @WorkerThread
+  public static boolean saveLogFile(Context context) {
     SimpleDateFormat dateFormat  = new SimpleDateFormat("yyyyMMdd-HHmmss");
     Date             now         = new Date();
     String           logFileName = "deltachat-log-" + dateFormat.format(now) + ".txt";
 
+    Process process = null;
     try {
-      outputDir = StorageUtil.getDownloadDir();
-      String logText =  logPreview.getText().toString();
-      if(!logText.trim().equals("")){
-        File logFile = new File(outputDir + "/" + logFileName);
-
-        if(!logFile.exists()) logFile.createNewFile();
-
-        FileWriter logFileWriter = new FileWriter(logFile, false);
-        BufferedWriter logFileBufferWriter = new BufferedWriter(logFileWriter);
-        logFileBufferWriter.write(logText);
-        logFileBufferWriter.close();
+      File outputDir = StorageUtil.getDownloadDir();
+      File logFile   = new File(outputDir + "/" + logFileName);
+
+      process = Runtime.getRuntime().exec(LOGCAT_COMMAND);
+      try (BufferedReader logcatReader  = new BufferedReader(new InputStreamReader(process.getInputStream()));
+           BufferedWriter logFileWriter = new BufferedWriter(new FileWriter(logFile, false))) {
+        logFileWriter.write(buildDescription(context));
+        logFileWriter.write("\n");
+        int lines = new Scrubber().scrub(logcatReader, logFileWriter);
+        Log.i(TAG, "saved " + lines + " log lines to " + logFile);
       }
     } catch (IOException | NoExternalStorageException e) {
       e.printStackTrace();
       return false;
-    }
-    return true;
-  }
-
-  private static String grabLogcat() {
-    try {
-      final Process         process        = Runtime.getRuntime().exec("logcat -v threadtime -d");
-      final BufferedReader  bufferedReader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-      final StringBuilder   log            = new StringBuilder();
-      final String          separator      = System.getProperty("line.separator");
-
-      String line;
-      while ((line = bufferedReader.readLine()) != null) {
-        log.append(line);
-        log.append(separator);
+    } finally {
+      if (process != null) {
+        process.destroy();
       }
-      return log.toString();
-    } catch (IOException ioe) {
-      Log.w(TAG, "IOException when trying to read logcat.", ioe);
-      return null;
     }
+    return true;
   }
 
-  private class PopulateLogcatAsyncTask extends AsyncTask<Void,Void,String> {
+  /**
+   * Reads logcat line by line, the lines are scrubbed and published in batches,
+   * so that the first lines are shown while the rest is still read.
+   */
+  private class PopulateLogcatAsyncTask extends AsyncTask<Void,List<LogLine>,Boolean> {
     private WeakReference<Context> weakContext;
 
     public PopulateLogcatAsyncTask(Context context) {
@@ -156,31 +188,81 @@ public class LogViewFragment extends Fragment {
     }
 
     @Override
-    protected String doInBackground(Void... voids) {
+    protected Boolean doInBackground(Void... voids) {
       Context context = weakContext.get();
-      if (context == null) return null;
-
-      return buildDescription(context) + "\n" + new Scrubber().scrub(grabLogcat());
+      if (context == null) return false;
+
+      publishProgress(toHeaderLines(buildDescription(context)));
+
+      Process process = null;
+      try {
+        process = Runtime.getRuntime().exec(LOGCAT_COMMAND);
+        BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+        Scrubber       scrubber       = new Scrubber();
+        List<LogLine>  batch          = new ArrayList<>(BATCH_LINES);
+        long           batchStart     = SystemClock.elapsedRealtime();
+        int            count          = 0;
+
+        String line;
+        while ((line = bufferedReader.readLine()) != null && !isCancelled()) {
+          batch.add(LogLine.parse(scrubber.scrub(line)));
+          count++;
+          if (batch.size() >= BATCH_LINES || SystemClock.elapsedRealtime() - batchStart >= BATCH_MS) {
+            publishProgress(batch);
+            batch      = new ArrayList<>(BATCH_LINES);
+            batchStart = SystemClock.elapsedRealtime();
+          }
+        }
+        if (!batch.isEmpty()) {
+          publishProgress(batch);
+        }
+        return count > 0;
+      } catch (IOException ioe) {
+        Log.w(TAG, "IOException when trying to read logcat.", ioe);
+        return false;
+      } finally {
+        if (process != null) {
+          process.destroy();
+        }
+      }
     }
 
     @Override
     protected void onPreExecute() {
       super.onPreExecute();
-      logPreview.setText(R.string.one_moment);
+      adapter.setHeaderLines(Collections.singletonList(LogLine.header(getString(R.string.one_moment))));
     }
 
+    @SafeVarargs
     @Override
-    protected void onPostExecute(String logcat) {
-      super.onPostExecute(logcat);
-      if (TextUtils.isEmpty(logcat)) {
+    protected final void onProgressUpdate(List<LogLine>... batches) {
+      for (List<LogLine> batch : batches) {
+        if (!batch.isEmpty() && batch.get(0).header) {
+          adapter.setHeaderLines(batch);
+        } else {
+          adapter.addLines(batch);
+        }
+      }
+    }
+
+    @Override
+    protected void onPostExecute(Boolean success) {
+      super.onPostExecute(success);
+      if (!success) {
         // the log is in english, so it is fine if some of explaining strings are in english as well
-        logPreview.setText("Could not read the log on your device. You can still use ADB to get a debug log instead.");
-        return;
+        adapter.addLines(Collections.singletonList(LogLine.header("Could not read the log on your device. You can still use ADB to get a debug log instead.")));
       }
-      logPreview.setText(logcat);
     }
   }
 
+  private static List<LogLine> toHeaderLines(String description) {
+    List<LogLine> lines = new ArrayList<>();
+    for (String line : description.split("\n", -1)) {
+      lines.add(LogLine.header(line));
+    }
+    return lines;
+  }
+
   private static long asMegs(long bytes) {
     return bytes / 1048576L;
   }
@@ -222,6 +304,9 @@ public class LogViewFragment extends Fragment {
     builder.append("sdk=").append(Build.VERSION.SDK_INT).append("\n");
     builder.append("memory=").append(getMemoryUsage(context)).append("\n");
     builder.append("memoryClass=").append(getMemoryClass(context)).append("\n");
+    builder.append("nativeHandles=").append(DcCleaner.getLiveCountsAsString()).append("\n");
+    builder.append("notifications=").append(MessageNotifierCompat.getStatistics()).append("\n");
+    builder.append("connection=").append(DcHelper.getContext(context).connectionScheduler.getStatistics()).append("\n");
     builder.append("host=").append(Build.HOST).append("\n");
     builder.append("applicationId=").append(BuildConfig.APPLICATION_ID).append("\n");
     builder.append("app=");
@@ -22,7 +22,6 @@ import org.thoughtcrime.securesms.util.StickyHeaderDecoration.StickyHeaderAdapte
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashSet;
 import java.util.Locale;
 import java.util.Set;
@@ -176,7 +175,7 @@ public class ProfileSettingsAdapter extends RecyclerView.Adapter
 
       conversationListItem.bind(dcContext.getThreadRecord(summary, chat),
           itemDataSharedChats.getMsgId(chatlistIndex), summary, glideRequests,
-          locale, Collections.emptySet(), false);
+          locale, ConversationListItem.NO_SELECTION, false);
       conversationListItem.setOnClickListener(view -> clickListener.onSharedChatClicked(chatId));
     }
     else if(holder.itemView instanceof ProfileSettingsItem) {
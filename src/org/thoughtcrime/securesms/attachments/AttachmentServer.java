@@ -4,43 +4,58 @@ package org.thoughtcrime.securesms.attachments;
 import android.content.Context;
 import android.net.Uri;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import android.util.Log;
 
 import org.thoughtcrime.securesms.mms.PartAuthority;
 import org.thoughtcrime.securesms.util.Util;
 import org.thoughtcrime.securesms.util.Hex;
 
-import java.io.BufferedOutputStream;
-import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
 import java.security.MessageDigest;
 import java.util.Locale;
-import java.util.Map;
-import java.util.Properties;
-import java.util.StringTokenizer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
+ * Serves a single attachment over HTTP on localhost, eg. to the MediaPlayer.
+ *
+ * Several connections are handled at the same time as players usually open a new connection for seeking
+ * while the old one is still reading; connections are kept alive for further requests.
+ * Attachments that are plain files are sent using FileChannel.transferTo(), that is, without copying them through the heap.
+ *
  * @author      Stefan "frostymarvelous" Froelich <stefan d0t froelich At whisppa DoT com>
  */
 public class AttachmentServer implements Runnable {
 
   private static final String TAG = AttachmentServer.class.getSimpleName();
 
-  private final Context      context;
-  private final Attachment   attachment;
-  private final ServerSocket socket;
-  private final int          port;
-  private final String       auth;
+  private static final int MAX_CONNECTIONS      = 4;
+  private static final int KEEP_ALIVE_TIMEOUT   = 15000;
+  private static final int MAX_HEADER_SIZE      = 8192;
+  private static final int MAX_KEEP_ALIVE_COUNT = 100;
+
+  private final Context             context;
+  private final Attachment          attachment;
+  private final ServerSocketChannel serverChannel;
+  private final ServerSocket        socket;
+  private final int                 port;
+  private final String              auth;
+  private final ExecutorService     connectionExecutor = Executors.newFixedThreadPool(MAX_CONNECTIONS);
 
   private volatile boolean isRunning;
 
@@ -48,11 +63,13 @@ public class AttachmentServer implements Runnable {
       throws IOException
   {
     try {
-      this.context      = context;
-      this.attachment   = attachment;
-      this.socket       = new ServerSocket(0, 0, InetAddress.getByAddress(new byte[]{127, 0, 0, 1}));
-      this.port         = socket.getLocalPort();
-      this.auth         = Hex.toStringCondensed(Util.getSecretBytes(16));
+      this.context       = context;
+      this.attachment    = attachment;
+      this.serverChannel = ServerSocketChannel.open();
+      this.socket        = serverChannel.socket();
+      this.socket.bind(new InetSocketAddress(InetAddress.getByAddress(new byte[]{127, 0, 0, 1}), 0));
+      this.port          = socket.getLocalPort();
+      this.auth          = Hex.toStringCondensed(Util.getSecretBytes(16));
 
       this.socket.setSoTimeout(5000);
     } catch (UnknownHostException e) {
@@ -71,303 +88,204 @@ public class AttachmentServer implements Runnable {
 
   public void stop() {
     isRunning = false;
+    connectionExecutor.shutdownNow();
   }
 
   @Override
   public void run() {
     while (isRunning) {
-      Socket client = null;
-
       try {
-        client = socket.accept();
-
+        // accepting through the socket adaptor respects the timeout, the resulting socket still has a channel
+        Socket client = socket.accept();
         if (client != null) {
-          StreamToMediaPlayerTask task = new StreamToMediaPlayerTask(client, "/" + auth);
-
-          if (task.processRequest()) {
-            task.execute();
+          try {
+            connectionExecutor.execute(() -> new Connection(client).serve());
+          } catch (Exception e) {
+            // the executor was shut down meanwhile
+            client.close();
           }
         }
-
       } catch (SocketTimeoutException e) {
-        Log.w(TAG, e);
+        // check isRunning
       } catch (IOException e) {
         Log.e(TAG, "Error connecting to client", e);
-      } finally {
-        try {if (client != null) client.close();} catch (IOException e) {}
       }
     }
 
+    try {
+      serverChannel.close();
+    } catch (IOException e) {
+      Log.w(TAG, e);
+    }
     Log.d(TAG, "Proxy interrupted. Shutting down.");
   }
 
-
-  private class StreamToMediaPlayerTask {
-
+  private class Connection {
     private final @NonNull Socket client;
-    private final @NonNull String auth;
+    private final byte[] headerBuffer = new byte[MAX_HEADER_SIZE];
+    private int headerBufferLength;
 
-    private long       cbSkip;
-    private Properties parameters;
-    private Properties request;
-    private Properties requestHeaders;
-//    private String filePath;
-
-    public StreamToMediaPlayerTask(@NonNull Socket client, @NonNull String auth) {
+    Connection(@NonNull Socket client) {
       this.client = client;
-      this.auth   = auth;
     }
 
-    public boolean processRequest() throws IOException {
-            InputStream is         = client.getInputStream();
-      final int         bufferSize = 8192;
-            byte[]      buffer     = new byte[bufferSize];
-            int         splitByte  = 0;
-            int         readLength = 0;
-
-      {
-        int read = is.read(buffer, 0, bufferSize);
-        while (read > 0) {
-          readLength += read;
-          splitByte = findHeaderEnd(buffer, readLength);
-          if (splitByte > 0)
+    void serve() {
+      try {
+        client.setSoTimeout(KEEP_ALIVE_TIMEOUT);
+        client.setTcpNoDelay(true);
+        InputStream  in  = client.getInputStream();
+        OutputStream out = client.getOutputStream();
+
+        for (int i = 0; i < MAX_KEEP_ALIVE_COUNT && isRunning; i++) {
+          HttpRequest request = readRequest(in);
+          if (request == null || !handle(request, out) || !request.keepAlive) {
             break;
-          read = is.read(buffer, readLength, bufferSize - readLength);
+          }
         }
-      }
-
-      // Create a BufferedReader for parsing the header.
-      ByteArrayInputStream hbis = new ByteArrayInputStream(buffer, 0, readLength);
-      BufferedReader       hin  = new BufferedReader(new InputStreamReader(hbis));
-
-      request        = new Properties();
-      parameters     = new Properties();
-      requestHeaders = new Properties();
-
-      try {
-        decodeHeader(hin, request, parameters, requestHeaders);
-      } catch (InterruptedException e1) {
-        Log.e(TAG, "Exception: " + e1.getMessage());
-        e1.printStackTrace();
-      }
-
-      for (Map.Entry<Object, Object> e : requestHeaders.entrySet()) {
-        Log.i(TAG, "Header: " + e.getKey() + " : " + e.getValue());
-      }
-
-      String range = requestHeaders.getProperty("range");
-
-      if (range != null) {
-        Log.i(TAG, "range is: " + range);
-        range = range.substring(6);
-        int charPos = range.indexOf('-');
-        if (charPos > 0) {
-          range = range.substring(0, charPos);
+      } catch (SocketTimeoutException e) {
+        // keep-alive connection not used anymore
+      } catch (SocketException e) {
+        Log.i(TAG, "SocketException, proxy client has probably closed. This can exit harmlessly");
+      } catch (IOException e) {
+        Log.w(TAG, "Error while serving", e);
+      } finally {
+        try {
+          client.close();
+        } catch (IOException e) {
+          // nothing to do
         }
-        cbSkip = Long.parseLong(range);
-        Log.i(TAG, "range found!! " + cbSkip);
       }
+    }
 
-      if (!"GET".equals(request.get("method"))) {
-        Log.e(TAG, "Only GET is supported: " + request.get("method"));
+    /**
+     * @return false if the connection should be closed.
+     */
+    private boolean handle(@NonNull HttpRequest request, @NonNull OutputStream out) throws IOException {
+      long startTime = System.currentTimeMillis();
+
+      if (!"GET".equals(request.method)) {
+        Log.e(TAG, "Only GET is supported: " + request.method);
+        writeHeaders(out, "405 Method Not Allowed", null, 0, null, false);
         return false;
       }
 
-      String receivedAuth = request.getProperty("uri");
-
-      if (receivedAuth == null || !MessageDigest.isEqual(receivedAuth.getBytes(), auth.getBytes())) {
+      if (request.uri == null || !MessageDigest.isEqual(request.uri.getBytes(), ("/" + auth).getBytes())) {
         Log.w(TAG, "Bad auth token!");
+        writeHeaders(out, "403 Forbidden", null, 0, null, false);
         return false;
       }
 
-//      filePath = request.getProperty("uri");
-
-      return true;
-    }
-
-    protected void execute() throws IOException {
-      InputStream inputStream = PartAuthority.getAttachmentStream(context, attachment.getDataUri());
-      long        fileSize    = attachment.getSize();
-
-      String headers = "";
-      if (cbSkip > 0) {// It is a seek or skip request if there's a Range
-        // header
-        headers += "HTTP/1.1 206 Partial Content\r\n";
-        headers += "Content-Type: " + attachment.getContentType() + "\r\n";
-        headers += "Accept-Ranges: bytes\r\n";
-        headers += "Content-Length: " + (fileSize - cbSkip) + "\r\n";
-        headers += "Content-Range: bytes " + cbSkip + "-" + (fileSize - 1) + "/" + fileSize + "\r\n";
-        headers += "Connection: Keep-Alive\r\n";
-        headers += "\r\n";
-      } else {
-        headers += "HTTP/1.1 200 OK\r\n";
-        headers += "Content-Type: " + attachment.getContentType() + "\r\n";
-        headers += "Accept-Ranges: bytes\r\n";
-        headers += "Content-Length: " + fileSize + "\r\n";
-        headers += "Connection: Keep-Alive\r\n";
-        headers += "\r\n";
+      long fileSize = attachment.getSize();
+      long[] range  = HttpRequest.parseRange(request.headers.get("range"), fileSize);
+      if (range == null) {
+        writeHeaders(out, "416 Range Not Satisfiable", null, 0, "bytes */" + fileSize, request.keepAlive);
+        return true;
       }
 
-      Log.i(TAG, "headers: " + headers);
-
-      OutputStream output = null;
-      byte[] buff = new byte[64 * 1024];
-      try {
-        output = new BufferedOutputStream(client.getOutputStream(), 32 * 1024);
-        output.write(headers.getBytes());
-
-        inputStream.skip(cbSkip);
-//        dataSource.skipFully(data, cbSkip);//try to skip as much as possible
-
-        // Loop as long as there's stuff to send and client has not closed
-        int cbRead;
-        while (!client.isClosed() && (cbRead = inputStream.read(buff, 0, buff.length)) != -1) {
-          output.write(buff, 0, cbRead);
+      long start = range[0];
+      long count = range[1] - range[0] + 1;
+      boolean partial = request.headers.containsKey("range");
+      writeHeaders(out,
+                   partial ? "206 Partial Content" : "200 OK",
+                   attachment.getContentType(),
+                   count,
+                   partial ? "bytes " + range[0] + "-" + range[1] + "/" + fileSize : null,
+                   request.keepAlive);
+
+      long sent;
+      boolean zeroCopy;
+      try (InputStream inputStream = PartAuthority.getAttachmentStream(context, attachment.getDataUri())) {
+        SocketChannel socketChannel = client.getChannel();
+        zeroCopy = inputStream instanceof FileInputStream && socketChannel != null;
+        if (zeroCopy) {
+          sent = transfer(((FileInputStream) inputStream).getChannel(), start, count, socketChannel);
+        } else {
+          sent = copy(inputStream, start, count, out);
         }
       }
-      catch (SocketException socketException) {
-        Log.e(TAG, "SocketException() thrown, proxy client has probably closed. This can exit harmlessly");
-      }
-      catch (Exception e) {
-        Log.e(TAG, "Exception thrown from streaming task:");
-        Log.e(TAG, e.getClass().getName() + " : " + e.getLocalizedMessage());
-      }
 
-      // Cleanup
-      try {
-        if (output != null) {
-          output.close();
-        }
-        client.close();
-      }
-      catch (IOException e) {
-        Log.e(TAG, "IOException while cleaning up streaming task:");
-        Log.e(TAG, e.getClass().getName() + " : " + e.getLocalizedMessage());
-        e.printStackTrace();
-      }
+      Log.i(TAG, String.format(Locale.US, "served bytes %d-%d of %d: %d bytes in %dms%s",
+          range[0], range[1], fileSize, sent, System.currentTimeMillis() - startTime, zeroCopy ? " (zero-copy)" : ""));
+      return sent == count;
     }
 
-    /**
-     * Find byte index separating header from body. It must be the last byte of
-     * the first two sequential new lines.
-     **/
-    private int findHeaderEnd(final byte[] buf, int rlen) {
-      int splitbyte = 0;
-      while (splitbyte + 3 < rlen) {
-        if (buf[splitbyte] == '\r' && buf[splitbyte + 1] == '\n'
-            && buf[splitbyte + 2] == '\r' && buf[splitbyte + 3] == '\n')
-          return splitbyte + 4;
-        splitbyte++;
+    private long transfer(FileChannel fileChannel, long start, long count, SocketChannel target) throws IOException {
+      long sent = 0;
+      while (sent < count) {
+        long n = fileChannel.transferTo(start + sent, count - sent, target);
+        if (n <= 0) {
+          break;
+        }
+        sent += n;
       }
-      return 0;
+      return sent;
     }
 
-
-    /**
-     * Decodes the sent headers and loads the data into java Properties' key -
-     * value pairs
-     **/
-    private void decodeHeader(BufferedReader in, Properties pre,
-                              Properties parms, Properties header) throws InterruptedException {
-      try {
-        // Read the request line
-        String inLine = in.readLine();
-        if (inLine == null)
-          return;
-        StringTokenizer st = new StringTokenizer(inLine);
-        if (!st.hasMoreTokens())
-          Log.e(TAG,
-                "BAD REQUEST: Syntax error. Usage: GET /example/file.html");
-
-        String method = st.nextToken();
-        pre.put("method", method);
-
-        if (!st.hasMoreTokens())
-          Log.e(TAG,
-                "BAD REQUEST: Missing URI. Usage: GET /example/file.html");
-
-        String uri = st.nextToken();
-
-        // Decode parameters from the URI
-        int qmi = uri.indexOf('?');
-        if (qmi >= 0) {
-          decodeParms(uri.substring(qmi + 1), parms);
-          uri = decodePercent(uri.substring(0, qmi));
-        } else
-          uri = decodePercent(uri);
-
-        // If there's another token, it's protocol version,
-        // followed by HTTP headers. Ignore version but parse headers.
-        // NOTE: this now forces header names lowercase since they are
-        // case insensitive and vary by client.
-        if (st.hasMoreTokens()) {
-          String line = in.readLine();
-          while (line != null && line.trim().length() > 0) {
-            int p = line.indexOf(':');
-            if (p >= 0)
-              header.put(line.substring(0, p).trim().toLowerCase(),
-                         line.substring(p + 1).trim());
-            line = in.readLine();
-          }
+    private long copy(InputStream inputStream, long start, long count, OutputStream out) throws IOException {
+      long skipped = 0;
+      while (skipped < start) {
+        long n = inputStream.skip(start - skipped);
+        if (n <= 0) {
+          return 0;
         }
+        skipped += n;
+      }
 
-        pre.put("uri", uri);
-      } catch (IOException ioe) {
-        Log.e(TAG,
-              "SERVER INTERNAL ERROR: IOException: " + ioe.getMessage());
+      byte[] buff = new byte[64 * 1024];
+      long sent = 0;
+      while (sent < count) {
+        int read = inputStream.read(buff, 0, (int) Math.min(buff.length, count - sent));
+        if (read == -1) {
+          break;
+        }
+        out.write(buff, 0, read);
+        sent += read;
       }
+      out.flush();
+      return sent;
     }
 
-    /**
-     * Decodes parameters in percent-encoded URI-format ( e.g.
-     * "name=Jack%20Daniels&pass=Single%20Malt" ) and adds them to given
-     * Properties. NOTE: this doesn't support multiple identical keys due to the
-     * simplicity of Properties -- if you need multiples, you might want to
-     * replace the Properties with a Hashtable of Vectors or such.
-     */
-    private void decodeParms(String parms, Properties p)
-        throws InterruptedException {
-      if (parms == null)
-        return;
-
-      StringTokenizer st = new StringTokenizer(parms, "&");
-      while (st.hasMoreTokens()) {
-        String e = st.nextToken();
-        int sep = e.indexOf('=');
-        if (sep >= 0)
-          p.put(decodePercent(e.substring(0, sep)).trim(),
-                decodePercent(e.substring(sep + 1)));
+    private void writeHeaders(OutputStream out, String status, @Nullable String contentType, long contentLength,
+                              @Nullable String contentRange, boolean keepAlive) throws IOException
+    {
+      StringBuilder headers = new StringBuilder();
+      headers.append("HTTP/1.1 ").append(status).append("\r\n");
+      if (contentType != null) {
+        headers.append("Content-Type: ").append(contentType).append("\r\n");
       }
+      headers.append("Accept-Ranges: bytes\r\n");
+      headers.append("Content-Length: ").append(contentLength).append("\r\n");
+      if (contentRange != null) {
+        headers.append("Content-Range: ").append(contentRange).append("\r\n");
+      }
+      headers.append("Connection: ").append(keepAlive ? "Keep-Alive" : "close").append("\r\n");
+      headers.append("\r\n");
+      out.write(headers.toString().getBytes(Charset.forName("ISO-8859-1")));
+      out.flush();
     }
 
     /**
-     * Decodes the percent encoding scheme. <br/>
-     * For example: "an+example%20string" -> "an example string"
+     * Reads the next request header; bytes following the header are kept for the next request.
+     * @return null if the client closed the connection.
      */
-    private String decodePercent(String str) throws InterruptedException {
-      try {
-        StringBuffer sb = new StringBuffer();
-        for (int i = 0; i < str.length(); i++) {
-          char c = str.charAt(i);
-          switch (c) {
-            case '+':
-              sb.append(' ');
-              break;
-            case '%':
-              sb.append((char) Integer.parseInt(
-                  str.substring(i + 1, i + 3), 16));
-              i += 2;
-              break;
-            default:
-              sb.append(c);
-              break;
-          }
+    private @Nullable HttpRequest readRequest(InputStream in) throws IOException {
+      int headerEnd;
+      while ((headerEnd = HttpRequest.findHeaderEnd(headerBuffer, headerBufferLength)) == 0) {
+        if (headerBufferLength == headerBuffer.length) {
+          Log.w(TAG, "Request header too large");
+          return null;
+        }
+        int read = in.read(headerBuffer, headerBufferLength, headerBuffer.length - headerBufferLength);
+        if (read == -1) {
+          return null;
         }
-        return sb.toString();
-      } catch (Exception e) {
-        Log.e(TAG, "BAD REQUEST: Bad percent-encoding.");
-        return null;
+        headerBufferLength += read;
       }
+
+      HttpRequest request = HttpRequest.parse(new String(headerBuffer, 0, headerEnd, Charset.forName("ISO-8859-1")));
+      System.arraycopy(headerBuffer, headerEnd, headerBuffer, 0, headerBufferLength - headerEnd);
+      headerBufferLength -= headerEnd;
+      return request;
     }
   }
-}
\ No newline at end of file
+}
@@ -27,12 +27,12 @@ public class DcAttachment extends Attachment {
     return Uri.fromFile(new File(dcMsg.getFile()));
   }
 
+  /**
+   * For videos, the VideoSlide returns the thumbnail from the VideoThumbnailCache instead.
+   */
   @Nullable
   @Override
   public Uri getThumbnailUri() {
-    if(dcMsg.getType()==DcMsg.DC_MSG_VIDEO) {
-      return Uri.fromFile(new File(dcMsg.getFile()+"-preview.jpg"));
-    }
     return getDataUri();
   }
 }
@@ -0,0 +1,145 @@
+package org.thoughtcrime.securesms.attachments;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A request to the {@link AttachmentServer} and the parsing of the request header.
+ */
+final class HttpRequest {
+
+  private static final String TAG = HttpRequest.class.getSimpleName();
+
+  String              method;
+  String              uri;
+  boolean             keepAlive;
+  Map<String, String> headers = new HashMap<>();
+
+  private HttpRequest() {}
+
+  /**
+   * Find byte index separating header from body. It must be the last byte of
+   * the first two sequential new lines.
+   **/
+  static int findHeaderEnd(final byte[] buf, int rlen) {
+    int splitbyte = 0;
+    while (splitbyte + 3 < rlen) {
+      if (buf[splitbyte] == '\r' && buf[splitbyte + 1] == '\n'
+          && buf[splitbyte + 2] == '\r' && buf[splitbyte + 3] == '\n')
+        return splitbyte + 4;
+      splitbyte++;
+    }
+    return 0;
+  }
+
+  /**
+   * Parses the request line and the headers; header names are lowercased
+   * as they are case insensitive and vary by client.
+   */
+  static @NonNull HttpRequest parse(@NonNull String header) {
+    HttpRequest request = new HttpRequest();
+    String[] lines = header.split("\r\n");
+
+    String[] requestLine = lines[0].split(" ");
+    if (requestLine.length >= 2) {
+      request.method = requestLine[0];
+      String uri = requestLine[1];
+      int qmi = uri.indexOf('?');
+      request.uri = decodePercent(qmi >= 0 ? uri.substring(0, qmi) : uri);
+    } else {
+      Log.e(TAG, "BAD REQUEST: Syntax error. Usage: GET /example/file.html");
+    }
+
+    for (int i = 1; i < lines.length; i++) {
+      int p = lines[i].indexOf(':');
+      if (p >= 0) {
+        request.headers.put(lines[i].substring(0, p).trim().toLowerCase(Locale.ROOT), lines[i].substring(p + 1).trim());
+      }
+    }
+
+    // HTTP/1.1 connections are persistent by default, HTTP/1.0 ones only on request
+    String connection = request.headers.get("connection");
+    boolean http11 = requestLine.length >= 3 && "HTTP/1.1".equals(requestLine[2]);
+    request.keepAlive = connection == null ? http11 : connection.equalsIgnoreCase("keep-alive");
+    return request;
+  }
+
+  /**
+   * Parses a single byte range as "bytes=a-b", "bytes=a-" or "bytes=-n";
+   * for several ranges, only the first one is served.
+   *
+   * @return first and last byte to serve, the whole file if there is no or no valid range,
+   *         null if the range is not satisfiable.
+   */
+  static @Nullable long[] parseRange(@Nullable String range, long fileSize) {
+    long[] all = new long[] {0, fileSize - 1};
+    if (range == null || !range.startsWith("bytes=")) {
+      return all;
+    }
+
+    String spec = range.substring(6);
+    int comma = spec.indexOf(',');
+    if (comma >= 0) {
+      spec = spec.substring(0, comma);
+    }
+    int dash = spec.indexOf('-');
+    if (dash < 0) {
+      return all;
+    }
+
+    try {
+      String first = spec.substring(0, dash).trim();
+      String last  = spec.substring(dash + 1).trim();
+      long start, end;
+      if (first.isEmpty()) {
+        long suffixLength = Long.parseLong(last);
+        if (suffixLength <= 0) {
+          return null;
+        }
+        start = Math.max(0, fileSize - suffixLength);
+        end   = fileSize - 1;
+      } else {
+        start = Long.parseLong(first);
+        end   = last.isEmpty() ? fileSize - 1 : Math.min(Long.parseLong(last), fileSize - 1);
+      }
+      return start <= end && start < fileSize ? new long[] {start, end} : null;
+    } catch (NumberFormatException e) {
+      return all;
+    }
+  }
+
+  /**
+   * Decodes the percent encoding scheme. <br/>
+   * For example: "an+example%20string" -> "an example string"
+   */
+  private static String decodePercent(String str) {
+    try {
+      StringBuilder sb = new StringBuilder();
+      for (int i = 0; i < str.length(); i++) {
+        char c = str.charAt(i);
+        switch (c) {
+          case '+':
+            sb.append(' ');
+            break;
+          case '%':
+            sb.append((char) Integer.parseInt(
+                str.substring(i + 1, i + 3), 16));
+            i += 2;
+            break;
+          default:
+            sb.append(c);
+            break;
+        }
+      }
+      return sb.toString();
+    } catch (Exception e) {
+      Log.e(TAG, "BAD REQUEST: Bad percent-encoding.");
+      return null;
+    }
+  }
+}
@@ -26,10 +26,10 @@ import org.thoughtcrime.securesms.mms.GlideRequest;
 import org.thoughtcrime.securesms.mms.GlideRequests;
 import org.thoughtcrime.securesms.mms.Slide;
 import org.thoughtcrime.securesms.mms.SlideClickListener;
-import org.thoughtcrime.securesms.util.MediaUtil;
 import org.thoughtcrime.securesms.util.Util;
 import org.thoughtcrime.securesms.util.concurrent.ListenableFuture;
 import org.thoughtcrime.securesms.util.concurrent.SettableFuture;
+import org.thoughtcrime.securesms.video.VideoThumbnailCache;
 
 import java.util.Locale;
 
@@ -262,7 +262,7 @@ public class ThumbnailView extends FrameLayout {
         new AsyncTask<Void, Void, Boolean>() {
           @Override
           protected Boolean doInBackground(Void... params) {
-            return MediaUtil.createVideoThumbnailIfNeeded(context, dataUri, thumbnailUri, null);
+            return VideoThumbnailCache.getInstance(context).createThumbnailIfNeeded(context, dataUri);
           }
           @Override
           protected void onPostExecute(Boolean success) {
@@ -26,6 +26,7 @@ import org.thoughtcrime.securesms.components.emoji.parsing.EmojiTree;
 import org.thoughtcrime.securesms.util.FutureTaskListener;
 import org.thoughtcrime.securesms.util.Pair;
 import org.thoughtcrime.securesms.util.Util;
+import org.thoughtcrime.securesms.util.collections.IntLruCache;
 
 import java.io.IOException;
 import java.util.concurrent.ExecutionException;
@@ -38,6 +39,11 @@ class EmojiProvider {
 
   private final EmojiTree emojiTree = new EmojiTree();
 
+  // the candidates of the recently shown messages, so that they are not parsed again when scrolling back;
+  // the key is the message id, the text hash is checked as the same id is used for the chatlist summary.
+  private static final int                    CANDIDATE_CACHE_SIZE = 500;
+  private final IntLruCache<CachedCandidates> candidateCache       = new IntLruCache<>(CANDIDATE_CACHE_SIZE);
+
   private static final int EMOJI_RAW_HEIGHT = 64;
   private static final int EMOJI_RAW_WIDTH  = 64;
   private static final int EMOJI_VERT_PAD   = 0;
@@ -81,6 +87,36 @@ class EmojiProvider {
     return new EmojiParser(emojiTree).findCandidates(text);
   }
 
+  /**
+   * Like getCandidates(CharSequence), but the result is cached for the given message,
+   * so that the same CandidateList object is returned as long as the text does not change.
+   */
+  @Nullable EmojiParser.CandidateList getCandidates(int msgId, @Nullable CharSequence text) {
+    if (text == null || msgId <= 0) return getCandidates(text);
+
+    int textHash = hash(text);
+    synchronized (candidateCache) {
+      CachedCandidates cached = candidateCache.get(msgId);
+      if (cached != null && cached.textLength == text.length() && cached.textHash == textHash) {
+        return cached.candidates;
+      }
+    }
+
+    EmojiParser.CandidateList candidates = getCandidates(text);
+    synchronized (candidateCache) {
+      candidateCache.put(msgId, new CachedCandidates(text.length(), textHash, candidates));
+    }
+    return candidates;
+  }
+
+  private static int hash(@NonNull CharSequence text) {
+    int hash = 0;
+    for (int i = 0; i < text.length(); i++) {
+      hash = 31 * hash + text.charAt(i);
+    }
+    return hash;
+  }
+
   @Nullable Spannable emojify(@Nullable CharSequence text, @NonNull TextView tv) {
     return emojify(getCandidates(text), text, tv, false);
   }
@@ -135,6 +171,18 @@ class EmojiProvider {
     return drawable;
   }
 
+  private static class CachedCandidates {
+    final int                       textLength;
+    final int                       textHash;
+    final EmojiParser.CandidateList candidates;
+
+    CachedCandidates(int textLength, int textHash, EmojiParser.CandidateList candidates) {
+      this.textLength = textLength;
+      this.textHash   = textHash;
+      this.candidates = candidates;
+    }
+  }
+
   class EmojiDrawable extends Drawable {
     private final EmojiDrawInfo info;
     private       Bitmap        bmp;
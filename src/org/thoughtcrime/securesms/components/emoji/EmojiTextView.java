@@ -7,7 +7,9 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.core.widget.TextViewCompat;
 import androidx.appcompat.widget.AppCompatTextView;
+import android.text.Spannable;
 import android.text.SpannableStringBuilder;
+import android.text.Spanned;
 import android.text.TextUtils;
 import android.util.AttributeSet;
 import android.util.TypedValue;
@@ -21,15 +23,26 @@ import org.thoughtcrime.securesms.util.Util;
 
 public class EmojiTextView extends AppCompatTextView {
 
+  private static final int NO_MSG_ID = 0;
+
   private final boolean scaleEmojis;
   private final boolean createInBackground;
 
   private CharSequence previousText;
   private BufferType   previousBufferType;
+  private int          previousMsgId;
   private float        originalFontSize;
   private boolean      useSystemEmoji;
   private boolean      sizeChangeInProgress;
 
+  // set while setText(CharSequence, int) is running
+  private int pendingMsgId = NO_MSG_ID;
+
+  // the last emojified text, its emoji spans are reused when the same message is bound again
+  private EmojiParser.CandidateList emojifiedCandidates;
+  private Spanned                   emojifiedText;
+  private float                     emojifiedTextSize;
+
   public EmojiTextView(Context context) {
     this(context, null);
   }
@@ -51,9 +64,23 @@ public class EmojiTextView extends AppCompatTextView {
     a.recycle();
   }
 
+  /**
+   * Sets the text of a message or of a chatlist summary;
+   * the parsed emojis are cached by the message id and reused when the message is bound again.
+   */
+  public void setText(@Nullable CharSequence text, int msgId) {
+    pendingMsgId = msgId;
+    try {
+      setText(text);
+    } finally {
+      pendingMsgId = NO_MSG_ID;
+    }
+  }
+
   @Override public void setText(@Nullable CharSequence text, BufferType type) {
     EmojiProvider             provider   = EmojiProvider.getInstance(getContext());
-    EmojiParser.CandidateList candidates = provider.getCandidates(text);
+    int                       msgId      = pendingMsgId;
+    EmojiParser.CandidateList candidates = provider.getCandidates(msgId, text);
 
     if (scaleEmojis && candidates != null && candidates.allEmojis) {
       int   emojis = candidates.size();
@@ -75,14 +102,28 @@ public class EmojiTextView extends AppCompatTextView {
 
     previousText       = text;
     previousBufferType = type;
+    previousMsgId      = msgId;
     useSystemEmoji     = useSystemEmoji();
 
     if (useSystemEmoji || candidates == null || candidates.size() == 0) {
+      emojifiedCandidates = null;
+      emojifiedText       = null;
       super.setText(text, BufferType.NORMAL);
       return;
     }
 
-    CharSequence emojified = provider.emojify(candidates, text, this, createInBackground);
+    Spannable emojified;
+    if (candidates == emojifiedCandidates && getTextSize() == emojifiedTextSize) {
+      // the same message bound again, eg. on a state change; the text may differ in other spans as links,
+      // but the emojis are the same, so there is no need to create new drawables for them.
+      emojified = withEmojiSpans(emojifiedText, text);
+    } else {
+      emojified = provider.emojify(candidates, text, this, createInBackground);
+    }
+
+    emojifiedCandidates = candidates;
+    emojifiedText       = emojified;
+    emojifiedTextSize   = getTextSize();
     super.setText(emojified, BufferType.SPANNABLE);
 
     // Android fails to ellipsize spannable strings. (https://issuetracker.google.com/issues/36991688)
@@ -122,6 +163,14 @@ public class EmojiTextView extends AppCompatTextView {
     });
   }
 
+  private static @NonNull Spannable withEmojiSpans(@NonNull Spanned emojified, @NonNull CharSequence text) {
+    SpannableStringBuilder builder = new SpannableStringBuilder(text);
+    for (EmojiSpan span : emojified.getSpans(0, emojified.length(), EmojiSpan.class)) {
+      builder.setSpan(span, emojified.getSpanStart(span), emojified.getSpanEnd(span), Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+    }
+    return builder;
+  }
+
   private boolean unchanged(CharSequence text, BufferType bufferType) {
     return Util.equals(previousText, text)             &&
            Util.equals(previousBufferType, bufferType) &&
@@ -139,7 +188,9 @@ public class EmojiTextView extends AppCompatTextView {
 
     if (!sizeChangeInProgress) {
       sizeChangeInProgress = true;
+      pendingMsgId = previousMsgId;
       setText(previousText, previousBufferType);
+      pendingMsgId = NO_MSG_ID;
       sizeChangeInProgress = false;
     }
   }
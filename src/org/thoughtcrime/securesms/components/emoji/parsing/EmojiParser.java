@@ -24,8 +24,9 @@ package org.thoughtcrime.securesms.components.emoji.parsing;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 
 /**
@@ -40,35 +41,59 @@ public class EmojiParser {
   }
 
   public @NonNull CandidateList findCandidates(@Nullable CharSequence text) {
-    List<Candidate> results = new LinkedList<>();
+    if (text == null) return new CandidateList(Collections.emptyList(), false);
 
-    if (text == null) return new CandidateList(results, false);
+    int length = text.length();
+    int start  = skipToPossibleEmoji(text, 0);
 
-    boolean allEmojis = text.length() > 0;
+    // most texts do not contain any emoji, they are done by the scan above.
+    if (start == length) return new CandidateList(Collections.emptyList(), false);
 
-    for (int i = 0; i < text.length(); i++) {
+    List<Candidate> results   = new ArrayList<>();
+    boolean         allEmojis = start == 0;
+
+    for (int i = start; i < length; ) {
       int emojiEnd = getEmojiEndPos(text, i);
+      int next;
 
       if (emojiEnd != -1) {
         EmojiDrawInfo drawInfo = emojiTree.getEmoji(text, i, emojiEnd);
 
-        if (emojiEnd + 2 <= text.length()) {
+        if (emojiEnd + 2 <= length) {
           if (Fitzpatrick.fitzpatrickFromUnicode(text, emojiEnd) != null) {
             emojiEnd += 2;
           }
         }
 
         results.add(new Candidate(i, emojiEnd, drawInfo));
-
-        i = emojiEnd - 1;
+        next = emojiEnd;
       } else {
         allEmojis = false;
+        next = i + 1;
+      }
+
+      i = skipToPossibleEmoji(text, next);
+      if (i != next) {
+        allEmojis = false;
       }
     }
 
     return new CandidateList(results, allEmojis);
   }
 
+  /**
+   * @return the index of the first char at or after start that may begin an emoji,
+   *         the length of the text if there is none.
+   */
+  private int skipToPossibleEmoji(CharSequence text, int start) {
+    int length = text.length();
+    int i      = start;
+    while (i < length && !emojiTree.canStartEmoji(text.charAt(i))) {
+      i++;
+    }
+    return i;
+  }
+
   private int getEmojiEndPos(CharSequence text, int startPos) {
     int best = -1;
 
@@ -34,9 +34,18 @@ public class EmojiTree {
 
   private static final char TERMINATOR = '\ufe0f';
 
+  // the first chars of all emojis as a bitmap over all chars,
+  // so that the chars that cannot start an emoji are skipped by a single lookup.
+  private final long[] startChars = new long[(Character.MAX_VALUE + 1) / 64];
+
   public void add(String emojiEncoding, EmojiDrawInfo emoji) {
     EmojiTreeNode tree = root;
 
+    if (!emojiEncoding.isEmpty()) {
+      char first = emojiEncoding.charAt(0);
+      startChars[first >>> 6] |= 1L << first;
+    }
+
     for (char c: emojiEncoding.toCharArray()) {
       if (!tree.hasChild(c)) {
         tree.addChild(c);
@@ -48,6 +57,10 @@ public class EmojiTree {
     tree.setEmoji(emoji);
   }
 
+  public boolean canStartEmoji(char c) {
+    return (startChars[c >>> 6] & (1L << c)) != 0;
+  }
+
   public Matches isEmoji(CharSequence sequence, int startPosition, int endPosition) {
     if (sequence == null) {
       return Matches.POSSIBLY;
@@ -56,24 +56,8 @@ public class ApplicationDcContext extends DcContext {
     File dbfile = new File(context.getFilesDir(), "messenger.db");
     open(dbfile.getAbsolutePath());
 
-    try {
-      PowerManager pm = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
-
-      imapWakeLock = pm.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "imapWakeLock");
-      imapWakeLock.setReferenceCounted(false); // if the idle-thread is killed for any reasons, it is better not to rely on reference counting
-
-      mvboxWakeLock = pm.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "mvboxWakeLock");
-      mvboxWakeLock.setReferenceCounted(false); // if the idle-thread is killed for any reasons, it is better not to rely on reference counting
-
-      sentboxWakeLock = pm.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "sentboxWakeLock");
-      sentboxWakeLock.setReferenceCounted(false); // if the idle-thread is killed for any reasons, it is better not to rely on reference counting
-
-      smtpWakeLock = pm.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "smtpWakeLock");
-      smtpWakeLock.setReferenceCounted(false); // if the idle-thread is killed for any reasons, it is better not to rely on reference counting
-
-    } catch (Exception e) {
-      Log.e(TAG, "Cannot create wakeLocks");
-    }
+    connectionScheduler = new DcConnectionScheduler(context, this);
+    markseenQueue = new DcMarkseenQueue(context, this);
 
     new ForegroundDetector(ApplicationContext.getInstance(context));
     startThreads(0);
@@ -263,6 +247,11 @@ public class ApplicationDcContext extends DcContext {
 
   @NonNull
   public ThreadRecord getThreadRecord(DcLot summary, DcChat chat) { // adapted from ThreadDatabase.getCurrent()
+    return getThreadRecord(summary, chat, getFreshMsgCount(chat.getId()));
+  }
+
+  @NonNull
+  public ThreadRecord getThreadRecord(DcLot summary, DcChat chat, int unreadCount) {
     int chatId = chat.getId();
 
     String body = summary.getText1();
@@ -273,7 +262,6 @@ public class ApplicationDcContext extends DcContext {
 
     Recipient recipient = getRecipient(chat);
     long date = summary.getTimestamp();
-    int unreadCount = getFreshMsgCount(chatId);
     boolean archived = chat.getArchived() != 0;
     boolean verified = chat.isVerified();
 
@@ -287,125 +275,14 @@ public class ApplicationDcContext extends DcContext {
    * Working Threads
    **********************************************************************************************/
 
-  private final Object threadsCritical = new Object();
-  private final Object incLoopsCritical= new Object();
+  public final DcConnectionScheduler connectionScheduler;
 
-  public Thread imapThread = null;
-  private PowerManager.WakeLock imapWakeLock = null;
-  private int inboxLoops = 0;
+  public final DcMarkseenQueue markseenQueue;
 
-  public Thread mvboxThread = null;
-  private PowerManager.WakeLock mvboxWakeLock = null;
-  private int mvboxLoops = 0;
-
-  public Thread sentboxThread = null;
-  private PowerManager.WakeLock sentboxWakeLock = null;
-
-  public Thread smtpThread = null;
-  private PowerManager.WakeLock smtpWakeLock = null;
-  private int smtpLoops = 0;
-
-  public final static int INTERRUPT_IDLE = 0x01; // interrupt idle if the thread is already running
+  public final static int INTERRUPT_IDLE = DcConnectionScheduler.INTERRUPT_IDLE; // interrupt idle if the thread is already running
 
   public void startThreads(int flags) {
-    synchronized (threadsCritical) {
-
-      if (imapThread == null || !imapThread.isAlive()) {
-
-        imapThread = new Thread(() -> {
-          Log.i(TAG, "###################### IMAP-Thread started. ######################");
-          while (true) {
-            imapWakeLock.acquire();
-            performImapJobs();
-            performImapFetch();
-            imapWakeLock.release();
-            synchronized (incLoopsCritical) {
-              inboxLoops++;
-            }
-            performImapIdle();
-          }
-        }, "imapThread");
-        imapThread.setPriority(Thread.NORM_PRIORITY);
-        imapThread.start();
-      } else {
-        if ((flags & INTERRUPT_IDLE) != 0) {
-          interruptImapIdle();
-        }
-      }
-
-
-      if (mvboxThread == null || !mvboxThread.isAlive()) {
-
-        mvboxThread = new Thread(() -> {
-          Log.i(TAG, "###################### MVBOX-Thread started. ######################");
-          while (true) {
-            mvboxWakeLock.acquire();
-            performMvboxJobs();
-            performMvboxFetch();
-            mvboxWakeLock.release();
-            synchronized (incLoopsCritical) {
-              mvboxLoops++;
-            }
-            performMvboxIdle();
-          }
-        }, "mvboxThread");
-        mvboxThread.setPriority(Thread.NORM_PRIORITY);
-        mvboxThread.start();
-      } else {
-        if ((flags & INTERRUPT_IDLE) != 0) {
-          interruptMvboxIdle();
-        }
-      }
-
-
-      if (sentboxThread == null || !sentboxThread.isAlive()) {
-
-        sentboxThread = new Thread(() -> {
-          Log.i(TAG, "###################### SENTBOX-Thread started. ######################");
-          while (true) {
-            sentboxWakeLock.acquire();
-            performSentboxJobs();
-            performSentboxFetch();
-            sentboxWakeLock.release();
-            performSentboxIdle();
-          }
-        }, "sentboxThread");
-        sentboxThread.setPriority(Thread.NORM_PRIORITY-1);
-        sentboxThread.start();
-      } else {
-        if ((flags & INTERRUPT_IDLE) != 0) {
-          interruptSentboxIdle();
-        }
-      }
-
-      if (smtpThread == null || !smtpThread.isAlive()) {
-        smtpThread = new Thread(() -> {
-          Log.i(TAG, "###################### SMTP-Thread started. ######################");
-          while (true) {
-            smtpWakeLock.acquire();
-            performSmtpJobs();
-            smtpWakeLock.release();
-            synchronized (incLoopsCritical) {
-              smtpLoops++;
-            }
-            performSmtpIdle();
-          }
-        }, "smtpThread");
-        smtpThread.setPriority(Thread.MAX_PRIORITY);
-        smtpThread.start();
-      }
-    }
-  }
-
-  public void waitForThreadsExecutedOnce() {
-    while(true) {
-      synchronized (incLoopsCritical) {
-        if(inboxLoops>0 && mvboxLoops>0 && smtpLoops>0) {
-          break;
-        }
-      }
-      Util.sleep(500);
-    }
+    connectionScheduler.start(flags);
   }
 
 
@@ -431,6 +308,7 @@ public class ApplicationDcContext extends DcContext {
    **********************************************************************************************/
 
   public DcEventCenter eventCenter = new DcEventCenter();
+  public DcEventCoalescer eventCoalescer = new DcEventCoalescer(eventCenter);
 
   private final Object lastErrorLock = new Object();
   private String lastErrorString = "";
@@ -516,6 +394,13 @@ public class ApplicationDcContext extends DcContext {
         handleError(event, true, dataToString(data2));
         break;
 
+      case DC_EVENT_MSGS_CHANGED:
+      case DC_EVENT_CHAT_MODIFIED:
+        if (eventCoalescer != null) {
+          eventCoalescer.add(event, data1, data2);
+        }
+        break;
+
       default: {
         final Object data1obj = data1IsString(event) ? dataToString(data1) : data1;
         final Object data2obj = data2IsString(event) ? dataToString(data2) : data2;
@@ -0,0 +1,105 @@
+package org.thoughtcrime.securesms.connect;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import com.b44t.messenger.DcChat;
+import com.b44t.messenger.DcChatlist;
+import com.b44t.messenger.DcLot;
+
+import org.thoughtcrime.securesms.database.model.ThreadRecord;
+
+/**
+ * An immutable, fully loaded chatlist as shown by the ConversationListAdapter.
+ *
+ * All rows are created in the background,
+ * so that binding a row is just an array access and does not need any call to the core.
+ */
+public class DcChatlistSnapshot {
+
+  private final @NonNull DcChatlist     chatlist;
+  private final @NonNull int[]          chatIds;
+  private final @NonNull int[]          msgIds;
+  private final @NonNull DcLot[]        summaries;
+  private final @NonNull ThreadRecord[] threadRecords;
+
+  private DcChatlistSnapshot(@NonNull DcChatlist chatlist, @NonNull int[] chatIds, @NonNull int[] msgIds,
+                             @NonNull DcLot[] summaries, @NonNull ThreadRecord[] threadRecords) {
+    this.chatlist      = chatlist;
+    this.chatIds       = chatIds;
+    this.msgIds        = msgIds;
+    this.summaries     = summaries;
+    this.threadRecords = threadRecords;
+  }
+
+  public static @NonNull DcChatlistSnapshot empty() {
+    return new DcChatlistSnapshot(new DcChatlist(0), new int[0], new int[0], new DcLot[0], new ThreadRecord[0]);
+  }
+
+  @WorkerThread
+  public static @NonNull DcChatlistSnapshot create(@NonNull ApplicationDcContext dcContext, @NonNull DcChatlist chatlist) {
+    int cnt = chatlist.getCnt();
+    int[] chatIds = new int[cnt];
+    int[] msgIds  = new int[cnt];
+    for (int i = 0; i < cnt; i++) {
+      chatIds[i] = chatlist.getChatId(i);
+      msgIds[i]  = chatlist.getMsgId(i);
+    }
+
+    // the fresh-message-counts are the only per-chat data not available from the chatlist itself,
+    // get all of them with a single call.
+    int[] unreadCounts = dcContext.getFreshMsgCounts(chatIds);
+
+    DcLot[]        summaries     = new DcLot[cnt];
+    ThreadRecord[] threadRecords = new ThreadRecord[cnt];
+    for (int i = 0; i < cnt; i++) {
+      DcChat chat      = dcContext.getChat(chatIds[i]);
+      summaries[i]     = chatlist.getSummary(i, chat);
+      threadRecords[i] = dcContext.getThreadRecord(summaries[i], chat, unreadCounts[i]);
+    }
+
+    return new DcChatlistSnapshot(chatlist, chatIds, msgIds, summaries, threadRecords);
+  }
+
+  /**
+   * @return a copy of this snapshot where only the rows of the given chats are loaded again.
+   */
+  @WorkerThread
+  public @NonNull DcChatlistSnapshot withRefreshedChats(@NonNull ApplicationDcContext dcContext, @NonNull int[] refreshChatIds) {
+    DcLot[]        newSummaries     = summaries.clone();
+    ThreadRecord[] newThreadRecords = threadRecords.clone();
+
+    for (int i = 0; i < chatIds.length; i++) {
+      for (int refreshChatId : refreshChatIds) {
+        if (chatIds[i] == refreshChatId) {
+          DcChat chat         = dcContext.getChat(chatIds[i]);
+          newSummaries[i]     = chatlist.getSummary(i, chat);
+          newThreadRecords[i] = dcContext.getThreadRecord(newSummaries[i], chat);
+          break;
+        }
+      }
+    }
+
+    return new DcChatlistSnapshot(chatlist, chatIds, msgIds, newSummaries, newThreadRecords);
+  }
+
+  public int getCnt() {
+    return chatIds.length;
+  }
+
+  public int getChatId(int index) {
+    return chatIds[index];
+  }
+
+  public int getMsgId(int index) {
+    return msgIds[index];
+  }
+
+  public @NonNull DcLot getSummary(int index) {
+    return summaries[index];
+  }
+
+  public @NonNull ThreadRecord getThreadRecord(int index) {
+    return threadRecords[index];
+  }
+}
@@ -0,0 +1,304 @@
+package org.thoughtcrime.securesms.connect;
+
+import android.content.Context;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.b44t.messenger.DcContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Owns the IMAP, MVBOX, SENTBOX and SMTP loops of the core.
+ *
+ * Each loop runs jobs, fetch and idle over and over.
+ * As the idle-calls block until the server reports new messages or until they are interrupted,
+ * every loop still needs a thread of its own;
+ * the scheduler starts these threads, keeps track of the state of each loop
+ * and lets callers wait for a complete cycle without polling.
+ */
+public class DcConnectionScheduler {
+
+  private static final String TAG = DcConnectionScheduler.class.getSimpleName();
+
+  public static final int STATE_STOPPED = 0;
+  public static final int STATE_JOBS    = 1;
+  public static final int STATE_FETCH   = 2;
+  public static final int STATE_IDLE    = 3;
+
+  public final static int INTERRUPT_IDLE = 0x01; // interrupt idle if the loop is already running
+
+  private final Loop inbox;
+  private final Loop mvbox;
+  private final Loop sentbox;
+  private final Loop smtp;
+  private final Loop[] loops;
+
+  public DcConnectionScheduler(@NonNull Context context, @NonNull DcContext dcContext) {
+    PowerManager pm = null;
+    try {
+      pm = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+    } catch (Exception e) {
+      Log.e(TAG, "Cannot get PowerManager, running without wakeLocks");
+    }
+
+    inbox   = new Loop(pm, "imap", Thread.NORM_PRIORITY,
+                       dcContext::performImapJobs, dcContext::performImapFetch, dcContext::performImapIdle, dcContext::interruptImapIdle);
+    mvbox   = new Loop(pm, "mvbox", Thread.NORM_PRIORITY,
+                       dcContext::performMvboxJobs, dcContext::performMvboxFetch, dcContext::performMvboxIdle, dcContext::interruptMvboxIdle);
+    sentbox = new Loop(pm, "sentbox", Thread.NORM_PRIORITY-1,
+                       dcContext::performSentboxJobs, dcContext::performSentboxFetch, dcContext::performSentboxIdle, dcContext::interruptSentboxIdle);
+    smtp    = new Loop(pm, "smtp", Thread.MAX_PRIORITY,
+                       dcContext::performSmtpJobs, null, dcContext::performSmtpIdle, null);
+    loops   = new Loop[] { inbox, mvbox, sentbox, smtp };
+  }
+
+  /**
+   * Starts all loops that are not running yet.
+   * @param flags INTERRUPT_IDLE to let running loops fetch at once.
+   */
+  public synchronized void start(int flags) {
+    for (Loop loop : loops) {
+      if (!loop.isAlive()) {
+        loop.start();
+      } else if ((flags & INTERRUPT_IDLE) != 0) {
+        loop.interruptIdle();
+      }
+    }
+  }
+
+  /**
+   * Lets the inbox and the mvbox loop run jobs and fetch once and waits until they are done.
+   * The sentbox is not fetched as messages from there are not notified anyway.
+   * The smtp loop cannot be interrupted, it is only waited for its first run.
+   *
+   * @return true if the cycle was completed within the timeout.
+   */
+  public boolean runFetchCycle(long timeoutMs) {
+    long startTime = SystemClock.elapsedRealtime();
+    long deadline = startTime + timeoutMs;
+
+    CountDownLatch inboxDone = inbox.requestCycle();
+    CountDownLatch mvboxDone = mvbox.requestCycle();
+    start(0);
+    inbox.interruptIdle();
+    mvbox.interruptIdle();
+
+    boolean completed = false;
+    try {
+      completed = await(inboxDone, deadline)
+               && await(mvboxDone, deadline)
+               && await(smtp.firstRun, deadline);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    Log.i(TAG, "fetch cycle " + (completed? "completed" : "timed out") + " after "
+        + (SystemClock.elapsedRealtime() - startTime) + " ms; " + getStatistics());
+    return completed;
+  }
+
+  private static boolean await(CountDownLatch latch, long deadline) throws InterruptedException {
+    return latch.await(Math.max(0, deadline - SystemClock.elapsedRealtime()), TimeUnit.MILLISECONDS);
+  }
+
+  public @NonNull Loop[] getLoops() {
+    return loops.clone();
+  }
+
+  public @NonNull String getStatistics() {
+    StringBuilder builder = new StringBuilder();
+    for (Loop loop : loops) {
+      if (builder.length() > 0) {
+        builder.append("; ");
+      }
+      builder.append(loop.toString());
+    }
+    return builder.toString();
+  }
+
+  public static class Loop {
+    private final String   name;
+    private final int      priority;
+    private final Runnable jobs;
+    private final Runnable fetch;
+    private final Runnable idle;
+    private final Runnable interrupt;
+    private final @Nullable PowerManager.WakeLock wakeLock;
+
+    private @Nullable Thread thread;
+    private volatile int state = STATE_STOPPED;
+
+    private final CountDownLatch firstRun = new CountDownLatch(1);
+    private List<CountDownLatch> cycleWaiters = new ArrayList<>();
+
+    // all times are in milliseconds, lastRunTime is a wall clock time
+    private long loopCount;
+    private long lastRunTime;
+    private long lastJobsMs;
+    private long lastFetchMs;
+    private long lastIdleMs;
+    private long interruptRequestedAt;
+    private long lastWakeupLatencyMs = -1;
+    private long maxWakeupLatencyMs  = -1;
+
+    private Loop(@Nullable PowerManager pm, String name, int priority,
+                 Runnable jobs, @Nullable Runnable fetch, Runnable idle, @Nullable Runnable interrupt) {
+      this.name      = name;
+      this.priority  = priority;
+      this.jobs      = jobs;
+      this.fetch     = fetch;
+      this.idle      = idle;
+      this.interrupt = interrupt;
+
+      PowerManager.WakeLock wl = null;
+      if (pm != null) {
+        try {
+          wl = pm.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, name + "WakeLock");
+          wl.setReferenceCounted(false); // if the loop is killed for any reasons, it is better not to rely on reference counting
+        } catch (Exception e) {
+          Log.e(TAG, "Cannot create wakeLock for " + name);
+        }
+      }
+      this.wakeLock = wl;
+    }
+
+    private boolean isAlive() {
+      return thread != null && thread.isAlive();
+    }
+
+    private void start() {
+      thread = new Thread(this::run, name + "Thread");
+      thread.setPriority(priority);
+      thread.start();
+    }
+
+    private void run() {
+      Log.i(TAG, "###################### " + name + "-loop started. ######################");
+      while (true) {
+        if (wakeLock != null) {
+          wakeLock.acquire();
+        }
+
+        // only waiters registered before the jobs are started are served by this cycle
+        List<CountDownLatch> waiters;
+        synchronized (this) {
+          waiters = cycleWaiters;
+          cycleWaiters = new ArrayList<>();
+        }
+
+        long jobsStart = SystemClock.elapsedRealtime();
+        state = STATE_JOBS;
+        jobs.run();
+
+        long fetchStart = SystemClock.elapsedRealtime();
+        if (fetch != null) {
+          state = STATE_FETCH;
+          fetch.run();
+        }
+        long fetchEnd = SystemClock.elapsedRealtime();
+
+        if (wakeLock != null) {
+          wakeLock.release();
+        }
+
+        synchronized (this) {
+          loopCount++;
+          lastRunTime = System.currentTimeMillis();
+          lastJobsMs  = fetchStart - jobsStart;
+          lastFetchMs = fetchEnd - fetchStart;
+        }
+        firstRun.countDown();
+        for (CountDownLatch waiter : waiters) {
+          waiter.countDown();
+        }
+
+        state = STATE_IDLE;
+        idle.run();
+        long idleEnd = SystemClock.elapsedRealtime();
+
+        synchronized (this) {
+          lastIdleMs = idleEnd - fetchEnd;
+          if (interruptRequestedAt != 0) {
+            lastWakeupLatencyMs = idleEnd - interruptRequestedAt;
+            maxWakeupLatencyMs = Math.max(maxWakeupLatencyMs, lastWakeupLatencyMs);
+            interruptRequestedAt = 0;
+          }
+        }
+      }
+    }
+
+    private synchronized CountDownLatch requestCycle() {
+      CountDownLatch latch = new CountDownLatch(1);
+      cycleWaiters.add(latch);
+      return latch;
+    }
+
+    private void interruptIdle() {
+      if (interrupt == null) {
+        return;
+      }
+      synchronized (this) {
+        // the wakeup latency is only meaningful if the loop is actually idling;
+        // for several interrupts during one idle, the first one counts.
+        if (state == STATE_IDLE && interruptRequestedAt == 0) {
+          interruptRequestedAt = SystemClock.elapsedRealtime();
+        }
+      }
+      interrupt.run();
+    }
+
+    public @NonNull String getName() {
+      return name;
+    }
+
+    public int getState() {
+      return state;
+    }
+
+    public synchronized long getLoopCount() {
+      return loopCount;
+    }
+
+    public synchronized long getLastRunTime() {
+      return lastRunTime;
+    }
+
+    public synchronized long getLastJobsMs() {
+      return lastJobsMs;
+    }
+
+    public synchronized long getLastFetchMs() {
+      return lastFetchMs;
+    }
+
+    public synchronized long getLastIdleMs() {
+      return lastIdleMs;
+    }
+
+    /**
+     * @return time from interrupting the idle until the idle returned, -1 if not measured yet.
+     */
+    public synchronized long getLastWakeupLatencyMs() {
+      return lastWakeupLatencyMs;
+    }
+
+    public synchronized long getMaxWakeupLatencyMs() {
+      return maxWakeupLatencyMs;
+    }
+
+    @Override
+    public synchronized @NonNull String toString() {
+      return name + ": state=" + state + ", loops=" + loopCount
+          + ", jobs=" + lastJobsMs + "ms, fetch=" + lastFetchMs + "ms, idle=" + lastIdleMs + "ms"
+          + ", wakeup=" + lastWakeupLatencyMs + "ms (max " + maxWakeupLatencyMs + "ms)";
+    }
+  }
+}
@@ -0,0 +1,205 @@
+package org.thoughtcrime.securesms.connect;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.b44t.messenger.DcContext;
+import com.b44t.messenger.DcEventCenter;
+
+import org.thoughtcrime.securesms.util.Util;
+import org.thoughtcrime.securesms.util.collections.IntSet;
+
+/**
+ * Merges bursts of DC_EVENT_MSGS_CHANGED and DC_EVENT_CHAT_MODIFIED before they reach the observers.
+ *
+ * The first event of a kind is forwarded at once and opens a window;
+ * all events of the same kind arriving within the window are merged
+ * and forwarded as one event when the window ends.
+ *
+ * Forwarded events have the chat id as data1 if only one chat is affected, 0 otherwise,
+ * and a {@link ChangedSet} with all affected chat and message ids as data2.
+ */
+public class DcEventCoalescer {
+
+  private static final String TAG = DcEventCoalescer.class.getSimpleName();
+
+  public static final long DEFAULT_WINDOW_MS = 250;
+
+  private final DcEventCenter eventCenter;
+  private volatile long windowMs = DEFAULT_WINDOW_MS;
+
+  private final Window msgsChanged  = new Window(DcContext.DC_EVENT_MSGS_CHANGED);
+  private final Window chatModified = new Window(DcContext.DC_EVENT_CHAT_MODIFIED);
+
+  private long eventsIn;
+  private long eventsOut;
+
+  public DcEventCoalescer(@NonNull DcEventCenter eventCenter) {
+    this.eventCenter = eventCenter;
+  }
+
+  /**
+   * @param windowMs time in which events of the same kind are merged, 0 disables merging.
+   */
+  public void setWindowMs(long windowMs) {
+    this.windowMs = windowMs;
+  }
+
+  public long getWindowMs() {
+    return windowMs;
+  }
+
+  public void add(int eventId, long chatId, long msgId) {
+    Window window = eventId == DcContext.DC_EVENT_MSGS_CHANGED? msgsChanged : chatModified;
+    synchronized (this) {
+      eventsIn++;
+    }
+    window.add((int)chatId, (int)msgId);
+  }
+
+  public synchronized long getEventsIn() {
+    return eventsIn;
+  }
+
+  public synchronized long getEventsOut() {
+    return eventsOut;
+  }
+
+  /**
+   * @return number of events that were not forwarded as they were merged into other ones;
+   * each of them would have caused the observers to reload their data.
+   */
+  public synchronized long getReloadsAvoided() {
+    return eventsIn - eventsOut;
+  }
+
+  public void logStatistics() {
+    Log.i(TAG, "events in: " + getEventsIn() + ", out: " + getEventsOut() + ", reloads avoided: " + getReloadsAvoided());
+  }
+
+  private void send(int eventId, ChangedSet changedSet) {
+    synchronized (this) {
+      eventsOut++;
+    }
+    eventCenter.sendToObservers(eventId, (long)changedSet.getSingleChatId(), changedSet);
+  }
+
+  private class Window {
+    private final int eventId;
+    private boolean open;
+    private final IntSet chatIds = new IntSet();
+    private final IntSet msgIds  = new IntSet();
+    private boolean anyChat;
+    private boolean anyMsg;
+
+    Window(int eventId) {
+      this.eventId = eventId;
+    }
+
+    void add(int chatId, int msgId) {
+      ChangedSet sendNow = null;
+      synchronized (this) {
+        if (windowMs <= 0 || !open) {
+          sendNow = new ChangedSet(chatId==0? new int[0] : new int[]{chatId}, msgId==0? new int[0] : new int[]{msgId}, chatId==0, msgId==0);
+          if (windowMs > 0) {
+            open = true;
+            Util.runOnMainDelayed(this::close, windowMs);
+          }
+        } else {
+          if (chatId == 0) {
+            anyChat = true;
+          } else {
+            chatIds.add(chatId);
+          }
+          if (msgId == 0) {
+            anyMsg = true;
+          } else {
+            msgIds.add(msgId);
+          }
+        }
+      }
+
+      if (sendNow != null) {
+        send(eventId, sendNow);
+      }
+    }
+
+    private void close() {
+      ChangedSet merged = null;
+      synchronized (this) {
+        if (anyChat || anyMsg || !chatIds.isEmpty() || !msgIds.isEmpty()) {
+          merged = new ChangedSet(chatIds.toArray(), msgIds.toArray(), anyChat, anyMsg);
+          chatIds.clear();
+          msgIds.clear();
+          anyChat = false;
+          anyMsg = false;
+          // keep the window open, so that a continuing burst is still merged
+          Util.runOnMainDelayed(this::close, windowMs);
+        } else {
+          open = false;
+        }
+      }
+
+      if (merged != null) {
+        send(eventId, merged);
+      }
+    }
+  }
+
+  /**
+   * The ids affected by a forwarded event.
+   * If {@link #isAnyChat()} is true, the core did not name a chat for at least one of the merged events
+   * and observers should assume that all chats are affected.
+   * Likewise, if {@link #isAnyMsg()} is true, any message in the affected chats may have been changed.
+   */
+  public static class ChangedSet implements DcEventCenter.AffectedChats {
+    private final int[]   chatIds;
+    private final int[]   msgIds;
+    private final boolean anyChat;
+    private final boolean anyMsg;
+
+    public ChangedSet(@NonNull int[] chatIds, @NonNull int[] msgIds, boolean anyChat, boolean anyMsg) {
+      this.chatIds = chatIds;
+      this.msgIds  = msgIds;
+      this.anyChat = anyChat;
+      this.anyMsg  = anyMsg;
+    }
+
+    public @NonNull int[] getChatIds() {
+      return chatIds;
+    }
+
+    public @NonNull int[] getMsgIds() {
+      return msgIds;
+    }
+
+    public boolean isAnyChat() {
+      return anyChat;
+    }
+
+    public boolean isAnyMsg() {
+      return anyMsg;
+    }
+
+    @Override
+    public boolean affectsChat(int chatId) {
+      if (anyChat) {
+        return true;
+      }
+      for (int id : chatIds) {
+        if (id == chatId) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /**
+     * @return the chat id if exactly one chat is affected, 0 otherwise.
+     */
+    public int getSingleChatId() {
+      return (!anyChat && chatIds.length == 1)? chatIds[0] : 0;
+    }
+  }
+}
@@ -0,0 +1,197 @@
+package org.thoughtcrime.securesms.connect;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.b44t.messenger.DcContact;
+import com.b44t.messenger.DcContext;
+import com.b44t.messenger.DcMsg;
+
+import org.thoughtcrime.securesms.util.collections.IntSet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the ids of messages that were visible to the user and marks them as seen in batches.
+ *
+ * add() is called from the ui thread with the visible ids and does no JNI calls;
+ * ids that were added before are skipped there.
+ * Checking whether the messages are already seen and calling markseenMsgs()
+ * happens on a background thread, FLUSH_DELAY_MS after the first pending id
+ * or at once when MAX_BATCH_SIZE ids are pending.
+ *
+ * The pending ids are written to a file before they are flushed,
+ * so that they are marked as seen after the next start if the process dies meanwhile.
+ */
+public class DcMarkseenQueue {
+
+  private static final String TAG = DcMarkseenQueue.class.getSimpleName();
+
+  private static final String FILE_NAME = "markseen_pending";
+
+  private static final long FLUSH_DELAY_MS = 1000;
+  private static final int  MAX_BATCH_SIZE = 100;
+
+  // ids added before are remembered up to this number, then forgotten all together
+  private static final int MAX_HANDLED_IDS = 10000;
+
+  private final DcContext                   dcContext;
+  private final File                        file;
+  private final ScheduledThreadPoolExecutor executor;
+
+  private final IntSet  pending = new IntSet();
+  private final IntSet  handled = new IntSet();
+  private       boolean flushScheduled;
+
+  private long idsAdded;
+  private long idsMarked;
+
+  public DcMarkseenQueue(@NonNull Context context, @NonNull DcContext dcContext) {
+    this.dcContext = dcContext;
+    this.file      = new File(context.getFilesDir(), FILE_NAME);
+    this.executor  = new ScheduledThreadPoolExecutor(1);
+    executor.setKeepAliveTime(60, TimeUnit.SECONDS);
+    executor.allowCoreThreadTimeOut(true);
+
+    executor.execute(this::restore);
+  }
+
+  /**
+   * Queues the given message ids to be marked as seen; special ids as day markers are ignored.
+   */
+  public void add(@NonNull int[] msgIds) {
+    boolean flushNow;
+    boolean flushLater;
+    synchronized (this) {
+      int added = 0;
+      for (int msgId : msgIds) {
+        if (msgId > DcMsg.DC_MSG_ID_LAST_SPECIAL && handled.add(msgId)) {
+          pending.add(msgId);
+          added++;
+        }
+      }
+      if (added == 0) {
+        return;
+      }
+      idsAdded += added;
+      if (handled.size() > MAX_HANDLED_IDS) {
+        handled.clear();
+      }
+
+      flushNow   = pending.size() >= MAX_BATCH_SIZE;
+      flushLater = !flushNow && !flushScheduled;
+      flushScheduled |= flushNow || flushLater;
+    }
+
+    executor.execute(this::persist);
+    if (flushNow) {
+      executor.execute(this::flush);
+    } else if (flushLater) {
+      executor.schedule(this::flush, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private void flush() {
+    int[] msgIds;
+    synchronized (this) {
+      flushScheduled = false;
+      msgIds = pending.toArray();
+    }
+    if (msgIds.length == 0) {
+      return;
+    }
+
+    int[] unseen = new int[msgIds.length];
+    int   count  = 0;
+    for (int msgId : msgIds) {
+      DcMsg msg = dcContext.getMsg(msgId);
+      if (msg.getId() != 0 && msg.getFromId() != DcContact.DC_CONTACT_ID_SELF && !msg.isSeen()) {
+        unseen[count++] = msgId;
+      }
+    }
+    if (count > 0) {
+      int[] batch = new int[count];
+      System.arraycopy(unseen, 0, batch, 0, count);
+      dcContext.markseenMsgs(batch);
+    }
+
+    synchronized (this) {
+      for (int msgId : msgIds) {
+        pending.remove(msgId);
+      }
+      idsMarked += count;
+    }
+    persist();
+  }
+
+  private void persist() {
+    int[] msgIds;
+    synchronized (this) {
+      msgIds = pending.toArray();
+    }
+
+    if (msgIds.length == 0) {
+      file.delete();
+      return;
+    }
+
+    File tempFile = new File(file.getPath() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+      out.writeInt(msgIds.length);
+      for (int msgId : msgIds) {
+        out.writeInt(msgId);
+      }
+    } catch (IOException e) {
+      Log.w(TAG, "cannot write pending ids", e);
+      tempFile.delete();
+      return;
+    }
+
+    if (!tempFile.renameTo(file)) {
+      Log.w(TAG, "cannot replace pending ids");
+      tempFile.delete();
+    }
+  }
+
+  private void restore() {
+    if (!file.exists()) {
+      return;
+    }
+
+    int[] msgIds;
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      msgIds = new int[in.readInt()];
+      for (int i = 0; i < msgIds.length; i++) {
+        msgIds[i] = in.readInt();
+      }
+    } catch (IOException e) {
+      Log.w(TAG, "cannot read pending ids", e);
+      file.delete();
+      return;
+    }
+
+    Log.i(TAG, "marking " + msgIds.length + " messages from the last run as seen");
+    synchronized (this) {
+      pending.addAll(msgIds);
+      handled.addAll(msgIds);
+    }
+    flush();
+  }
+
+  public void logStatistics() {
+    synchronized (this) {
+      Log.i(TAG, "ids added: " + idsAdded + ", marked as seen: " + idsMarked + ", pending: " + pending.size());
+    }
+  }
+}
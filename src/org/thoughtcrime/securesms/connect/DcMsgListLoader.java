@@ -13,19 +13,32 @@ public class DcMsgListLoader extends AsyncLoader<int[]> {
     private final int    chatId;
     private final int    listflags;
     private final int    marker1before;
+    private final int    maxCnt;
 
     public DcMsgListLoader(Context context, int chatId, int listflags, int marker1before) {
+        this(context, chatId, listflags, marker1before, 0);
+    }
+
+    /**
+     * @param maxCnt if > 0, only the newest maxCnt messages are loaded.
+     */
+    public DcMsgListLoader(Context context, int chatId, int listflags, int marker1before, int maxCnt) {
         super(context);
         this.chatId        = chatId;
         this.listflags     = listflags;
         this.marker1before = marker1before;
+        this.maxCnt        = maxCnt;
     }
 
     @Override
     public @NonNull
     int[] loadInBackground() {
         try {
-            return DcHelper.getContext(getContext()).getChatMsgs(chatId, listflags, marker1before);
+            ApplicationDcContext dcContext = DcHelper.getContext(getContext());
+            if (maxCnt > 0) {
+                return dcContext.getChatMsgsTail(chatId, listflags, marker1before, maxCnt);
+            }
+            return dcContext.getChatMsgs(chatId, listflags, marker1before);
 
         } catch (Exception e) {
             Log.w(TAG, e);
@@ -17,17 +17,18 @@ public class FetchWorker extends Worker {
         this.context = context;
     }
 
+    // WorkManager stops workers after 10 minutes, the fetch should not get close to that.
+    private static final long FETCH_CYCLE_TIMEOUT_MS = 2 * 60 * 1000;
+
     @Override
     public @NonNull Result doWork() {
-        // MAYBE TODO:
-        // - when no threads are running: fetch-inbox, maybe fetch-mvbox, do smtp-jobs.
-        //   fetch-sendbox is not needed as these messages shall not be notified.
-        // - when threads are running: interrupt-all-idle
+        // if the loops are not running, they are started and do jobs and fetch anyway;
+        // if they are running, they are interrupted so that they fetch at once.
+        // fetch-sentbox is not needed as these messages shall not be notified.
 
         Log.i("DeltaChat", "-------------------- FetchWorker.doWork() started --------------------");
         ApplicationDcContext dcContext = DcHelper.getContext(context);
-        dcContext.startThreads(ApplicationDcContext.INTERRUPT_IDLE);
-        dcContext.waitForThreadsExecutedOnce();
+        dcContext.connectionScheduler.runFetchCycle(FETCH_CYCLE_TIMEOUT_MS);
         Log.i("DeltaChat", "-------------------- FetchWorker.doWork() done --------------------");
 
         return Result.success(); // when returning, the os may terminate the app again
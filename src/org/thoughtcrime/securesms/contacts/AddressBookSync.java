@@ -0,0 +1,226 @@
+package org.thoughtcrime.securesms.contacts;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.b44t.messenger.DcContext;
+
+import org.thoughtcrime.securesms.connect.DcHelper;
+import org.thoughtcrime.securesms.util.ThreadUtil;
+import org.thoughtcrime.securesms.util.Util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Imports the e-mail addresses of the system address book to the core.
+ *
+ * The addresses sent to the core are remembered together with the newest
+ * CONTACT_LAST_UPDATED_TIMESTAMP and the number of rows seen.
+ * If neither changed, the address book is not read at all;
+ * otherwise only added entries and entries with a changed name are sent, in batches.
+ * The core has no way to remove address book entries,
+ * so removed entries are only dropped from the snapshot and from the photo index.
+ *
+ * Syncs run on a single background thread; requests while a sync is queued are dropped,
+ * a request while a sync is running queues one more sync.
+ */
+public class AddressBookSync {
+
+  private static final String TAG = AddressBookSync.class.getSimpleName();
+
+  private static final String FILE_NAME    = "address_book_snapshot";
+  private static final int    FILE_VERSION = 1;
+
+  private static final int BATCH_SIZE = 200;
+
+  private static final ExecutorService executor = ThreadUtil.newDynamicSingleThreadedExecutor();
+  private static final AtomicBoolean   queued   = new AtomicBoolean(false);
+
+  public static void requestSync(@NonNull Context context) {
+    final Context appContext = context.getApplicationContext();
+    if (queued.compareAndSet(false, true)) {
+      executor.execute(() -> {
+        queued.set(false);
+        try {
+          sync(appContext);
+        } catch (Exception e) {
+          Log.w(TAG, "address book sync failed", e);
+        }
+      });
+    }
+  }
+
+  private static void sync(@NonNull Context context) {
+    ContactAccessor contactAccessor = ContactAccessor.getInstance();
+    DcContext       dcContext       = DcHelper.getContext(context);
+    String          account         = dcContext.getConfig("addr");
+    File            file            = new File(context.getFilesDir(), FILE_NAME);
+    Snapshot        previous        = Snapshot.load(file);
+
+    if (account == null) {
+      account = "";
+    }
+    if (previous != null && !previous.account.equals(account)) {
+      // the snapshot is of what was sent to another account, e.g. before a backup was imported
+      previous = null;
+    }
+
+    long[] state = contactAccessor.getSystemContactsState(context);
+    if (previous != null && state[0] == previous.lastUpdated && state[1] == previous.rowCount) {
+      Log.i(TAG, "address book unchanged, " + previous.names.size() + " addresses");
+      return;
+    }
+
+    Snapshot current = readSystemContacts(context, contactAccessor);
+    if (current == null) {
+      return;
+    }
+    current.account = account;
+
+    StringBuilder batch     = new StringBuilder();
+    int           batchSize = 0;
+    int           sent      = 0;
+    for (Map.Entry<String, String> entry : current.names.entrySet()) {
+      String mail = entry.getKey();
+      String name = entry.getValue();
+      if (previous != null && Util.equals(previous.names.get(mail), name)) {
+        continue;
+      }
+      batch.append(name).append("\n").append(mail).append("\n");
+      sent++;
+      if (++batchSize == BATCH_SIZE) {
+        dcContext.addAddressBook(batch.toString());
+        batch.setLength(0);
+        batchSize = 0;
+      }
+    }
+    if (batchSize > 0) {
+      dcContext.addAddressBook(batch.toString());
+    }
+
+    current.save(file);
+    Log.i(TAG, "address book synced, " + sent + " of " + current.names.size() + " addresses sent");
+  }
+
+  /**
+   * Reads all e-mail rows, deduplicated by address as the first row wins,
+   * and rebuilds the photo index on the way.
+   */
+  private static @Nullable Snapshot readSystemContacts(@NonNull Context context, @NonNull ContactAccessor contactAccessor) {
+    Cursor cursor = contactAccessor.getAllSystemContacts(context);
+    if (cursor == null) {
+      return null;
+    }
+
+    try {
+      int      count           = cursor.getCount();
+      long[]   photoHashes     = new long[count];
+      long[]   photoContactIds = new long[count];
+      int      photoCount      = 0;
+      Snapshot snapshot        = new Snapshot(count);
+
+      while (cursor.moveToNext()) {
+        String name = cursor.getString(ContactAccessor.CONTACT_CURSOR_NAME);
+        String mail = cursor.getString(ContactAccessor.CONTACT_CURSOR_MAIL);
+        long   lastUpdated = cursor.getLong(ContactAccessor.CONTACT_CURSOR_LAST_UPDATED);
+
+        snapshot.rowCount++;
+        snapshot.lastUpdated = Math.max(snapshot.lastUpdated, lastUpdated);
+
+        if (!cursor.isNull(ContactAccessor.CONTACT_CURSOR_CONTACT_ID) && photoCount < count) {
+          photoHashes[photoCount]     = SystemContactPhotoIndex.hashOf(name, mail);
+          photoContactIds[photoCount] = cursor.getLong(ContactAccessor.CONTACT_CURSOR_CONTACT_ID);
+          photoCount++;
+        }
+
+        if (mail != null && !mail.isEmpty() && !snapshot.names.containsKey(mail)) {
+          snapshot.names.put(mail, name == null || name.isEmpty() ? mail : name);
+        }
+      }
+
+      SystemContactPhotoIndex.getInstance(context).update(photoHashes, photoContactIds, photoCount);
+      return snapshot;
+    } finally {
+      cursor.close();
+    }
+  }
+
+  private static class Snapshot {
+    private String                    account = "";
+    private long                      lastUpdated;
+    private int                       rowCount;
+    private final Map<String, String> names;
+
+    Snapshot(int expectedSize) {
+      this.names = new LinkedHashMap<>(Math.max(16, expectedSize * 4 / 3 + 1));
+    }
+
+    static @Nullable Snapshot load(@NonNull File file) {
+      if (!file.exists()) {
+        return null;
+      }
+
+      try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+        if (in.readInt() != FILE_VERSION) {
+          return null;
+        }
+        String account     = in.readUTF();
+        long   lastUpdated = in.readLong();
+        int    rowCount    = in.readInt();
+        int    count       = in.readInt();
+
+        Snapshot snapshot = new Snapshot(count);
+        snapshot.account     = account;
+        snapshot.lastUpdated = lastUpdated;
+        snapshot.rowCount    = rowCount;
+        for (int i = 0; i < count; i++) {
+          String mail = in.readUTF();
+          snapshot.names.put(mail, in.readUTF());
+        }
+        return snapshot;
+      } catch (IOException e) {
+        Log.w(TAG, "cannot read snapshot, syncing the whole address book", e);
+        return null;
+      }
+    }
+
+    void save(@NonNull File file) {
+      File tempFile = new File(file.getPath() + ".tmp");
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+        out.writeInt(FILE_VERSION);
+        out.writeUTF(account);
+        out.writeLong(lastUpdated);
+        out.writeInt(rowCount);
+        out.writeInt(names.size());
+        for (Map.Entry<String, String> entry : names.entrySet()) {
+          out.writeUTF(entry.getKey());
+          out.writeUTF(entry.getValue());
+        }
+      } catch (IOException e) {
+        Log.w(TAG, "cannot write snapshot", e);
+        tempFile.delete();
+        return;
+      }
+
+      if (!tempFile.renameTo(file)) {
+        Log.w(TAG, "cannot replace snapshot");
+        tempFile.delete();
+      }
+    }
+  }
+}
@@ -20,14 +20,6 @@ import android.content.Context;
 import android.database.Cursor;
 import android.provider.ContactsContract;
 
-import org.thoughtcrime.securesms.util.Hash;
-import org.thoughtcrime.securesms.util.Prefs;
-
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
-
 /**
  * This class was originally a layer of indirection between
  * ContactAccessorNewApi and ContactAccesorOldApi, which corresponded
@@ -42,11 +34,13 @@ import java.util.Set;
 
 public class ContactAccessor {
 
-  private static final int CONTACT_CURSOR_NAME = 0;
+  static final int CONTACT_CURSOR_NAME = 0;
 
-  private static final int CONTACT_CURSOR_MAIL = 1;
+  static final int CONTACT_CURSOR_MAIL = 1;
 
-  private static final int CONTACT_CURSOR_CONTACT_ID = 2;
+  static final int CONTACT_CURSOR_CONTACT_ID = 2;
+
+  static final int CONTACT_CURSOR_LAST_UPDATED = 3;
 
   private static final ContactAccessor instance = new ContactAccessor();
 
@@ -55,33 +49,29 @@ public class ContactAccessor {
   }
 
   public Cursor getAllSystemContacts(Context context) {
-    String[] projection = {ContactsContract.Data.DISPLAY_NAME, ContactsContract.CommonDataKinds.Email.ADDRESS, ContactsContract.Data.CONTACT_ID};
+    String[] projection = {ContactsContract.Data.DISPLAY_NAME, ContactsContract.CommonDataKinds.Email.ADDRESS, ContactsContract.Data.CONTACT_ID, ContactsContract.Data.CONTACT_LAST_UPDATED_TIMESTAMP};
     return context.getContentResolver().query(ContactsContract.CommonDataKinds.Email.CONTENT_URI, projection, null, null, null);
   }
 
-  public String getAllSystemContactsAsString(Context context) {
-    Cursor systemContactsCursor = getAllSystemContacts(context);
-    StringBuilder result = new StringBuilder();
-    List<String> mailList = new ArrayList<>();
-    Set<String> contactPhotoIdentifiers = new HashSet<>();
-    while (systemContactsCursor != null && systemContactsCursor.moveToNext()) {
-      String name = systemContactsCursor.getString(CONTACT_CURSOR_NAME);
-      String mail = systemContactsCursor.getString(CONTACT_CURSOR_MAIL);
-      String contactId = systemContactsCursor.getString(CONTACT_CURSOR_CONTACT_ID);
-      if (contactId != null) {
-        String identifier = name + mail;
-        String hashedIdentifierAndId = Hash.sha256(identifier) + "|" + contactId;
-        contactPhotoIdentifiers.add(hashedIdentifierAndId);
-      }
-      if (mail != null && !mail.isEmpty() && !mailList.contains(mail)) {
-          mailList.add(mail);
-          if (name.isEmpty()) {
-            name = mail;
-          }
-          result.append(name).append("\n").append(mail).append("\n");
+  /**
+   * @return the newest CONTACT_LAST_UPDATED_TIMESTAMP and the number of e-mail rows,
+   *         without reading names and addresses; both are 0 if the address book cannot be read.
+   */
+  public long[] getSystemContactsState(Context context) {
+    String[] projection = {ContactsContract.Data.CONTACT_LAST_UPDATED_TIMESTAMP};
+    long lastUpdated = 0;
+    long rowCount = 0;
+    Cursor cursor = context.getContentResolver().query(ContactsContract.CommonDataKinds.Email.CONTENT_URI, projection, null, null, null);
+    if (cursor != null) {
+      try {
+        while (cursor.moveToNext()) {
+          lastUpdated = Math.max(lastUpdated, cursor.getLong(0));
+          rowCount++;
+        }
+      } finally {
+        cursor.close();
       }
     }
-    Prefs.setSystemContactPhotos(context, contactPhotoIdentifiers);
-    return result.toString();
+    return new long[] {lastUpdated, rowCount};
   }
 }
@@ -0,0 +1,253 @@
+package org.thoughtcrime.securesms.contacts;
+
+import android.content.ContentUris;
+import android.content.Context;
+import android.net.Uri;
+import android.provider.ContactsContract;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.b44t.messenger.DcContact;
+
+import org.thoughtcrime.securesms.util.Hash;
+import org.thoughtcrime.securesms.util.Prefs;
+import org.thoughtcrime.securesms.util.Util;
+import org.thoughtcrime.securesms.util.collections.IntLruCache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Maps the hash of name and address of a system contact to the id of the system contact,
+ * so that recipients can show the photo from the address book.
+ *
+ * The index is rebuilt by the ContactAccessor on each address book sync and kept in memory
+ * as arrays of hashes and contact ids sorted by hash; lookups are a binary search.
+ * On disk, the index is stored in the same form, 16 bytes per entry.
+ *
+ * The hash of a contact is memoized by contact id, as recipients are created for
+ * every chat list item and notification.
+ */
+public class SystemContactPhotoIndex {
+
+  private static final String TAG = SystemContactPhotoIndex.class.getSimpleName();
+
+  private static final String FILE_NAME    = "contact_photo_index";
+  private static final int    FILE_VERSION = 1;
+
+  private static final int MAX_MEMOIZED_HASHES = 1000;
+
+  private static volatile SystemContactPhotoIndex instance;
+
+  private final File file;
+
+  private final IntLruCache<MemoizedHash> memoizedHashes = new IntLruCache<>(MAX_MEMOIZED_HASHES);
+
+  private long[] hashes     = new long[0];
+  private long[] contactIds = new long[0];
+  private boolean loaded;
+
+  private SystemContactPhotoIndex(@NonNull Context context) {
+    this.file = new File(context.getFilesDir(), FILE_NAME);
+  }
+
+  public static SystemContactPhotoIndex getInstance(@NonNull Context context) {
+    if (instance == null) {
+      synchronized (SystemContactPhotoIndex.class) {
+        if (instance == null) {
+          instance = new SystemContactPhotoIndex(context.getApplicationContext());
+        }
+      }
+    }
+    return instance;
+  }
+
+  public static long hashOf(@Nullable String displayName, @Nullable String addr) {
+    return Hash.sha256Prefix(displayName + addr);
+  }
+
+  /**
+   * @return the uri of the system contact matching name and address of the contact, null if there is none.
+   */
+  public @Nullable Uri getSystemContactPhoto(@NonNull Context context, @NonNull DcContact contact) {
+    long hash = memoizedHashOf(contact);
+
+    long contactId;
+    synchronized (this) {
+      if (!loaded) {
+        load(context);
+      }
+      int index = Arrays.binarySearch(hashes, hash);
+      if (index < 0) {
+        return null;
+      }
+      contactId = contactIds[index];
+    }
+    return ContentUris.withAppendedId(ContactsContract.Contacts.CONTENT_URI, contactId);
+  }
+
+  private long memoizedHashOf(@NonNull DcContact contact) {
+    String displayName = contact.getDisplayName();
+    String addr        = contact.getAddr();
+
+    synchronized (memoizedHashes) {
+      MemoizedHash memoized = memoizedHashes.get(contact.getId());
+      if (memoized != null && memoized.matches(displayName, addr)) {
+        return memoized.hash;
+      }
+    }
+
+    long hash = hashOf(displayName, addr);
+    synchronized (memoizedHashes) {
+      memoizedHashes.put(contact.getId(), new MemoizedHash(displayName, addr, hash));
+    }
+    return hash;
+  }
+
+  /**
+   * Replaces the index by the first count entries of the arrays and saves it;
+   * if a hash appears more than once, the first contact id wins.
+   * Lookups are not blocked while the file is written.
+   */
+  public void update(@NonNull long[] newHashes, @NonNull long[] newContactIds, int count) {
+    long[][] sorted = sortByHash(newHashes, newContactIds, count);
+    synchronized (this) {
+      hashes     = sorted[0];
+      contactIds = sorted[1];
+      loaded     = true;
+    }
+    save(sorted[0], sorted[1]);
+  }
+
+  private static long[][] sortByHash(long[] hashes, long[] contactIds, int count) {
+    Integer[] order = new Integer[count];
+    for (int i = 0; i < count; i++) {
+      order[i] = i;
+    }
+    // stable, so the first of equal hashes stays in front
+    Arrays.sort(order, (a, b) -> Long.compare(hashes[a], hashes[b]));
+
+    long[] sortedHashes     = new long[count];
+    long[] sortedContactIds = new long[count];
+    int    unique           = 0;
+    for (int i = 0; i < count; i++) {
+      long hash = hashes[order[i]];
+      if (unique > 0 && sortedHashes[unique - 1] == hash) {
+        continue;
+      }
+      sortedHashes[unique]     = hash;
+      sortedContactIds[unique] = contactIds[order[i]];
+      unique++;
+    }
+    return new long[][] {Arrays.copyOf(sortedHashes, unique), Arrays.copyOf(sortedContactIds, unique)};
+  }
+
+  private void load(@NonNull Context context) {
+    loaded = true;
+
+    if (!file.exists()) {
+      migrateFromPrefs(context);
+      return;
+    }
+
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      if (in.readInt() != FILE_VERSION) {
+        Log.w(TAG, "unknown index version, waiting for the next address book sync");
+        return;
+      }
+      int    count        = in.readInt();
+      long[] loadedHashes = new long[count];
+      long[] loadedIds    = new long[count];
+      for (int i = 0; i < count; i++) {
+        loadedHashes[i] = in.readLong();
+        loadedIds[i]    = in.readLong();
+      }
+      hashes     = loadedHashes;
+      contactIds = loadedIds;
+    } catch (IOException e) {
+      Log.w(TAG, "cannot read index", e);
+    }
+  }
+
+  /**
+   * Older versions stored the index as a string set of "sha256|contactId" in the preferences.
+   */
+  private void migrateFromPrefs(@NonNull Context context) {
+    Set<String> identifiers = Prefs.getLegacySystemContactPhotos(context);
+    if (identifiers.isEmpty()) {
+      return;
+    }
+
+    long[] legacyHashes = new long[identifiers.size()];
+    long[] legacyIds    = new long[identifiers.size()];
+    int    count        = 0;
+    for (String identifier : identifiers) {
+      String[] parts = identifier.split("\\|");
+      try {
+        if (parts.length == 2 && parts[0].length() >= 16) {
+          legacyHashes[count] = new BigInteger(parts[0].substring(0, 16), 16).longValue();
+          legacyIds[count]    = Long.parseLong(parts[1]);
+          count++;
+        }
+      } catch (NumberFormatException e) {
+        Log.w(TAG, "skipping bad identifier", e);
+      }
+    }
+
+    long[][] sorted = sortByHash(legacyHashes, legacyIds, count);
+    hashes     = sorted[0];
+    contactIds = sorted[1];
+    save(hashes, contactIds);
+    Prefs.removeLegacySystemContactPhotos(context);
+  }
+
+  private void save(long[] hashes, long[] contactIds) {
+    synchronized (file) {
+      File tempFile = new File(file.getPath() + ".tmp");
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+        out.writeInt(FILE_VERSION);
+        out.writeInt(hashes.length);
+        for (int i = 0; i < hashes.length; i++) {
+          out.writeLong(hashes[i]);
+          out.writeLong(contactIds[i]);
+        }
+      } catch (IOException e) {
+        Log.w(TAG, "cannot write index", e);
+        tempFile.delete();
+        return;
+      }
+
+      if (!tempFile.renameTo(file)) {
+        Log.w(TAG, "cannot replace index");
+        tempFile.delete();
+      }
+    }
+  }
+
+  private static class MemoizedHash {
+    private final String displayName;
+    private final String addr;
+    private final long   hash;
+
+    MemoizedHash(String displayName, String addr, long hash) {
+      this.displayName = displayName;
+      this.addr        = addr;
+      this.hash        = hash;
+    }
+
+    boolean matches(String displayName, String addr) {
+      return Util.equals(this.displayName, displayName) && Util.equals(this.addr, addr);
+    }
+  }
+}
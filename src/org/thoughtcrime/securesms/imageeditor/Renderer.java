@@ -23,4 +23,14 @@ public interface Renderer extends Parcelable {
    * @return true iff hit.
    */
   boolean hitTest(float x, float y);
+
+  /**
+   * Used by the undo history to skip serializing renderers that did not change since the last undo point.
+   *
+   * @return A number that changes whenever the persisted state changes;
+   * renderers that are never changed after construction may keep the default.
+   */
+  default int getModificationCount() {
+    return 0;
+  }
 }
@@ -10,6 +10,7 @@ import androidx.annotation.Nullable;
 import org.thoughtcrime.securesms.imageeditor.Renderer;
 import org.thoughtcrime.securesms.imageeditor.RendererContext;
 
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -54,6 +55,9 @@ public final class EditorElement implements Parcelable {
   @NonNull
   private AlphaAnimation alphaAnimation = AlphaAnimation.NULL_1;
 
+  @Nullable
+  private ElementState cachedState;
+
   public EditorElement(@Nullable Renderer renderer) {
     this.id       = UUID.randomUUID();
     this.flags    = new EditorFlags();
@@ -61,11 +65,19 @@ public final class EditorElement implements Parcelable {
   }
 
   private EditorElement(Parcel in) {
+    this(in, Collections.emptyList());
+    in.readTypedList(children, EditorElement.CREATOR);
+  }
+
+  /**
+   * Reads an element written by {@link #writeStateToParcel(Parcel, int)} and adds the given children.
+   */
+  EditorElement(@NonNull Parcel in, @NonNull List<EditorElement> children) {
     id       = ParcelUtils.readUUID(in);
     flags    = new EditorFlags(in.readInt());
     ParcelUtils.readMatrix(localMatrix, in);
     renderer = in.readParcelable(Renderer.class.getClassLoader());
-    in.readTypedList(children, EditorElement.CREATOR);
+    this.children.addAll(children);
   }
 
   UUID getId() {
@@ -190,6 +202,41 @@ public final class EditorElement implements Parcelable {
     return children.get(i);
   }
 
+  @NonNull UUID[] getChildIds() {
+    UUID[] ids = new UUID[children.size()];
+    int i = 0;
+    for (EditorElement child : children) {
+      ids[i++] = child.id;
+    }
+    return ids;
+  }
+
+  /**
+   * @return true iff the children are the very same elements in the same order.
+   */
+  boolean hasChildren(@NonNull List<EditorElement> children) {
+    if (this.children.size() != children.size()) return false;
+
+    Iterator<EditorElement> iterator = children.iterator();
+    for (EditorElement child : this.children) {
+      if (child != iterator.next()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * The state last taken by {@link ElementState#of(EditorElement)}, it may be outdated.
+   */
+  @Nullable ElementState getCachedState() {
+    return cachedState;
+  }
+
+  void setCachedState(@Nullable ElementState cachedState) {
+    this.cachedState = cachedState;
+  }
+
   void forAllInTree(@NonNull PerElementFunction function) {
     function.apply(this);
     for (EditorElement child : children) {
@@ -325,10 +372,17 @@ public final class EditorElement implements Parcelable {
 
   @Override
   public void writeToParcel(Parcel dest, int flags) {
+    writeStateToParcel(dest, flags);
+    dest.writeTypedList(children);
+  }
+
+  /**
+   * Writes the persisted state of this element without its children.
+   */
+  void writeStateToParcel(@NonNull Parcel dest, int flags) {
     ParcelUtils.writeUUID(dest, id);
     dest.writeInt(this.flags.asInt());
     ParcelUtils.writeMatrix(dest, localMatrix);
     dest.writeParcelable(renderer, flags);
-    dest.writeTypedList(children);
   }
 }
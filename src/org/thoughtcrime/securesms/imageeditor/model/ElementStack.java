@@ -5,38 +5,60 @@ import android.os.Parcelable;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import java.util.Arrays;
-import java.util.Stack;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Contains a stack of elements for undo and redo stacks.
  * <p>
- * Elements are mutable, so this stack serializes the element and keeps a stack of serialized data.
+ * Elements are mutable, so this stack keeps their serialized state. Only the top of the stack is
+ * kept as a complete {@link ElementTreeState}, every state below is kept as the
+ * {@link ElementTreeState.Delta} from the state above it. So a new drawing on top of many others
+ * only costs the memory for its own element and its parent.
  * <p>
- * The stack has a {@link #limit} and if it exceeds that limit during a push the second to earliest item
- * is removed so that it can always go back to the first state. Effectively collapsing the history for
- * the start of the stack.
+ * Pushing and popping still walk the whole tree once to compare the cached states of its elements,
+ * but only the elements that changed are serialized on a push or unmarshalled on a pop, the others
+ * are reused.
+ * <p>
+ * The stack has a {@link #limit} and a limit for the memory used by the deltas. If either is
+ * exceeded during a push, the second to earliest item is removed by merging its delta into the
+ * delta of the earliest item, so that it can always go back to the first state. Effectively
+ * collapsing the history for the start of the stack.
  */
 final class ElementStack implements Parcelable {
 
-  private final int           limit;
-  private final Stack<byte[]> stack = new Stack<>();
+  private static final int MAX_DELTA_DATA_SIZE = 4 * 1024 * 1024;
+
+  private final int limit;
+
+  @Nullable
+  private ElementTreeState top;
+
+  /** deltas.get(i) turns state i + 1 into state i, state 0 being the earliest one. */
+  private final List<ElementTreeState.Delta> deltas = new ArrayList<>();
+
+  private long deltaDataSize;
 
   ElementStack(int limit) {
-    this.limit = limit;
+    this.limit = Math.max(2, limit);
   }
 
   private ElementStack(@NonNull Parcel in) {
     this(in.readInt());
-    final int count = in.readInt();
-    for (int i = 0; i < count; i++) {
-      stack.add(i, in.createByteArray());
+    if (in.readInt() != 0) {
+      top = ElementTreeState.readFromParcel(in);
+      final int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        ElementTreeState.Delta delta = ElementTreeState.Delta.readFromParcel(in);
+        deltas.add(delta);
+        deltaDataSize += delta.getDataSize();
+      }
     }
   }
 
   /**
-   * Pushes an element to the stack iff the element's serialized value is different to any found at
-   * the top of the stack.
+   * Pushes an element to the stack iff the element's state is different to the one at the top of
+   * the stack.
    * <p>
    * Removes the second to earliest item if it is overflowing.
    *
@@ -44,61 +66,73 @@ final class ElementStack implements Parcelable {
    * @return true iff the pushed item was different to the top item.
    */
   boolean tryPush(@NonNull EditorElement element) {
-    byte[]  bytes = getBytes(element);
-    boolean push  = stack.isEmpty() || !Arrays.equals(bytes, stack.peek());
+    ElementTreeState state = ElementTreeState.of(element);
 
-    if (push) {
-      stack.push(bytes);
-      if (stack.size() > limit) {
-        stack.remove(1);
+    if (top != null) {
+      if (top.sameAs(state)) {
+        return false;
       }
+
+      ElementTreeState.Delta delta = state.diff(top);
+      deltas.add(delta);
+      deltaDataSize += delta.getDataSize();
     }
-    return push;
-  }
+    top = state;
 
-  static byte[] getBytes(@NonNull Parcelable parcelable) {
-    Parcel parcel = Parcel.obtain();
-    byte[] bytes;
-    try {
-      parcel.writeParcelable(parcelable, 0);
-      bytes = parcel.marshall();
-    } finally {
-      parcel.recycle();
+    while (deltas.size() >= limit || (deltas.size() > 1 && deltaDataSize > MAX_DELTA_DATA_SIZE)) {
+      removeSecondToEarliest();
     }
-    return bytes;
+    return true;
+  }
+
+  private void removeSecondToEarliest() {
+    ElementTreeState.Delta toEarliest = deltas.remove(0);
+    ElementTreeState.Delta toSecond   = deltas.get(0);
+    ElementTreeState.Delta merged     = toSecond.then(toEarliest);
+
+    deltas.set(0, merged);
+    deltaDataSize += merged.getDataSize() - toEarliest.getDataSize() - toSecond.getDataSize();
   }
 
   /**
    * Pops the first different state from the supplied element.
+   * <p>
+   * The returned tree may share unchanged subtrees with the supplied element, which must not be used
+   * afterwards but to push its state.
    */
   @Nullable EditorElement pop(@NonNull EditorElement element) {
-    if (stack.empty()) return null;
+    if (top == null) return null;
+
+    ElementTreeState elementState = ElementTreeState.of(element);
 
-    byte[] elementBytes = getBytes(element);
-    byte[] stackData    = null;
+    while (top != null) {
+      EditorElement popped = top.sameAs(elementState) ? null : top.toElement();
 
-    while (!stack.empty() && stackData == null) {
-      byte[] topData = stack.pop();
+      removeTop();
 
-      if (!Arrays.equals(topData, elementBytes)) {
-        stackData = topData;
+      if (popped != null) {
+        return popped;
       }
     }
+    return null;
+  }
 
-    if (stackData == null) return null;
+  private void removeTop() {
+    if (top == null) return;
 
-    Parcel parcel = Parcel.obtain();
-    try {
-      parcel.unmarshall(stackData, 0, stackData.length);
-      parcel.setDataPosition(0);
-      return parcel.readParcelable(EditorElement.class.getClassLoader());
-    } finally {
-      parcel.recycle();
+    if (deltas.isEmpty()) {
+      top = null;
+    } else {
+      ElementTreeState.Delta delta = deltas.remove(deltas.size() - 1);
+      deltaDataSize -= delta.getDataSize();
+      top.apply(delta);
     }
   }
 
   void clear() {
-    stack.clear();
+    top = null;
+    deltas.clear();
+    deltaDataSize = 0;
   }
 
   public static final Creator<ElementStack> CREATOR = new Creator<ElementStack>() {
@@ -121,24 +155,24 @@ final class ElementStack implements Parcelable {
   @Override
   public void writeToParcel(Parcel dest, int flags) {
     dest.writeInt(limit);
-    final int count = stack.size();
-    dest.writeInt(count);
-    for (int i = 0; i < count; i++) {
-      dest.writeByteArray(stack.get(i));
+    dest.writeInt(top != null ? 1 : 0);
+    if (top != null) {
+      top.writeToParcel(dest);
+      final int count = deltas.size();
+      dest.writeInt(count);
+      for (int i = 0; i < count; i++) {
+        deltas.get(i).writeToParcel(dest);
+      }
     }
   }
 
+  /**
+   * States are only pushed if they differ from the top, so any state below the top is assumed to be
+   * different and only the top state needs to be compared.
+   */
   boolean stackContainsStateDifferentFrom(@NonNull EditorElement element) {
-    if (stack.isEmpty()) return false;
-
-    byte[] currentStateBytes = getBytes(element);
-
-    for (byte[] item : stack) {
-      if (!Arrays.equals(item, currentStateBytes)) {
-        return true;
-      }
-    }
+    if (top == null) return false;
 
-    return false;
+    return !deltas.isEmpty() || !top.sameAs(ElementTreeState.of(element));
   }
 }
@@ -0,0 +1,174 @@
+package org.thoughtcrime.securesms.imageeditor.model;
+
+import android.os.Parcel;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.thoughtcrime.securesms.imageeditor.Renderer;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The persisted state of a single {@link EditorElement}, that is the serialized element without its
+ * children plus the ids of the children.
+ * <p>
+ * States are immutable and are shared between all undo points in which the element did not change.
+ * The element caches its last state, which is reused as long as the flags, the matrix and the
+ * {@link Renderer#getModificationCount()} did not change, so unchanged elements are not serialized again.
+ * <p>
+ * In turn a state remembers the element it was last taken from or restored to, so that restoring a
+ * tree can reuse the elements that still have their state instead of unmarshalling them again.
+ */
+final class ElementState {
+
+  final UUID   id;
+  final byte[] data;
+  final UUID[] children;
+
+  // what the data was taken from, only used to decide if the cached state is still valid
+  private final int               flags;
+  private final @Nullable float[] matrixValues;
+  private final int               rendererModificationCount;
+
+  // weak, so the history does not keep the elements of old trees alive
+  private @Nullable WeakReference<EditorElement> element;
+
+  private ElementState(@NonNull UUID id, @NonNull byte[] data, @NonNull UUID[] children,
+                       int flags, @Nullable float[] matrixValues, int rendererModificationCount)
+  {
+    this.id                        = id;
+    this.data                      = data;
+    this.children                  = children;
+    this.flags                     = flags;
+    this.matrixValues              = matrixValues;
+    this.rendererModificationCount = rendererModificationCount;
+  }
+
+  static @NonNull ElementState of(@NonNull EditorElement element) {
+    int     flags                     = element.getFlags().asInt();
+    float[] matrixValues              = getMatrixValues(element);
+    int     rendererModificationCount = getRendererModificationCount(element);
+    UUID[]  children                  = element.getChildIds();
+
+    ElementState cached = element.getCachedState();
+    ElementState state;
+
+    if (cached != null && cached.isUpToDate(flags, matrixValues, rendererModificationCount)) {
+      state = Arrays.equals(cached.children, children) ? cached
+                                                        : new ElementState(cached.id, cached.data, children, flags, matrixValues, rendererModificationCount);
+    } else {
+      state = new ElementState(element.getId(), serialize(element), children, flags, matrixValues, rendererModificationCount);
+    }
+
+    element.setCachedState(state);
+    state.remember(element);
+    return state;
+  }
+
+  private boolean isUpToDate(int flags, @NonNull float[] matrixValues, int rendererModificationCount) {
+    return this.flags == flags && Arrays.equals(this.matrixValues, matrixValues) && this.rendererModificationCount == rendererModificationCount;
+  }
+
+  private void remember(@NonNull EditorElement element) {
+    if (this.element == null || this.element.get() != element) {
+      this.element = new WeakReference<>(element);
+    }
+  }
+
+  /**
+   * @return The element this state was last taken from or restored to, iff the element still has
+   * this state and these child ids. Unlike {@link #of(EditorElement)} this never serializes.
+   */
+  @Nullable EditorElement getUnchangedElement() {
+    EditorElement element = this.element != null ? this.element.get() : null;
+    if (element == null) return null;
+
+    ElementState cached = element.getCachedState();
+    if (cached == null || cached.data != data || !Arrays.equals(cached.children, children)) return null;
+
+    if (!Arrays.equals(element.getChildIds(), children) ||
+        !cached.isUpToDate(element.getFlags().asInt(), getMatrixValues(element), getRendererModificationCount(element)))
+    {
+      return null;
+    }
+    return element;
+  }
+
+  private static float[] getMatrixValues(@NonNull EditorElement element) {
+    float[] values = new float[9];
+    element.getLocalMatrix().getValues(values);
+    return values;
+  }
+
+  private static int getRendererModificationCount(@NonNull EditorElement element) {
+    Renderer renderer = element.getRenderer();
+    return renderer != null ? renderer.getModificationCount() : 0;
+  }
+
+  private static byte[] serialize(@NonNull EditorElement element) {
+    Parcel parcel = Parcel.obtain();
+    try {
+      element.writeStateToParcel(parcel, 0);
+      return parcel.marshall();
+    } finally {
+      parcel.recycle();
+    }
+  }
+
+  /**
+   * Creates a new element from this state, the new element caches this state.
+   */
+  @NonNull EditorElement toElement(@NonNull List<EditorElement> childElements) {
+    EditorElement element;
+    Parcel        parcel = Parcel.obtain();
+    try {
+      parcel.unmarshall(data, 0, data.length);
+      parcel.setDataPosition(0);
+      element = new EditorElement(parcel, childElements);
+    } finally {
+      parcel.recycle();
+    }
+
+    element.setCachedState(new ElementState(id, data, children, element.getFlags().asInt(), getMatrixValues(element), getRendererModificationCount(element)));
+    remember(element);
+    return element;
+  }
+
+  boolean sameAs(@Nullable ElementState other) {
+    if (other == this) return true;
+    if (other == null) return false;
+
+    return id.equals(other.id) &&
+           Arrays.equals(children, other.children) &&
+           (data == other.data || Arrays.equals(data, other.data));
+  }
+
+  /**
+   * @return Approximate memory used by this state.
+   */
+  int getDataSize() {
+    return data.length + children.length * 16;
+  }
+
+  void writeToParcel(@NonNull Parcel dest) {
+    ParcelUtils.writeUUID(dest, id);
+    dest.writeByteArray(data);
+    dest.writeInt(children.length);
+    for (UUID child : children) {
+      ParcelUtils.writeUUID(dest, child);
+    }
+  }
+
+  static @NonNull ElementState readFromParcel(@NonNull Parcel in) {
+    UUID   id       = ParcelUtils.readUUID(in);
+    byte[] data     = in.createByteArray();
+    UUID[] children = new UUID[in.readInt()];
+    for (int i = 0; i < children.length; i++) {
+      children[i] = ParcelUtils.readUUID(in);
+    }
+    return new ElementState(id, data, children, 0, null, 0);
+  }
+}
@@ -0,0 +1,185 @@
+package org.thoughtcrime.securesms.imageeditor.model;
+
+import android.os.Parcel;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * The persisted state of a whole {@link EditorElement} tree as {@link ElementState}s by element id.
+ */
+final class ElementTreeState {
+
+  private       UUID                    rootId;
+  private final Map<UUID, ElementState> states;
+
+  private ElementTreeState(@NonNull UUID rootId, @NonNull Map<UUID, ElementState> states) {
+    this.rootId = rootId;
+    this.states = states;
+  }
+
+  static @NonNull ElementTreeState of(@NonNull EditorElement root) {
+    Map<UUID, ElementState> states = new HashMap<>();
+    root.forAllInTree(element -> {
+      ElementState state = ElementState.of(element);
+      states.put(state.id, state);
+    });
+    return new ElementTreeState(root.getId(), states);
+  }
+
+  boolean sameAs(@NonNull ElementTreeState other) {
+    if (!rootId.equals(other.rootId) || states.size() != other.states.size()) return false;
+
+    for (ElementState state : states.values()) {
+      if (!state.sameAs(other.states.get(state.id))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Subtrees whose elements all still have their state, see {@link ElementState#getUnchangedElement()},
+   * are reused. So only the changed elements and their ancestors are unmarshalled.
+   *
+   * @return An element tree with this state.
+   */
+  @NonNull EditorElement toElement() {
+    return toElement(rootId);
+  }
+
+  private @NonNull EditorElement toElement(@NonNull UUID id) {
+    ElementState        state     = states.get(id);
+    EditorElement       unchanged = state.getUnchangedElement();
+    List<EditorElement> children  = new ArrayList<>(state.children.length);
+    for (UUID childId : state.children) {
+      children.add(toElement(childId));
+    }
+    return unchanged != null && unchanged.hasChildren(children) ? unchanged : state.toElement(children);
+  }
+
+  /**
+   * @return The changes that turn this state into the other one.
+   */
+  @NonNull Delta diff(@NonNull ElementTreeState other) {
+    Map<UUID, ElementState> changes = new HashMap<>();
+
+    for (ElementState state : other.states.values()) {
+      if (!state.sameAs(states.get(state.id))) {
+        changes.put(state.id, state);
+      }
+    }
+    for (UUID id : states.keySet()) {
+      if (!other.states.containsKey(id)) {
+        changes.put(id, null);
+      }
+    }
+    return new Delta(other.rootId, changes);
+  }
+
+  /**
+   * Changes this state in place, the cost depends only on the size of the delta.
+   */
+  void apply(@NonNull Delta delta) {
+    rootId = delta.rootId;
+    for (Map.Entry<UUID, ElementState> change : delta.changes.entrySet()) {
+      if (change.getValue() != null) {
+        states.put(change.getKey(), change.getValue());
+      } else {
+        states.remove(change.getKey());
+      }
+    }
+  }
+
+  void writeToParcel(@NonNull Parcel dest) {
+    ParcelUtils.writeUUID(dest, rootId);
+    dest.writeInt(states.size());
+    for (ElementState state : states.values()) {
+      state.writeToParcel(dest);
+    }
+  }
+
+  static @NonNull ElementTreeState readFromParcel(@NonNull Parcel in) {
+    UUID                    rootId = ParcelUtils.readUUID(in);
+    int                     count  = in.readInt();
+    Map<UUID, ElementState> states = new HashMap<>(count);
+    for (int i = 0; i < count; i++) {
+      ElementState state = ElementState.readFromParcel(in);
+      states.put(state.id, state);
+    }
+    return new ElementTreeState(rootId, states);
+  }
+
+  /**
+   * Element states to add or replace by id, a null state removes the element.
+   */
+  static final class Delta {
+
+    private final UUID                    rootId;
+    private final Map<UUID, ElementState> changes;
+    private final int                     dataSize;
+
+    private Delta(@NonNull UUID rootId, @NonNull Map<UUID, ElementState> changes) {
+      this.rootId  = rootId;
+      this.changes = changes;
+
+      int size = 0;
+      for (ElementState state : changes.values()) {
+        size += 16 + (state != null ? state.getDataSize() : 0);
+      }
+      this.dataSize = size;
+    }
+
+    /**
+     * @return A delta with the same effect as applying this and then the next delta.
+     */
+    @NonNull Delta then(@NonNull Delta next) {
+      Map<UUID, ElementState> merged = new HashMap<>(changes);
+      merged.putAll(next.changes);
+      return new Delta(next.rootId, merged);
+    }
+
+    /**
+     * @return Approximate memory used by the states in this delta.
+     */
+    int getDataSize() {
+      return dataSize;
+    }
+
+    void writeToParcel(@NonNull Parcel dest) {
+      ParcelUtils.writeUUID(dest, rootId);
+      dest.writeInt(changes.size());
+      for (Map.Entry<UUID, ElementState> change : changes.entrySet()) {
+        ParcelUtils.writeUUID(dest, change.getKey());
+        writeNullableState(dest, change.getValue());
+      }
+    }
+
+    static @NonNull Delta readFromParcel(@NonNull Parcel in) {
+      UUID                    rootId  = ParcelUtils.readUUID(in);
+      int                     count   = in.readInt();
+      Map<UUID, ElementState> changes = new HashMap<>(count);
+      for (int i = 0; i < count; i++) {
+        UUID id = ParcelUtils.readUUID(in);
+        changes.put(id, readNullableState(in));
+      }
+      return new Delta(rootId, changes);
+    }
+
+    private static void writeNullableState(@NonNull Parcel dest, @Nullable ElementState state) {
+      dest.writeInt(state != null ? 1 : 0);
+      if (state != null) {
+        state.writeToParcel(dest);
+      }
+    }
+
+    private static @Nullable ElementState readNullableState(@NonNull Parcel in) {
+      return in.readInt() != 0 ? ElementState.readFromParcel(in) : null;
+    }
+  }
+}
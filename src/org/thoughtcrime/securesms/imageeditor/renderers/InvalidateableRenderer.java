@@ -14,6 +14,8 @@ abstract class InvalidateableRenderer implements Renderer {
 
   private WeakReference<RendererContext.Invalidate> invalidate = new WeakReference<>(null);
 
+  private int modificationCount;
+
   @Override
   public void render(@NonNull RendererContext rendererContext) {
     setInvalidate(rendererContext.invalidate);
@@ -25,7 +27,16 @@ abstract class InvalidateableRenderer implements Renderer {
     }
   }
 
+  /**
+   * Subclasses invalidate on every change, so this also counts the changes of the persisted state.
+   */
+  @Override
+  public int getModificationCount() {
+    return modificationCount;
+  }
+
   protected void invalidate() {
+    modificationCount++;
     RendererContext.Invalidate invalidate = this.invalidate.get();
     if (invalidate != null) {
       invalidate.onInvalidate(this);
@@ -8,6 +8,7 @@ import com.mapbox.geojson.Feature;
 import com.mapbox.mapboxsdk.geometry.LatLngBounds;
 
 import org.thoughtcrime.securesms.map.model.MapSource;
+import org.thoughtcrime.securesms.util.collections.IntObjectMap;
 
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -31,9 +32,10 @@ public class DataCollectionTask extends AsyncTask<Void, Void, Void> {
 
     private final int chatId;
     private final int[] contactIds;
-    private ConcurrentHashMap<Integer, MapSource> contactMapSources;
+    private IntObjectMap<MapSource> contactMapSources;
     private ConcurrentHashMap<String, LinkedList<Feature>> featureCollections;
-    private ConcurrentHashMap<Integer, Feature> lastPositions;
+    private IntObjectMap<Feature> lastPositions;
+    private IntObjectMap<LocationTrack> locationTracks;
     private final LatLngBounds.Builder boundingBuilder;
     private final DcContext dcContext;
     private final DataCollectionCallback callback;
@@ -41,15 +43,17 @@ public class DataCollectionTask extends AsyncTask<Void, Void, Void> {
     public DataCollectionTask(DcContext context,
                               int chatId,
                               int[] contactIds,
-                              ConcurrentHashMap<Integer, MapSource> contactMapSources,
+                              IntObjectMap<MapSource> contactMapSources,
                               ConcurrentHashMap featureCollections,
-                              ConcurrentHashMap<Integer, Feature> lastPositions,
+                              IntObjectMap<Feature> lastPositions,
+                              IntObjectMap<LocationTrack> locationTracks,
                               LatLngBounds.Builder boundingBuilder,
                               DataCollectionCallback callback) {
         this.chatId = chatId;
         this.contactMapSources = contactMapSources;
         this.featureCollections = featureCollections;
         this.lastPositions = lastPositions;
+        this.locationTracks = locationTracks;
         this.boundingBuilder = boundingBuilder;
         this.dcContext = context;
         this.callback = callback;
@@ -70,6 +74,7 @@ public class DataCollectionTask extends AsyncTask<Void, Void, Void> {
                 contactMapSources,
                 featureCollections,
                 lastPositions,
+                locationTracks,
                 boundingBuilder);
         for (int contactId : contactIds) {
            dataCollector.updateSource(chatId,
@@ -1,7 +1,6 @@
 package org.thoughtcrime.securesms.map;
 
 import com.b44t.messenger.DcArray;
-import com.b44t.messenger.DcContact;
 import com.b44t.messenger.DcContext;
 import com.b44t.messenger.DcMsg;
 import com.google.gson.JsonObject;
@@ -12,6 +11,7 @@ import com.mapbox.mapboxsdk.geometry.LatLng;
 import com.mapbox.mapboxsdk.geometry.LatLngBounds;
 
 import org.thoughtcrime.securesms.map.model.MapSource;
+import org.thoughtcrime.securesms.util.collections.IntObjectMap;
 
 import java.util.ArrayList;
 import java.util.LinkedList;
@@ -38,116 +38,170 @@ public class DataCollector {
 
 
     private final DcContext dcContext;
-    private ConcurrentHashMap<Integer, MapSource> contactMapSources;
+    private IntObjectMap<MapSource> contactMapSources;
     private ConcurrentHashMap<String, LinkedList<Feature>> featureCollections;
-    private ConcurrentHashMap<Integer, Feature> lastPositions;
+    private IntObjectMap<Feature> lastPositions;
+    private IntObjectMap<LocationTrack> locationTracks;
     private LatLngBounds.Builder boundingBuilder;
 
     public DataCollector(DcContext dcContext,
-                         ConcurrentHashMap<Integer, MapSource> contactMapSources,
+                         IntObjectMap<MapSource> contactMapSources,
                          ConcurrentHashMap<String, LinkedList<Feature>> featureCollections,
-                         ConcurrentHashMap<Integer, Feature> lastPositions,
+                         IntObjectMap<Feature> lastPositions,
+                         IntObjectMap<LocationTrack> locationTracks,
                          LatLngBounds.Builder boundingBuilder) {
         this.dcContext = dcContext;
         this.contactMapSources = contactMapSources;
         this.featureCollections = featureCollections;
         this.lastPositions = lastPositions;
+        this.locationTracks = locationTracks;
         this.boundingBuilder = boundingBuilder;
     }
 
 
-    public void updateSource(int chatId,
-                              int contactId,
-                              long startTimestamp,
-                              long endTimestamp) {
-        DcArray locations = dcContext.getLocations(chatId, contactId, startTimestamp, endTimestamp);
-
-        MapSource contactMapMetadata = contactMapSources.get(contactId);
-        if (contactMapMetadata == null) {
-            contactMapMetadata = addContactMapSource(contactMapSources, contactId);
+    /**
+     * Adds the locations of the contact that are newer than the ones already collected
+     * and drops the ones older than startTimestamp.
+     *
+     * @return true if the feature collections of the contact were changed.
+     */
+    public boolean updateSource(int chatId,
+                                int contactId,
+                                long startTimestamp,
+                                long endTimestamp) {
+        MapSource contactMapMetadata = getOrAddContactMapSource(contactId);
+
+        LocationTrack track;
+        synchronized (locationTracks) {
+            track = locationTracks.get(contactId);
+            if (track == null) {
+                track = new LocationTrack();
+                locationTracks.put(contactId, track);
+            }
         }
-        int count = locations.getCnt();
 
-        LinkedList<Feature> sortedPointFeatures = featureCollections.get(contactMapMetadata.getMarkerFeatureCollection());
-        if (sortedPointFeatures != null && sortedPointFeatures.size() == count) {
-            return;
-        } else {
-            sortedPointFeatures = new LinkedList<>();
-        }
-        LinkedList<Feature> sortedLineFeatures = new LinkedList<>();
-
-        for (int i = count - 1; i >= 0; i--) {
-            Point point = Point.fromLngLat(locations.getLongitude(i), locations.getLatitude(i));
-
-            String codepointChar =
-                    locations.getMarker(i) != null ?
-                            locations.getMarker(i) :
-                            "";
-            boolean isPoi = locations.isIndependent(i);
-            int messageId = locations.getMsgId(i);
-
-            Feature pointFeature = Feature.fromGeometry(point, new JsonObject(), String.valueOf(locations.getLocationId(i)));
-            pointFeature.addBooleanProperty(MARKER_SELECTED, false);
-            pointFeature.addBooleanProperty(LAST_LOCATION, false);
-            pointFeature.addNumberProperty(CONTACT_ID, contactId);
-            pointFeature.addNumberProperty(TIMESTAMP, locations.getTimestamp(i));
-            pointFeature.addNumberProperty(MESSAGE_ID, messageId);
-            pointFeature.addNumberProperty(ACCURACY, locations.getAccuracy(i));
-            pointFeature.addStringProperty(MARKER_CHAR, codepointChar);
-            pointFeature.addStringProperty(MARKER_ICON, isPoi ?
-                    contactMapMetadata.getMarkerPoi() :
-                    contactMapMetadata.getMarkerIcon());
-            pointFeature.addBooleanProperty(IS_POI, isPoi);
-            if (isPoi && codepointChar.length() == 0 && messageId != 0) {
-                //has a long poi label
-                DcMsg poiMsg = dcContext.getMsg(messageId);
-                String poiLongDescription = poiMsg.getText();
-                pointFeature.addStringProperty(POI_LONG_DESCRIPTION, poiLongDescription);
+        synchronized (track) {
+            boolean changed = track.dropOlderThan(startTimestamp);
+            long queryStart = Math.max(startTimestamp, track.getNewestTimestamp());
+
+            try (DcArray locations = dcContext.getLocations(chatId, contactId, queryStart, endTimestamp)) {
+                for (int i = locations.getCnt() - 1; i >= 0; i--) {
+                    if (track.contains(locations.getLocationId(i), locations.getTimestamp(i))) {
+                        continue;
+                    }
+                    appendLocation(track, locations, i, contactId, contactMapMetadata);
+                    changed = true;
+                }
             }
 
-            sortedPointFeatures.addFirst(pointFeature);
-
-            if (!locations.isIndependent(i) && sortedPointFeatures.size() > 1) {
-                Point lastPoint = (Point) sortedPointFeatures.get(1).geometry();
-                ArrayList<Point> lineSegmentPoints = new ArrayList<>(3);
-                lineSegmentPoints.add(lastPoint);
-                lineSegmentPoints.add(point);
-                LineString l = LineString.fromLngLats(lineSegmentPoints);
-                Feature lineFeature = Feature.fromGeometry(l, new JsonObject(), "l_" + pointFeature.id());
-                lineFeature.addNumberProperty(TIMESTAMP, pointFeature.getNumberProperty(TIMESTAMP));
-                sortedLineFeatures.addFirst(lineFeature);
+            if (!changed && featureCollections.containsKey(contactMapMetadata.getMarkerFeatureCollection())) {
+                return false;
             }
 
-            if (boundingBuilder != null) {
-                boundingBuilder.include(new LatLng(locations.getLatitude(i), locations.getLongitude(i)));
+            updateLastPosition(track, contactId, contactMapMetadata);
+            featureCollections.put(contactMapMetadata.getMarkerFeatureCollection(), track.getPointFeatures());
+            featureCollections.put(contactMapMetadata.getLineFeatureCollection(), track.getLineFeatures());
+            return true;
+        }
+    }
+
+    private void appendLocation(LocationTrack track, DcArray locations, int i, int contactId, MapSource contactMapMetadata) {
+        Point point = Point.fromLngLat(locations.getLongitude(i), locations.getLatitude(i));
+
+        String codepointChar =
+                locations.getMarker(i) != null ?
+                        locations.getMarker(i) :
+                        "";
+        boolean isPoi = locations.isIndependent(i);
+        int messageId = locations.getMsgId(i);
+
+        Feature pointFeature = Feature.fromGeometry(point, new JsonObject(), String.valueOf(locations.getLocationId(i)));
+        pointFeature.addBooleanProperty(MARKER_SELECTED, false);
+        pointFeature.addBooleanProperty(LAST_LOCATION, false);
+        pointFeature.addNumberProperty(CONTACT_ID, contactId);
+        pointFeature.addNumberProperty(TIMESTAMP, locations.getTimestamp(i));
+        pointFeature.addNumberProperty(MESSAGE_ID, messageId);
+        pointFeature.addNumberProperty(ACCURACY, locations.getAccuracy(i));
+        pointFeature.addStringProperty(MARKER_CHAR, codepointChar);
+        pointFeature.addStringProperty(MARKER_ICON, isPoi ?
+                contactMapMetadata.getMarkerPoi() :
+                contactMapMetadata.getMarkerIcon());
+        pointFeature.addBooleanProperty(IS_POI, isPoi);
+        if (isPoi && codepointChar.length() == 0 && messageId != 0) {
+            //has a long poi label
+            try (DcMsg poiMsg = dcContext.getMsg(messageId)) {
+                pointFeature.addStringProperty(POI_LONG_DESCRIPTION, poiMsg.getText());
             }
         }
 
-        if (sortedPointFeatures.size() > 0) {
-            for (Feature position : sortedPointFeatures) {
-                if (!position.getBooleanProperty(IS_POI)) {
-                    position.addStringProperty(LAST_POSITION_ICON, contactMapMetadata.getMarkerLastPositon());
-                    position.addStringProperty(LAST_POSITION_LABEL, contactMapMetadata.getDisplayName());
-                    position.removeProperty(MARKER_ICON);
-                    position.addBooleanProperty(LAST_LOCATION, true);
-                    lastPositions.put(contactId, position);
-                    break;
-                }
+        Feature lineFeature = null;
+        if (!isPoi && track.size() > 0) {
+            Point lastPoint = (Point) track.getNewestPoint().geometry();
+            ArrayList<Point> lineSegmentPoints = new ArrayList<>(3);
+            lineSegmentPoints.add(lastPoint);
+            lineSegmentPoints.add(point);
+            LineString l = LineString.fromLngLats(lineSegmentPoints);
+            lineFeature = Feature.fromGeometry(l, new JsonObject(), "l_" + pointFeature.id());
+            lineFeature.addNumberProperty(TIMESTAMP, pointFeature.getNumberProperty(TIMESTAMP));
+        }
+
+        track.append(locations.getTimestamp(i), locations.getLocationId(i), pointFeature, lineFeature);
+
+        if (boundingBuilder != null) {
+            boundingBuilder.include(new LatLng(locations.getLatitude(i), locations.getLongitude(i)));
+        }
+    }
+
+    private void updateLastPosition(LocationTrack track, int contactId, MapSource contactMapMetadata) {
+        Feature position = track.findNewestPosition();
+        Feature previous = track.getLastPosition();
+        if (position == previous) {
+            return;
+        }
+
+        // features may be shown already and serialized on the main thread at any time,
+        // so they are not modified here but replaced by modified copies.
+        if (previous != null && track.contains(previous)) {
+            Feature copy = copyFeature(previous);
+            copy.removeProperty(LAST_POSITION_ICON);
+            copy.removeProperty(LAST_POSITION_LABEL);
+            copy.addStringProperty(MARKER_ICON, contactMapMetadata.getMarkerIcon());
+            copy.addBooleanProperty(LAST_LOCATION, false);
+            track.replace(previous, copy);
+        }
+
+        if (position != null) {
+            Feature copy = copyFeature(position);
+            copy.addStringProperty(LAST_POSITION_ICON, contactMapMetadata.getMarkerLastPositon());
+            copy.addStringProperty(LAST_POSITION_LABEL, contactMapMetadata.getDisplayName());
+            copy.removeProperty(MARKER_ICON);
+            copy.addBooleanProperty(LAST_LOCATION, true);
+            track.replace(position, copy);
+            synchronized (lastPositions) {
+                lastPositions.put(contactId, copy);
             }
+            position = copy;
         }
+        track.setLastPosition(position);
+    }
 
-        featureCollections.put(contactMapMetadata.getMarkerFeatureCollection(), sortedPointFeatures);
-        featureCollections.put(contactMapMetadata.getLineFeatureCollection(), sortedLineFeatures);
+    private static Feature copyFeature(Feature feature) {
+        return Feature.fromGeometry(feature.geometry(), feature.properties().deepCopy(), feature.id());
     }
 
-    private MapSource addContactMapSource(ConcurrentHashMap<Integer, MapSource> contactMapSources, int contactId) {
-        if (contactMapSources.get(contactId) != null) {
-            return contactMapSources.get(contactId);
+    private MapSource getOrAddContactMapSource(int contactId) {
+        synchronized (contactMapSources) {
+            MapSource contactMapSource = contactMapSources.get(contactId);
+            if (contactMapSource != null) {
+                return contactMapSource;
+            }
         }
 
-        DcContact contact = dcContext.getContact(contactId);
-        MapSource contactMapSource = new MapSource(contact);
-        contactMapSources.put(contactId, contactMapSource);
-        return contactMapSource;
+        // the contact is loaded without holding the lock, another collector may have added it meanwhile.
+        MapSource contactMapSource = new MapSource(dcContext.getContact(contactId));
+        synchronized (contactMapSources) {
+            MapSource added = contactMapSources.putIfAbsent(contactId, contactMapSource);
+            return added != null ? added : contactMapSource;
+        }
     }
 }
@@ -0,0 +1,178 @@
+package org.thoughtcrime.securesms.map;
+
+import com.mapbox.geojson.Feature;
+
+import java.util.LinkedList;
+
+import static org.thoughtcrime.securesms.map.MapDataManager.IS_POI;
+
+/**
+ * The locations of one contact as point and line features, kept in a growing ring buffer.
+ *
+ * New locations are appended at the head, locations leaving the time frame are dropped from the tail,
+ * so that an update only has to create the features for the locations added since the last update.
+ * Slot i holds a location together with the line from the location in slot i-1, if any.
+ */
+class LocationTrack {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private long[]    timestamps  = new long[INITIAL_CAPACITY];
+    private int[]     locationIds = new int[INITIAL_CAPACITY];
+    private Feature[] points      = new Feature[INITIAL_CAPACITY];
+    private Feature[] lines       = new Feature[INITIAL_CAPACITY];
+    private int tail; // oldest location
+    private int size;
+
+    private Feature lastPosition;
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return timestamp of the newest location, 0 if there are no locations.
+     */
+    long getNewestTimestamp() {
+        return size == 0 ? 0 : timestamps[slot(size - 1)];
+    }
+
+    Feature getNewestPoint() {
+        return size == 0 ? null : points[slot(size - 1)];
+    }
+
+    /**
+     * Locations are requested starting with the timestamp of the newest location,
+     * the ones with exactly this timestamp may be returned again.
+     */
+    boolean contains(int locationId, long timestamp) {
+        for (int i = size - 1; i >= 0 && timestamps[slot(i)] >= timestamp; i--) {
+            if (locationIds[slot(i)] == locationId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void append(long timestamp, int locationId, Feature point, Feature line) {
+        if (size == timestamps.length) {
+            grow();
+        }
+        int head = slot(size);
+        timestamps[head]  = timestamp;
+        locationIds[head] = locationId;
+        points[head]      = point;
+        lines[head]       = line;
+        size++;
+    }
+
+    /**
+     * @return true if any location was dropped.
+     */
+    boolean dropOlderThan(long timestamp) {
+        int dropped = 0;
+        while (size > 0 && timestamps[tail] < timestamp) {
+            points[tail] = null;
+            lines[tail]  = null;
+            tail = (tail + 1) % timestamps.length;
+            size--;
+            dropped++;
+        }
+        if (size > 0 && dropped > 0) {
+            // the oldest remaining location is not connected to anything anymore
+            lines[tail] = null;
+        }
+        return dropped > 0;
+    }
+
+    /**
+     * @return the newest location that is not a POI, null if there is none.
+     */
+    Feature findNewestPosition() {
+        for (int i = size - 1; i >= 0; i--) {
+            Feature point = points[slot(i)];
+            if (!point.getBooleanProperty(IS_POI)) {
+                return point;
+            }
+        }
+        return null;
+    }
+
+    boolean contains(Feature point) {
+        return indexOf(point) != -1;
+    }
+
+    void replace(Feature point, Feature newPoint) {
+        int index = indexOf(point);
+        if (index != -1) {
+            points[slot(index)] = newPoint;
+        }
+    }
+
+    private int indexOf(Feature point) {
+        // the features searched for are usually among the newest ones
+        for (int i = size - 1; i >= 0; i--) {
+            if (points[slot(i)] == point) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    Feature getLastPosition() {
+        return lastPosition;
+    }
+
+    void setLastPosition(Feature lastPosition) {
+        this.lastPosition = lastPosition;
+    }
+
+    /**
+     * @return a new list of all point features, newest first.
+     */
+    LinkedList<Feature> getPointFeatures() {
+        LinkedList<Feature> result = new LinkedList<>();
+        for (int i = 0; i < size; i++) {
+            result.addFirst(points[slot(i)]);
+        }
+        return result;
+    }
+
+    /**
+     * @return a new list of all line features, newest first.
+     */
+    LinkedList<Feature> getLineFeatures() {
+        LinkedList<Feature> result = new LinkedList<>();
+        for (int i = 0; i < size; i++) {
+            Feature line = lines[slot(i)];
+            if (line != null) {
+                result.addFirst(line);
+            }
+        }
+        return result;
+    }
+
+    private int slot(int index) {
+        return (tail + index) % timestamps.length;
+    }
+
+    private void grow() {
+        int newCapacity = timestamps.length * 2;
+        long[]    newTimestamps  = new long[newCapacity];
+        int[]     newLocationIds = new int[newCapacity];
+        Feature[] newPoints      = new Feature[newCapacity];
+        Feature[] newLines       = new Feature[newCapacity];
+        for (int i = 0; i < size; i++) {
+            int s = slot(i);
+            newTimestamps[i]  = timestamps[s];
+            newLocationIds[i] = locationIds[s];
+            newPoints[i]      = points[s];
+            newLines[i]       = lines[s];
+        }
+        timestamps  = newTimestamps;
+        locationIds = newLocationIds;
+        points      = newPoints;
+        lines       = newLines;
+        tail = 0;
+    }
+}
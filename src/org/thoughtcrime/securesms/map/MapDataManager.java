@@ -28,12 +28,18 @@ import org.thoughtcrime.securesms.map.DataCollectionTask.DataCollectionCallback;
 import org.thoughtcrime.securesms.map.GenerateInfoWindowTask.GenerateInfoWindowCallback;
 import org.thoughtcrime.securesms.map.model.FilterProvider;
 import org.thoughtcrime.securesms.map.model.MapSource;
+import org.thoughtcrime.securesms.util.ThreadUtil;
+import org.thoughtcrime.securesms.util.Util;
+import org.thoughtcrime.securesms.util.collections.IntObjectMap;
+import org.thoughtcrime.securesms.util.collections.IntSet;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 
 import static com.b44t.messenger.DcContext.DC_EVENT_LOCATION_CHANGED;
 import static com.b44t.messenger.DcContext.DC_GCL_ADD_SELF;
@@ -105,9 +111,17 @@ public class MapDataManager implements DcEventCenter.DcEventDelegate, GenerateIn
 
     private static final String TAG = MapDataManager.class.getSimpleName();
     private Style mapboxStyle;
-    private ConcurrentHashMap<Integer, MapSource> contactMapSources = new ConcurrentHashMap<>();
+    // the maps by contact id are shared with the collectors in the background,
+    // all access is synchronized on the map.
+    private final IntObjectMap<MapSource> contactMapSources = new IntObjectMap<>();
     private ConcurrentHashMap<String, LinkedList<Feature>> featureCollections = new ConcurrentHashMap<>();
-    private ConcurrentHashMap<Integer, Feature> lastPositions = new ConcurrentHashMap<>();
+    private final IntObjectMap<Feature> lastPositions = new IntObjectMap<>();
+    private final IntObjectMap<LocationTrack> locationTracks = new IntObjectMap<>();
+    // location updates are collected one after another off the main thread,
+    // a contact is queued only once even if it sends several locations meanwhile.
+    private final ExecutorService updateExecutor = ThreadUtil.newDynamicSingleThreadedExecutor();
+    private final IntSet pendingUpdates = new IntSet();
+    private volatile boolean isDestroyed = false;
     private FilterProvider filterProvider = new FilterProvider();
     private Feature selectedFeature;
     private int chatId;
@@ -160,6 +174,7 @@ public class MapDataManager implements DcEventCenter.DcEventDelegate, GenerateIn
     }
 
     public void onDestroy() {
+        isDestroyed = true;
         GenerateInfoWindowTask.cancelRunningTasks();
         DataCollectionTask.cancelRunningTasks();
         Log.d(TAG, "performance test - Map manager destroyed");
@@ -171,7 +186,10 @@ public class MapDataManager implements DcEventCenter.DcEventDelegate, GenerateIn
     }
 
     public void refreshSource(int contactId) {
-        MapSource source = contactMapSources.get(contactId);
+        MapSource source;
+        synchronized (contactMapSources) {
+            source = contactMapSources.get(contactId);
+        }
         LinkedList<Feature> collection = featureCollections.get(source.getMarkerFeatureCollection());
         GeoJsonSource pointSource = (GeoJsonSource) mapboxStyle.getSource(source.getMarkerSource());
         pointSource.setGeoJson(FeatureCollection.fromFeatures(collection));
@@ -179,26 +197,52 @@ public class MapDataManager implements DcEventCenter.DcEventDelegate, GenerateIn
         GeoJsonSource lineSource = (GeoJsonSource) mapboxStyle.getSource(source.getLineSource());
         lineSource.setGeoJson(FeatureCollection.fromFeatures(lineFeatures));
         GeoJsonSource lastPostionSource = (GeoJsonSource) mapboxStyle.getSource(LAST_POSITION_SOURCE);
-        lastPostionSource.setGeoJson(FeatureCollection.fromFeatures(new LinkedList<>(lastPositions.values())));
+        List<Feature> positions;
+        synchronized (lastPositions) {
+            positions = lastPositions.values();
+        }
+        lastPostionSource.setGeoJson(FeatureCollection.fromFeatures(positions));
     }
 
     @Override
     public void handleEvent(int eventId, Object data1, Object data2) {
         Log.d(TAG, "updateEvent in MapDataManager called. eventId: " + eventId);
         int contactId = ((Long) data1).intValue();
-        if (contactMapSources.containsKey(contactId)) {
-            DataCollector collector = new DataCollector(dcContext,
-                    contactMapSources,
-                    featureCollections,
-                    lastPositions, null);
-            collector.updateSource(chatId,
-                    contactId,
-                    System.currentTimeMillis() - TIME_FRAME,
-                    TIMESTAMP_NOW);
-
-            refreshSource(contactId);
+        synchronized (contactMapSources) {
+            if (!contactMapSources.containsKey(contactId)) {
+                return;
+            }
+        }
+        boolean queued;
+        synchronized (pendingUpdates) {
+            queued = pendingUpdates.add(contactId);
+        }
+        if (queued) {
+            updateExecutor.execute(() -> {
+                synchronized (pendingUpdates) {
+                    pendingUpdates.remove(contactId);
+                }
+                DataCollector collector = new DataCollector(dcContext,
+                        contactMapSources,
+                        featureCollections,
+                        lastPositions,
+                        locationTracks,
+                        null);
+                boolean changed = collector.updateSource(chatId,
+                        contactId,
+                        System.currentTimeMillis() - TIME_FRAME,
+                        TIMESTAMP_NOW);
+
+                if (changed) {
+                    Util.runOnMain(() -> {
+                        if (!isDestroyed) {
+                            updateSelectedFeature();
+                            refreshSource(contactId);
+                        }
+                    });
+                }
+            });
         }
-        Log.d(TAG, "updateEvent in MapDataManager called. finished: " + eventId);
     }
 
     @Override
@@ -208,14 +252,18 @@ public class MapDataManager implements DcEventCenter.DcEventDelegate, GenerateIn
 
 
     public String[] getMarkerLayers() {
-        String markerLayers[] = new String[contactMapSources.size() + 1];
+        List<MapSource> sources;
+        synchronized (contactMapSources) {
+            sources = contactMapSources.values();
+        }
+        String markerLayers[] = new String[sources.size() + 1];
         int i = 0;
-        for (Map.Entry<Integer, MapSource> entry : contactMapSources.entrySet()) {
-            markerLayers[i] = entry.getValue().getMarkerLayer();
+        for (MapSource source : sources) {
+            markerLayers[i] = source.getMarkerLayer();
             i += 1;
         }
 
-        markerLayers[contactMapSources.size()] = LAST_POSITION_LAYER;
+        markerLayers[sources.size()] = LAST_POSITION_LAYER;
         return markerLayers;
     }
 
@@ -255,7 +303,11 @@ public class MapDataManager implements DcEventCenter.DcEventDelegate, GenerateIn
 
     @Override
     public void onDataCollectionFinished() {
-        for (MapSource source : contactMapSources.values()) {
+        List<MapSource> sources;
+        synchronized (contactMapSources) {
+            sources = contactMapSources.values();
+        }
+        for (MapSource source : sources) {
             initContactBasedLayers(source);
             refreshSource(source.getContactId());
             applyMarkerFilter(source);
@@ -305,7 +357,10 @@ public class MapDataManager implements DcEventCenter.DcEventDelegate, GenerateIn
 
     private void applyFilters(int[] contactIds) {
         for (int contactId : contactIds) {
-            MapSource contactMapMetadata = contactMapSources.get(contactId);
+            MapSource contactMapMetadata;
+            synchronized (contactMapSources) {
+                contactMapMetadata = contactMapSources.get(contactId);
+            }
             if (contactMapMetadata == null) {
                 continue;
             }
@@ -505,6 +560,7 @@ public class MapDataManager implements DcEventCenter.DcEventDelegate, GenerateIn
                 contactMapSources,
                 featureCollections,
                 lastPositions,
+                locationTracks,
                 boundingBuilder,
                 this).execute();
     }
@@ -538,6 +594,19 @@ public class MapDataManager implements DcEventCenter.DcEventDelegate, GenerateIn
         refreshSource(selectedFeature.getNumberProperty(CONTACT_ID).intValue());
     }
 
+    /**
+     * The collected features may have been replaced by modified copies,
+     * make sure the selection refers to the one that is shown.
+     */
+    private void updateSelectedFeature() {
+        if (selectedFeature != null) {
+            Feature current = getFeatureWithId(selectedFeature.id());
+            if (current != null) {
+                selectedFeature = current;
+            }
+        }
+    }
+
     private Feature getFeatureWithId(String id) {
         for (Map.Entry<String, LinkedList<Feature>> e : featureCollections.entrySet()) {
             String key = e.getKey();
@@ -0,0 +1,163 @@
+package org.thoughtcrime.securesms.mms;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.b44t.messenger.DcMsg;
+
+import org.thoughtcrime.securesms.connect.ApplicationDcContext;
+import org.thoughtcrime.securesms.connect.DcHelper;
+import org.thoughtcrime.securesms.util.BitmapUtil;
+import org.thoughtcrime.securesms.util.MediaUtil;
+import org.thoughtcrime.securesms.video.recode.VideoRecoder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Prepares a batch of media messages for sending, eg. when sharing many photos at once.
+ *
+ * Images are recoded in parallel, videos one after another as the hardware codecs cannot be shared.
+ * The messages are handed over to the core in their original order, each as soon as it and all before are ready.
+ */
+public class MediaPreparer {
+
+  private static final String TAG = MediaPreparer.class.getSimpleName();
+
+  private static ExecutorService imageExecutor;
+  private static final ExecutorService videoExecutor = Executors.newSingleThreadExecutor();
+
+  public interface ProgressListener {
+    void onProgress(@NonNull MediaPreparer preparer);
+  }
+
+  private final Context              context;
+  private final ApplicationDcContext dcContext;
+  private final int                  chatId;
+
+  private volatile int  total;
+  private volatile int  completed;
+  private final AtomicInteger imagesRecoded = new AtomicInteger();
+  private volatile long bytesProcessed;
+  private volatile long startTime;
+
+  public MediaPreparer(@NonNull Context context, int chatId) {
+    this.context   = context.getApplicationContext();
+    this.dcContext = DcHelper.getContext(context);
+    this.chatId    = chatId;
+  }
+
+  /**
+   * Prepares and sends all messages, blocks until the last one is handed over to the core.
+   */
+  @WorkerThread
+  public void prepareAndSend(@NonNull List<DcMsg> msgs, @Nullable ProgressListener listener) {
+    total = msgs.size();
+    completed = 0;
+    imagesRecoded.set(0);
+    bytesProcessed = 0;
+    startTime = System.currentTimeMillis();
+
+    List<Future<Boolean>> results = new ArrayList<>(msgs.size());
+    for (DcMsg msg : msgs) {
+      results.add(submit(msg));
+    }
+
+    for (int i = 0; i < msgs.size(); i++) {
+      DcMsg msg = msgs.get(i);
+      boolean doSend;
+      try {
+        doSend = results.get(i).get();
+      } catch (Exception e) {
+        Log.w(TAG, "cannot prepare " + msg.getFile(), e);
+        doSend = false;
+      }
+
+      if (doSend) {
+        dcContext.sendMsg(chatId, msg);
+      }
+
+      completed = i + 1;
+      if (listener != null) {
+        listener.onProgress(this);
+      }
+    }
+
+    Log.i(TAG, String.format(Locale.US, "prepared %d messages in %dms, %.1f images/s, %.1f MB/s",
+        total, System.currentTimeMillis() - startTime, getImagesPerSecond(), getMegabytesPerSecond()));
+  }
+
+  private Future<Boolean> submit(DcMsg msg) {
+    if (msg.getType() == DcMsg.DC_MSG_IMAGE && MediaUtil.isJpegType(msg.getFilemime())) {
+      return getImageExecutor(context).submit(() -> {
+        long bytes = new File(msg.getFile()).length();
+        BitmapUtil.recodeImageMsg(context, msg);
+        imagesRecoded.incrementAndGet();
+        addBytesProcessed(bytes);
+        return true;
+      });
+    } else if (msg.getType() == DcMsg.DC_MSG_VIDEO) {
+      return videoExecutor.submit(() -> {
+        long bytes = new File(msg.getFile()).length();
+        // preparing the message early would put it before messages that are still recoded
+        boolean doSend = VideoRecoder.prepareVideo(context, chatId, msg, false);
+        addBytesProcessed(bytes);
+        return doSend;
+      });
+    } else {
+      FutureTask<Boolean> nothingToDo = new FutureTask<>(() -> true);
+      nothingToDo.run();
+      return nothingToDo;
+    }
+  }
+
+  private synchronized void addBytesProcessed(long bytes) {
+    bytesProcessed += bytes;
+  }
+
+  private static synchronized ExecutorService getImageExecutor(Context context) {
+    if (imageExecutor == null) {
+      // recoding is cpu-bound; in addition, every parallel recode needs some MB for the bitmaps,
+      // which is accounted by BitmapUtil, but there is no use in having more threads waiting for memory.
+      ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+      int byCores  = Runtime.getRuntime().availableProcessors();
+      int byMemory = activityManager.getMemoryClass() / 48;
+      int threads  = Math.max(1, Math.min(byCores, byMemory));
+      Log.i(TAG, "recoding images with " + threads + " threads");
+      imageExecutor = Executors.newFixedThreadPool(threads);
+    }
+    return imageExecutor;
+  }
+
+  public int getTotal() {
+    return total;
+  }
+
+  public int getCompleted() {
+    return completed;
+  }
+
+  public float getImagesPerSecond() {
+    return imagesRecoded.get() / getElapsedSeconds();
+  }
+
+  public float getMegabytesPerSecond() {
+    return bytesProcessed / (1024f * 1024f) / getElapsedSeconds();
+  }
+
+  private float getElapsedSeconds() {
+    return Math.max(0.001f, (System.currentTimeMillis() - startTime) / 1000f);
+  }
+}
@@ -20,24 +20,26 @@ import android.content.Context;
 import android.net.Uri;
 import androidx.annotation.DrawableRes;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.b44t.messenger.DcMsg;
 
 import org.thoughtcrime.securesms.attachments.Attachment;
 import org.thoughtcrime.securesms.attachments.DcAttachment;
-import org.thoughtcrime.securesms.connect.DcHelper;
 import org.thoughtcrime.securesms.util.MediaUtil;
-
-import java.io.File;
+import org.thoughtcrime.securesms.video.VideoThumbnailCache;
 
 public class VideoSlide extends Slide {
 
+  private Uri thumbnailUri;
+
   private static Attachment constructVideoAttachment(Context context, Uri uri, long dataSize)
   {
-    Uri thumbnailUri = Uri.fromFile(new File(DcHelper.getContext(context).getBlobdirFile("temp-preview.jpg")));
+    // the thumbnail itself is created by the ThumbnailView in the background
+    VideoThumbnailCache thumbnailCache = VideoThumbnailCache.getInstance(context);
     MediaUtil.ThumbnailSize retWh = new MediaUtil.ThumbnailSize(0, 0);
-    MediaUtil.createVideoThumbnailIfNeeded(context, uri, thumbnailUri, retWh);
-    return constructAttachmentFromUri(context, uri, MediaUtil.VIDEO_UNSPECIFIED, dataSize, retWh.width, retWh.height, thumbnailUri, null, false);
+    thumbnailCache.readVideoSize(context, uri, retWh);
+    return constructAttachmentFromUri(context, uri, MediaUtil.VIDEO_UNSPECIFIED, dataSize, retWh.width, retWh.height, thumbnailCache.getThumbnailUri(uri), null, false);
   }
 
   public VideoSlide(Context context, Uri uri, long dataSize) {
@@ -53,6 +55,14 @@ public class VideoSlide extends Slide {
     super(context, attachment);
   }
 
+  @Override
+  public @Nullable Uri getThumbnailUri() {
+    if (thumbnailUri == null && getUri() != null) {
+      thumbnailUri = VideoThumbnailCache.getInstance(context).getThumbnailUri(getUri());
+    }
+    return thumbnailUri;
+  }
+
   @Override
   public boolean hasPlayOverlay() {
     return true;
@@ -2,6 +2,8 @@ package org.thoughtcrime.securesms.notifications;
 
 import android.os.AsyncTask;
 
+import com.b44t.messenger.DcMsg;
+
 import org.thoughtcrime.securesms.connect.ApplicationDcContext;
 
 /**
@@ -30,8 +32,11 @@ public  class MarkAsNoticedAsyncTask extends AsyncTask<Void, Void, Void> {
     for (int id : ids) {
       if (isChat)
         dcContext.marknoticedChat(id);
-      else
-        dcContext.marknoticedChat(dcContext.getMsg(id).getChatId());
+      else {
+        try (DcMsg msg = dcContext.getMsg(id)) {
+          dcContext.marknoticedChat(msg.getChatId());
+        }
+      }
     }
 
     return null;
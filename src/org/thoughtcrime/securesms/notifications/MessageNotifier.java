@@ -7,11 +7,14 @@ import android.media.Ringtone;
 import android.media.RingtoneManager;
 import android.media.SoundPool;
 import android.net.Uri;
+import android.os.SystemClock;
 import android.os.Vibrator;
 import androidx.annotation.NonNull;
 import androidx.core.app.NotificationManagerCompat;
 import android.text.TextUtils;
 import android.util.Log;
+import android.util.SparseArray;
+import android.util.SparseBooleanArray;
 
 import com.b44t.messenger.DcMsg;
 
@@ -23,11 +26,17 @@ import org.thoughtcrime.securesms.recipients.Recipient;
 import org.thoughtcrime.securesms.util.Prefs;
 import org.thoughtcrime.securesms.util.ServiceUtil;
 import org.thoughtcrime.securesms.util.SpanUtil;
+import org.thoughtcrime.securesms.util.Util;
+import org.thoughtcrime.securesms.util.collections.IntSet;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.thoughtcrime.securesms.notifications.MessageNotifierCompat.NO_VISIBLE_CHAT_ID;
 import static org.thoughtcrime.securesms.notifications.MessageNotifierCompat.SUMMARY_NOTIFICATION_ID;
@@ -40,6 +49,7 @@ abstract class MessageNotifier {
     private static final long   MIN_AUDIBLE_PERIOD_MILLIS = TimeUnit.SECONDS.toMillis(20);
     private static final long   STARTUP_SILENCE_DELTA     = TimeUnit.MINUTES.toMillis(1);
     private static final long   INITIAL_STARTUP           = System.currentTimeMillis();
+    private static final long   FLUSH_INTERVAL_MILLIS     = TimeUnit.SECONDS.toMillis(1);
 
             static volatile int                visibleChatId                = NO_VISIBLE_CHAT_ID;
             static volatile long               lastAudibleNotification      = -1;
@@ -53,6 +63,18 @@ abstract class MessageNotifier {
     private                 boolean            soundInLoaded;
     private                 boolean            soundOutLoaded;
 
+    // messages waiting for the next flush, guarded by pendingLock
+    private         final   Object               pendingLock     = new Object();
+    private                 List<PendingMessage> pendingMessages = new ArrayList<>();
+    private                 boolean              pendingSignal;
+    private                 boolean              flushScheduled;
+    private                 long                 lastFlushTime;
+
+    private         final   AtomicLong         flushCount       = new AtomicLong();
+    private         final   AtomicLong         queuedCount      = new AtomicLong();
+    private         final   AtomicLong         buildCount       = new AtomicLong();
+    private         final   AtomicLong         buildTimeNanos   = new AtomicLong();
+
     MessageNotifier(Context context) {
         appContext = context.getApplicationContext();
         soundPool = new SoundPool(3, AudioManager.STREAM_SYSTEM, 0);
@@ -99,11 +121,73 @@ abstract class MessageNotifier {
             sendInChatNotification(chatId);
         } else if (visibleChatId != NO_VISIBLE_CHAT_ID) {
             //different chat is on top
-            sendNotifications(chatId, messageId, false);
+            queueNotification(chatId, messageId, false);
         } else {
             //app is in background or different Activity is on top
-            sendNotifications(chatId, messageId, true);
+            queueNotification(chatId, messageId, true);
+        }
+    }
+
+    /**
+     * Messages arriving in a burst, eg. after being offline, are collected
+     * and the notifications are rebuilt at most once per FLUSH_INTERVAL_MILLIS.
+     * The first message after a quiet period is flushed at once.
+     */
+    private void queueNotification(int chatId, int messageId, boolean signal) {
+        long delay;
+        synchronized (pendingLock) {
+            pendingMessages.add(new PendingMessage(chatId, messageId));
+            pendingSignal |= signal;
+            queuedCount.incrementAndGet();
+            if (flushScheduled) {
+                return;
+            }
+            flushScheduled = true;
+            delay = Math.max(0, lastFlushTime + FLUSH_INTERVAL_MILLIS - SystemClock.elapsedRealtime());
+        }
+        Util.runOnBackgroundDelayed(this::flushNotifications, delay);
+    }
+
+    private void flushNotifications() {
+        List<PendingMessage> messages;
+        boolean              signal;
+        synchronized (pendingLock) {
+            messages        = pendingMessages;
+            signal          = pendingSignal;
+            pendingMessages = new ArrayList<>();
+            pendingSignal   = false;
+            flushScheduled  = false;
+            lastFlushTime   = SystemClock.elapsedRealtime();
         }
+
+        if (!messages.isEmpty()) {
+            flushCount.incrementAndGet();
+            sendNotifications(messages, signal);
+        }
+    }
+
+    /**
+     * Called when the notifications of a chat are removed,
+     * queued messages of the chat must not bring them back.
+     */
+    void dropPendingNotifications(int chatId) {
+        synchronized (pendingLock) {
+            for (Iterator<PendingMessage> it = pendingMessages.iterator(); it.hasNext(); ) {
+                if (it.next().chatId == chatId) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return counters about the notifications built, for the log.
+     */
+    public String getStatistics() {
+        return "queued=" + queuedCount.get()
+            + ", flushes=" + flushCount.get()
+            + ", builds=" + buildCount.get()
+            + ", buildTime=" + TimeUnit.NANOSECONDS.toMillis(buildTimeNanos.get()) + "ms";
     }
 
     /**
@@ -115,19 +199,63 @@ abstract class MessageNotifier {
             return;
         }
 
-        clearNotifications();
+        restoreNotifications();
+    }
+
+    /**
+     * Rebuilds all notifications from the fresh messages, without any sound.
+     * Used on startup and whenever the notifications need to be recreated from scratch.
+     * <p>
+     * All messages are loaded by a single call, recipients are created once per chat or contact
+     * and every notification is built once, however many messages are fresh.
+     */
+    public void restoreNotifications() {
+        if (!Prefs.isNotificationsEnabled(appContext)) {
+            return;
+        }
+
+        long startTime = SystemClock.elapsedRealtime();
         ApplicationDcContext dcContext = DcHelper.getContext(appContext);
-        int[] freshMessages = dcContext.getFreshMsgs();
-        for (int message : freshMessages) {
-            DcMsg record = dcContext.getMsg(message);
-            updateNotification(record.getChatId(), record.getId());
+
+        synchronized (pendingLock) {
+            // all of them are fresh messages that are restored below. cleared before reading them,
+            // so a message queued meanwhile is not lost; if it is restored and flushed, it is skipped once notified
+            pendingMessages.clear();
         }
+
+        DcMsg[] freshMsgs = dcContext.getMsgs(dcContext.getFreshMsgs());
+
+        synchronized (lock) {
+            notificationState.reset();
+            cancelActiveNotifications();
+
+            RecipientCache      recipients = new RecipientCache(dcContext);
+            SparseBooleanArray  mutedChats = new SparseBooleanArray();
+            for (DcMsg record : freshMsgs) {
+                int chatId = record.getChatId();
+                if (chatId == visibleChatId) {
+                    continue;
+                }
+                if (mutedChats.indexOfKey(chatId) < 0) {
+                    mutedChats.put(chatId, Prefs.isChatMuted(appContext, chatId));
+                }
+                if (!mutedChats.get(chatId)) {
+                    addMessageToNotificationState(dcContext, record, recipients);
+                }
+            }
+
+            recreateSummaryNotification();
+        }
+
+        Log.i(TAG, "restored notifications for " + freshMsgs.length + " fresh messages in "
+            + (SystemClock.elapsedRealtime() - startTime) + " ms");
     }
 
     public void removeNotifications(int[] chatIds) {
         List<NotificationItem> removedItems = new LinkedList<>();
         synchronized (lock) {
             for (int id : chatIds) {
+                dropPendingNotifications(id);
                 removedItems.addAll(notificationState.removeNotificationsForChat(id));
             }
         }
@@ -137,6 +265,7 @@ abstract class MessageNotifier {
 
     public void removeNotifications(int chatId) {
         List<NotificationItem> removedItems;
+        dropPendingNotifications(chatId);
         synchronized (lock) {
             removedItems = notificationState.removeNotificationsForChat(chatId);
         }
@@ -151,13 +280,13 @@ abstract class MessageNotifier {
         }
     }
 
-    private void recreateSummaryNotification() {
+    void recreateSummaryNotification() {
         NotificationManager notifications = ServiceUtil.getNotificationManager(appContext);
         notifications.cancel(SUMMARY_NOTIFICATION_ID);
 
         synchronized (lock) {
             if (notificationState.hasMultipleChats()) {
-                for (Integer id : notificationState.getChats()) {
+                for (int id : notificationState.getChats()) {
                     sendSingleChatNotification(appContext, new NotificationState(notificationState.getNotificationsForChat(id)), false, true);
                 }
                 sendMultipleChatNotification(appContext, notificationState, false);
@@ -172,17 +301,29 @@ abstract class MessageNotifier {
         notifications.cancel(SUMMARY_NOTIFICATION_ID);
     }
 
-    void sendNotifications(int chatId, int messageId, boolean signal) {
+    /**
+     * Adds the messages to the notification state and rebuilds the notifications of the changed chats
+     * and the summary.
+     */
+    void sendNotifications(@NonNull List<PendingMessage> messages, boolean signal) {
         ApplicationDcContext dcContext = DcHelper.getContext(appContext);
         if (signal = isSignalAllowed(signal)) {
             lastAudibleNotification = System.currentTimeMillis();
         }
 
         synchronized (lock) {
-            addMessageToNotificationState(dcContext, chatId, messageId);
+            boolean      hadMultipleChats = notificationState.hasMultipleChats();
+            IntSet       changedChats     = addMessagesToNotificationState(dcContext, messages);
+            if (changedChats.isEmpty()) {
+                return;
+            }
+
             if (notificationState.hasMultipleChats()) {
                 for (int id : notificationState.getChats()) {
-                    sendSingleChatNotification(appContext, new NotificationState(notificationState.getNotificationsForChat(id)), false, true);
+                    // a chat that was shown alone so far has no bundled notification yet
+                    if (!hadMultipleChats || changedChats.contains(id)) {
+                        sendSingleChatNotification(appContext, new NotificationState(notificationState.getNotificationsForChat(id)), false, true);
+                    }
                 }
                 sendMultipleChatNotification(appContext, notificationState, signal);
             } else {
@@ -191,6 +332,29 @@ abstract class MessageNotifier {
         }
     }
 
+    /**
+     * @return the ids of the chats that got new notification items.
+     */
+    IntSet addMessagesToNotificationState(ApplicationDcContext dcContext, @NonNull List<PendingMessage> messages) {
+        IntSet       changedChats = new IntSet();
+        int[]        msgIds       = new int[messages.size()];
+        int          count        = 0;
+        for (PendingMessage message : messages) {
+            // the chat may have been opened since the message was queued
+            if (message.chatId != visibleChatId && !Prefs.isChatMuted(appContext, message.chatId)) {
+                msgIds[count++] = message.msgId;
+            }
+        }
+
+        RecipientCache recipients = new RecipientCache(dcContext);
+        for (DcMsg record : dcContext.getMsgs(Arrays.copyOf(msgIds, count))) {
+            if (addMessageToNotificationState(dcContext, record, recipients)) {
+                changedChats.add(record.getChatId());
+            }
+        }
+        return changedChats;
+    }
+
     boolean isSignalAllowed(boolean signalRequested) {
         long now = System.currentTimeMillis();
         return signalRequested &&
@@ -198,30 +362,32 @@ abstract class MessageNotifier {
                 (now - lastAudibleNotification) > MIN_AUDIBLE_PERIOD_MILLIS;
     }
 
-    private void clearNotifications() {
-        synchronized (lock) {
-            notificationState.reset();
-        }
-        cancelActiveNotifications();
-    }
-
     void sendSingleChatNotification(@NonNull Context context,
                                     @NonNull  NotificationState notificationState,
                                     boolean signal,
                                     boolean bundled)
     {
+        long startNanos = System.nanoTime();
         AbstractNotificationBuilder notificationBuilder = createSingleChatNotification(context, notificationState, signal, bundled);
         if (notificationBuilder != null)
             notify(context, notificationBuilder.getNotificationId(), notificationBuilder, signal);
+        recordBuild(startNanos);
     }
 
     void sendMultipleChatNotification(@NonNull  Context context,
                                       @NonNull  NotificationState notificationState,
                                       boolean signal)
     {
+        long startNanos = System.nanoTime();
         AbstractNotificationBuilder notificationBuilder = createMultipleChatNotification(context, notificationState, signal);
         if (notificationBuilder != null)
             notify(context, SUMMARY_NOTIFICATION_ID, notificationBuilder, signal);
+        recordBuild(startNanos);
+    }
+
+    private void recordBuild(long startNanos) {
+        buildCount.incrementAndGet();
+        buildTimeNanos.addAndGet(System.nanoTime() - startNanos);
     }
 
     protected AbstractNotificationBuilder createSingleChatNotification(@NonNull  Context context,
@@ -353,22 +519,27 @@ abstract class MessageNotifier {
         }
     }
 
-    void addMessageToNotificationState(ApplicationDcContext dcContext, int chatId, int msgId) {
-        if (Prefs.isChatMuted(appContext, chatId)) {
-            return;
-        }
-
-        DcMsg record = dcContext.getMsg(msgId);
+    /**
+     * @return true if a notification item was added.
+     */
+    private boolean addMessageToNotificationState(ApplicationDcContext dcContext, DcMsg record, RecipientCache recipients) {
         if (record.isInfo()) {
-            return;
+            return false;
         }
 
         int          id                    = record.getId();
+        int          chatId                = record.getChatId();
+        synchronized (lock) {
+            // a message may be queued while all notifications are restored
+            if (notificationState.hasNotification(id)) {
+                return false;
+            }
+        }
+
         CharSequence body                  = record.getDisplayBody();
-        DcMsg        dcMsg                 = dcContext.getMsg(msgId);
-        Recipient    chatRecipient         = new Recipient(appContext, dcContext.getChat(dcMsg.getChatId()), null);
-        Recipient    individualRecipient   = new Recipient(appContext, null, dcContext.getContact(dcMsg.getFromId()));
-        SlideDeck slideDeck             = new SlideDeck(dcContext.context, record);
+        Recipient    chatRecipient         = recipients.getChatRecipient(chatId);
+        Recipient    individualRecipient   = recipients.getContactRecipient(record.getFromId());
+        SlideDeck    slideDeck             = new SlideDeck(dcContext.context, record);
         long         timestamp             = record.getTimestamp();
 
 
@@ -392,6 +563,48 @@ abstract class MessageNotifier {
         synchronized (lock) {
             notificationState.addNotification(new NotificationItem(id, chatRecipient, individualRecipient, chatId, body, timestamp, slideDeck));
         }
+        return true;
+    }
+
+    /**
+     * Creates the recipients for a batch of messages, as most messages are from a few chats and contacts.
+     */
+    private class RecipientCache {
+        private final ApplicationDcContext   dcContext;
+        private final SparseArray<Recipient> chatRecipients    = new SparseArray<>();
+        private final SparseArray<Recipient> contactRecipients = new SparseArray<>();
+
+        RecipientCache(ApplicationDcContext dcContext) {
+            this.dcContext = dcContext;
+        }
+
+        Recipient getChatRecipient(int chatId) {
+            Recipient recipient = chatRecipients.get(chatId);
+            if (recipient == null) {
+                recipient = new Recipient(appContext, dcContext.getChat(chatId), null);
+                chatRecipients.put(chatId, recipient);
+            }
+            return recipient;
+        }
+
+        Recipient getContactRecipient(int contactId) {
+            Recipient recipient = contactRecipients.get(contactId);
+            if (recipient == null) {
+                recipient = new Recipient(appContext, null, dcContext.getContact(contactId));
+                contactRecipients.put(contactId, recipient);
+            }
+            return recipient;
+        }
+    }
+
+    static class PendingMessage {
+        final int chatId;
+        final int msgId;
+
+        PendingMessage(int chatId, int msgId) {
+            this.chatId = chatId;
+            this.msgId  = msgId;
+        }
     }
 }
 
@@ -38,10 +38,21 @@ public class MessageNotifierCompat {
         Util.runOnAnyBackgroundThread(() -> instance.updateVisibleChat(chatId));
     }
 
+    /**
+     * Shows the notifications for the fresh messages, eg. after the app was restarted.
+     */
+    public static void restoreNotifications() {
+        Util.runOnAnyBackgroundThread(() -> instance.restoreNotifications());
+    }
+
     public static void onNotificationPrivacyChanged() {
         Util.runOnAnyBackgroundThread(() -> instance.onNotificationPrivacyChanged());
     }
 
+    public static String getStatistics() {
+        return instance != null ? instance.getStatistics() : "";
+    }
+
     static void removeNotifications(int[] chatIds) {
         Util.runOnAnyBackgroundThread(() -> instance.removeNotifications(chatIds));
     }
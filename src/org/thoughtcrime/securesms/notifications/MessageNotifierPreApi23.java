@@ -1,6 +1,7 @@
 package org.thoughtcrime.securesms.notifications;
 
 import android.content.Context;
+import androidx.annotation.NonNull;
 import androidx.core.app.NotificationManagerCompat;
 
 import org.thoughtcrime.securesms.connect.ApplicationDcContext;
@@ -18,6 +19,7 @@ class MessageNotifierPreApi23 extends MessageNotifier {
 
     @Override
     public void removeNotifications(int chatId) {
+        dropPendingNotifications(chatId);
         synchronized (lock) {
             notificationState.removeNotificationsForChat(chatId);
         }
@@ -28,6 +30,7 @@ class MessageNotifierPreApi23 extends MessageNotifier {
     public void removeNotifications(int[] chatIds) {
         synchronized (lock) {
             for (int id : chatIds) {
+                dropPendingNotifications(id);
                 notificationState.removeNotificationsForChat(id);
             }
         }
@@ -40,13 +43,16 @@ class MessageNotifierPreApi23 extends MessageNotifier {
     }
 
     @Override
-    void sendNotifications(int chatId, int messageId, boolean signal) {
+    void sendNotifications(@NonNull List<PendingMessage> messages, boolean signal) {
         ApplicationDcContext dcContext = DcHelper.getContext(appContext);
         if (signal = isSignalAllowed(signal)) {
             lastAudibleNotification = System.currentTimeMillis();
         }
 
-        addMessageToNotificationState(dcContext, chatId, messageId);
+        // there is only a single notification for all chats, so it is built once per batch
+        if (addMessagesToNotificationState(dcContext, messages).isEmpty()) {
+            return;
+        }
         synchronized (lock) {
             if (notificationState.hasMultipleChats()) {
                 sendMultipleChatNotification(appContext, notificationState, signal);
@@ -61,7 +67,8 @@ class MessageNotifierPreApi23 extends MessageNotifier {
         notificationManagerCompat.cancel(SUMMARY_NOTIFICATION_ID);
     }
 
-    private void recreateSummaryNotification() {
+    @Override
+    void recreateSummaryNotification() {
         cancelNotifications();
         synchronized (lock) {
             if (notificationState.hasMultipleChats()) {
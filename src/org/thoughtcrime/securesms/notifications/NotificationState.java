@@ -11,9 +11,10 @@ import android.util.Log;
 import org.thoughtcrime.securesms.recipients.Recipient;
 import org.thoughtcrime.securesms.util.Prefs;
 import org.thoughtcrime.securesms.util.Prefs.VibrateState;
+import org.thoughtcrime.securesms.util.collections.IntSet;
 
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -22,7 +23,8 @@ import static org.thoughtcrime.securesms.notifications.MessageNotifierCompat.SUM
 public class NotificationState {
 
   private final LinkedList<NotificationItem> notifications = new LinkedList<>();
-  private final LinkedHashSet<Integer>       chats         = new LinkedHashSet<>();
+  private final IntSet                       chats         = new IntSet();
+  private final IntSet                       msgIds        = new IntSet();
 
   private int notificationCount = 0;
 
@@ -38,15 +40,12 @@ public class NotificationState {
     notificationCount = 0;
     notifications.clear();
     chats.clear();
+    msgIds.clear();
   }
 
   void addNotification(NotificationItem item) {
     notifications.addFirst(item);
-
-    if (chats.contains(item.getChatId())) {
-      chats.remove(item.getChatId());
-    }
-
+    msgIds.add(item.getId());
     chats.add(item.getChatId());
     notificationCount++;
   }
@@ -74,12 +73,16 @@ public class NotificationState {
     return VibrateState.DEFAULT;
   }
 
+  boolean hasNotification(int msgId) {
+    return msgIds.contains(msgId);
+  }
+
   boolean hasMultipleChats() {
     return chats.size() > 1;
   }
 
-  public LinkedHashSet<Integer> getChats() {
-    return chats;
+  public int[] getChats() {
+    return chats.toArray();
   }
 
   int getChatCount() {
@@ -111,6 +114,7 @@ public class NotificationState {
       NotificationItem item = it.next();
       if (item.getChatId() == chatId) {
         removedItems.add(item);
+        msgIds.remove(item.getId());
         it.remove();
       }
     }
@@ -119,14 +123,10 @@ public class NotificationState {
   }
 
   PendingIntent getMarkAsReadIntent(Context context, int chatId,  int notificationId) {
-    int    index       = 0;
     int[] chatArray;
     if (notificationId == SUMMARY_NOTIFICATION_ID) {
-      chatArray = new int[chats.size()];
-      for (int chat : chats) {
-        Log.w("NotificationState", "Added chat: " + chat);
-        chatArray[index++] = chat;
-      }
+      chatArray = chats.toArray();
+      Log.w("NotificationState", "Added chats: " + Arrays.toString(chatArray));
     } else {
       chatArray = new int[]{chatId};
     }
@@ -31,6 +31,7 @@ import com.b44t.messenger.DcContext;
 
 import org.thoughtcrime.securesms.connect.ApplicationDcContext;
 import org.thoughtcrime.securesms.connect.DcHelper;
+import org.thoughtcrime.securesms.contacts.SystemContactPhotoIndex;
 import org.thoughtcrime.securesms.contacts.avatars.ContactPhoto;
 import org.thoughtcrime.securesms.contacts.avatars.FallbackContactPhoto;
 import org.thoughtcrime.securesms.contacts.avatars.GeneratedContactPhoto;
@@ -39,8 +40,6 @@ import org.thoughtcrime.securesms.contacts.avatars.LocalFileContactPhoto;
 import org.thoughtcrime.securesms.contacts.avatars.ProfileContactPhoto;
 import org.thoughtcrime.securesms.contacts.avatars.SystemContactPhoto;
 import org.thoughtcrime.securesms.database.Address;
-import org.thoughtcrime.securesms.util.Hash;
-import org.thoughtcrime.securesms.util.Prefs;
 import org.thoughtcrime.securesms.util.Util;
 
 import java.util.ArrayList;
@@ -232,8 +231,7 @@ public class Recipient {
   }
 
   private void maybeSetSystemContactPhoto(@NonNull Context context, DcContact contact) {
-    String identifier = Hash.sha256(contact.getDisplayName() + contact.getAddr());
-    Uri systemContactPhoto = Prefs.getSystemContactPhoto(context, identifier);
+    Uri systemContactPhoto = SystemContactPhotoIndex.getInstance(context).getSystemContactPhoto(context, contact);
     if (systemContactPhoto != null) {
       setSystemContactPhoto(systemContactPhoto);
     }
@@ -0,0 +1,53 @@
+package org.thoughtcrime.securesms.search;
+
+import androidx.annotation.NonNull;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Removes the punctuation from search queries, apostrophes are replaced by spaces.
+ */
+final class QuerySanitizer {
+
+  private static final Set<Character> BANNED_CHARACTERS = new HashSet<>();
+  static {
+    // Several ranges of invalid ASCII characters
+    for (int i = 33; i <= 47; i++) {
+      BANNED_CHARACTERS.add((char) i);
+    }
+    for (int i = 58; i <= 64; i++) {
+      BANNED_CHARACTERS.add((char) i);
+    }
+    for (int i = 91; i <= 96; i++) {
+      BANNED_CHARACTERS.add((char) i);
+    }
+    for (int i = 123; i <= 126; i++) {
+      BANNED_CHARACTERS.add((char) i);
+    }
+  }
+
+  private QuerySanitizer() {}
+
+  /**
+   * Unfortunately {@link android.database.DatabaseUtils#sqlEscapeString(String)} is not sufficient for our purposes.
+   * MATCH queries have a separate format of their own that disallow most "special" characters.
+   *
+   * Also, SQLite can't search for apostrophes, meaning we can't normally find words like "I'm".
+   * However, if we replace the apostrophe with a space, then the query will find the match.
+   */
+  static @NonNull String sanitize(@NonNull String query) {
+    StringBuilder out = new StringBuilder();
+
+    for (int i = 0; i < query.length(); i++) {
+      char c = query.charAt(i);
+      if (!BANNED_CHARACTERS.contains(c)) {
+        out.append(c);
+      } else if (c == '\'') {
+        out.append(' ');
+      }
+    }
+
+    return out.toString();
+  }
+}
@@ -66,8 +66,9 @@ public class SearchFragment extends Fragment implements SearchListAdapter.EventL
 
     this.locale = (Locale) getArguments().getSerializable(EXTRA_LOCALE);
 
+    // one thread per section, so that contacts, chats and messages are searched in parallel
     SearchRepository searchRepository = new SearchRepository(getContext(),
-                                                             Executors.newSingleThreadExecutor());
+                                                             Executors.newFixedThreadPool(SearchRepository.SECTION_COUNT));
     viewModel = ViewModelProviders.of(this, new SearchViewModel.Factory(searchRepository)).get(SearchViewModel.class);
 
     if (pendingQuery != null) {
@@ -106,7 +107,7 @@ public class SearchFragment extends Fragment implements SearchListAdapter.EventL
       listDecoration.invalidateLayouts();
 
       if (result.isEmpty()) {
-        if (TextUtils.isEmpty(viewModel.getLastQuery().trim())) {
+        if (TextUtils.isEmpty(viewModel.getLastQuery().trim()) || !result.isComplete()) {
           noResultsView.setVisibility(View.GONE);
         } else {
           noResultsView.setVisibility(View.VISIBLE);
@@ -22,7 +22,6 @@ import org.thoughtcrime.securesms.mms.GlideRequests;
 import org.thoughtcrime.securesms.search.model.SearchResult;
 import org.thoughtcrime.securesms.util.StickyHeaderDecoration;
 
-import java.util.Collections;
 import java.util.Locale;
 
 class SearchListAdapter extends    RecyclerView.Adapter<SearchListAdapter.SearchResultViewHolder>
@@ -194,7 +193,7 @@ class SearchListAdapter extends    RecyclerView.Adapter<SearchListAdapter.Search
     {
       ApplicationDcContext dcContext = DcHelper.getContext(context);
       ThreadRecord threadRecord = dcContext.getThreadRecord(chatlistItem.summary, dcContext.getChat(chatlistItem.chatId));
-      root.bind(threadRecord, chatlistItem.msgId, chatlistItem.summary, glideRequests, locale, Collections.emptySet(), false, query);
+      root.bind(threadRecord, chatlistItem.msgId, chatlistItem.summary, glideRequests, locale, ConversationListItem.NO_SELECTION, false, query);
       root.setOnClickListener(view -> eventListener.onConversationClicked(chatlistItem));
     }
 
@@ -1,49 +1,50 @@
 package org.thoughtcrime.securesms.search;
 
 import android.content.Context;
-import android.database.DatabaseUtils;
+import android.os.SystemClock;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import android.text.TextUtils;
 
 import com.b44t.messenger.DcChatlist;
+import com.b44t.messenger.DcContact;
 import com.b44t.messenger.DcContext;
+import com.b44t.messenger.DcMsg;
 
 
 import org.thoughtcrime.securesms.connect.ApplicationDcContext;
 import org.thoughtcrime.securesms.connect.DcHelper;
 import org.thoughtcrime.securesms.search.model.SearchResult;
+import org.thoughtcrime.securesms.util.LRUCache;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Manages data retrieval for search.
  */
 class SearchRepository {
 
-  private static final Set<Character> BANNED_CHARACTERS = new HashSet<>();
-  static {
-    // Several ranges of invalid ASCII characters
-    for (int i = 33; i <= 47; i++) {
-      BANNED_CHARACTERS.add((char) i);
-    }
-    for (int i = 58; i <= 64; i++) {
-      BANNED_CHARACTERS.add((char) i);
-    }
-    for (int i = 91; i <= 96; i++) {
-      BANNED_CHARACTERS.add((char) i);
-    }
-    for (int i = 123; i <= 126; i++) {
-      BANNED_CHARACTERS.add((char) i);
-    }
-  }
+  static final int SECTION_COUNT = 3; // contacts, chats, messages
+
+  // the messages found for a query are filtered for a longer query starting with it
+  // instead of searching all messages again - as long as there are not too many to load.
+  private static final int  MAX_MSGS_TO_FILTER = 500;
+  private static final int  CACHE_SIZE         = 16;
+  private static final long CACHE_MAX_AGE_MS   = 30 * 1000;
 
   private final Context              context;
   private final ApplicationDcContext dcContext;
   private final Executor             executor;
   private boolean                    queryMessages = true;
 
+  private final AtomicInteger                  latestQueryId = new AtomicInteger();
+  private final LRUCache<String, CachedResult> cache         = new LRUCache<>(CACHE_SIZE);
+
   SearchRepository(@NonNull Context          context,
                    @NonNull Executor         executor)
   {
@@ -52,53 +53,221 @@ class SearchRepository {
     this.executor         = executor;
   }
 
+  /**
+   * Searches contacts, chats and messages in parallel.
+   * The callback is called for every section that is ready, contacts and chats are always delivered before messages.
+   * A call cancels all sections of previous queries that are not started yet
+   * and results of previous queries are not delivered anymore.
+   */
   void query(@NonNull String query, @NonNull Callback callback) {
+    int queryId = latestQueryId.incrementAndGet();
+
     if (TextUtils.isEmpty(query)) {
+      clearCache();
       callback.onResult(SearchResult.EMPTY);
       return;
     }
 
-    executor.execute(() -> {
-      String cleanQuery = sanitizeQuery(query);
+    String cleanQuery = QuerySanitizer.sanitize(query);
+    SearchResult cached = getCached(cleanQuery);
+    if (cached != null) {
+      callback.onResult(cached);
+      return;
+    }
+
+    PendingSearch search = new PendingSearch(queryId, cleanQuery, callback);
 
-      int[]      contacts      = dcContext.getContacts(DcContext.DC_GCL_ADD_SELF, cleanQuery);
-      DcChatlist conversations = dcContext.getChatlist(DcContext.DC_GCL_NO_SPECIALS, cleanQuery, 0);
-      int[]      messages      = new int[0];
-      if (queryMessages) {
-        messages = dcContext.searchMsgs(0, cleanQuery);
+    executor.execute(() -> {
+      if (!search.isSuperseded()) {
+        search.setContacts(dcContext.getContacts(DcContext.DC_GCL_ADD_SELF, cleanQuery));
       }
+    });
 
-      callback.onResult(new SearchResult(cleanQuery, contacts, conversations, messages));
+    executor.execute(() -> {
+      if (!search.isSuperseded()) {
+        search.setChats(dcContext.getChatlist(DcContext.DC_GCL_NO_SPECIALS, cleanQuery, 0));
+      }
     });
+
+    if (queryMessages) {
+      executor.execute(() -> {
+        if (!search.isSuperseded()) {
+          search.setMessages(searchMessages(cleanQuery));
+        }
+      });
+    } else {
+      search.setMessages(new int[0]);
+    }
+  }
+
+  /**
+   * Drops all queries that are not delivered yet.
+   */
+  void cancel() {
+    latestQueryId.incrementAndGet();
   }
 
   public void setQueryMessages(boolean includeMessageQueries) {
+    if (this.queryMessages != includeMessageQueries) {
+      clearCache();
+    }
     this.queryMessages = includeMessageQueries;
   }
 
+  private @NonNull int[] searchMessages(@NonNull String cleanQuery) {
+    int[] candidates = getCachedMessagesForPrefix(cleanQuery);
+    if (candidates != null) {
+      return filterMessages(candidates, cleanQuery);
+    }
+    return dcContext.searchMsgs(0, cleanQuery);
+  }
+
+  /**
+   * Keeps the messages whose text or sender name contains the query,
+   * which is what the core matches in a message search.
+   */
+  private @NonNull int[] filterMessages(@NonNull int[] msgIds, @NonNull String cleanQuery) {
+    String needle = cleanQuery.trim().toLowerCase(Locale.getDefault());
+    DcMsg[] msgs = dcContext.getMsgs(msgIds);
+    HashMap<Integer, Boolean> senderMatches = new HashMap<>();
+
+    int[] result = new int[msgIds.length];
+    int cnt = 0;
+    for (DcMsg msg : msgs) {
+      try (DcMsg m = msg) {
+        boolean matches = m.getText().toLowerCase(Locale.getDefault()).contains(needle);
+        if (!matches) {
+          int fromId = m.getFromId();
+          Boolean senderMatch = senderMatches.get(fromId);
+          if (senderMatch == null) {
+            try (DcContact contact = dcContext.getContact(fromId)) {
+              senderMatch = contact.getName().toLowerCase(Locale.getDefault()).contains(needle);
+            }
+            senderMatches.put(fromId, senderMatch);
+          }
+          matches = senderMatch;
+        }
+        if (matches) {
+          result[cnt++] = m.getId();
+        }
+      }
+    }
+    return Arrays.copyOf(result, cnt);
+  }
+
+  private @Nullable SearchResult getCached(@NonNull String cleanQuery) {
+    synchronized (cache) {
+      CachedResult cached = cache.get(cleanQuery);
+      return cached != null && !cached.isExpired()? cached.result : null;
+    }
+  }
+
   /**
-   * Unfortunately {@link DatabaseUtils#sqlEscapeString(String)} is not sufficient for our purposes.
-   * MATCH queries have a separate format of their own that disallow most "special" characters.
-   *
-   * Also, SQLite can't search for apostrophes, meaning we can't normally find words like "I'm".
-   * However, if we replace the apostrophe with a space, then the query will find the match.
+   * @return the messages found for the longest cached query the given query starts with,
+   * null if there is no such query or if it found too many messages.
    */
-  private String sanitizeQuery(@NonNull String query) {
-    StringBuilder out = new StringBuilder();
-
-    for (int i = 0; i < query.length(); i++) {
-      char c = query.charAt(i);
-      if (!BANNED_CHARACTERS.contains(c)) {
-        out.append(c);
-      } else if (c == '\'') {
-        out.append(' ');
+  private @Nullable int[] getCachedMessagesForPrefix(@NonNull String cleanQuery) {
+    synchronized (cache) {
+      String bestPrefix = null;
+      for (Map.Entry<String, CachedResult> entry : cache.entrySet()) {
+        String prefix = entry.getKey();
+        if (!prefix.trim().isEmpty() && cleanQuery.startsWith(prefix) && !entry.getValue().isExpired()
+         && (bestPrefix == null || prefix.length() > bestPrefix.length())) {
+          bestPrefix = prefix;
+        }
       }
+      if (bestPrefix == null) {
+        return null;
+      }
+      int[] messages = cache.get(bestPrefix).result.getMessages();
+      return messages.length <= MAX_MSGS_TO_FILTER? messages : null;
     }
+  }
 
-    return out.toString();
+  private void putCached(@NonNull SearchResult result) {
+    synchronized (cache) {
+      cache.put(result.getQuery(), new CachedResult(result));
+    }
+  }
+
+  private void clearCache() {
+    synchronized (cache) {
+      cache.clear();
+    }
   }
 
   public interface Callback {
     void onResult(@NonNull SearchResult result);
   }
+
+  private static class CachedResult {
+    // results are not updated on incoming messages, so they are only reused for a short time
+    private final SearchResult result;
+    private final long         createdAt = SystemClock.elapsedRealtime();
+
+    CachedResult(@NonNull SearchResult result) {
+      this.result = result;
+    }
+
+    boolean isExpired() {
+      return SystemClock.elapsedRealtime() - createdAt > CACHE_MAX_AGE_MS;
+    }
+  }
+
+  /**
+   * Collects the sections of one query as they come in from the executor.
+   */
+  private class PendingSearch {
+    private final int      queryId;
+    private final String   query;
+    private final Callback callback;
+
+    private int[]      contacts;
+    private DcChatlist chats;
+    private int[]      messages;
+
+    PendingSearch(int queryId, @NonNull String query, @NonNull Callback callback) {
+      this.queryId  = queryId;
+      this.query    = query;
+      this.callback = callback;
+    }
+
+    boolean isSuperseded() {
+      return queryId != latestQueryId.get();
+    }
+
+    synchronized void setContacts(@NonNull int[] contacts) {
+      this.contacts = contacts;
+      publish(false);
+    }
+
+    synchronized void setChats(@NonNull DcChatlist chats) {
+      this.chats = chats;
+      publish(false);
+    }
+
+    synchronized void setMessages(@NonNull int[] messages) {
+      this.messages = messages;
+      publish(true);
+    }
+
+    private void publish(boolean messagesChanged) {
+      boolean contactsAndChatsReady = contacts != null && chats != null;
+      if (isSuperseded() || (messagesChanged && !contactsAndChatsReady)) {
+        // messages found before contacts and chats are delivered together with the last of them
+        return;
+      }
+
+      boolean complete = contactsAndChatsReady && messages != null;
+      SearchResult result = new SearchResult(query,
+                                             contacts != null? contacts : new int[0],
+                                             chats != null? chats : new DcChatlist(0),
+                                             contactsAndChatsReady && messages != null? messages : new int[0],
+                                             complete);
+      if (complete) {
+        putCached(result);
+      }
+      callback.onResult(result);
+    }
+  }
 }
@@ -16,16 +16,30 @@ public class SearchResult {
   private final int[]      contacts;
   private final DcChatlist conversations;
   private final int[]      messages;
+  private final boolean    complete;
 
   public SearchResult(@NonNull String     query,
                       @NonNull int[]      contacts,
                       @NonNull DcChatlist conversations,
                       @NonNull int[]      messages)
+  {
+    this(query, contacts, conversations, messages, true);
+  }
+
+  /**
+   * @param complete false if some sections are still being searched and are empty for now.
+   */
+  public SearchResult(@NonNull String     query,
+                      @NonNull int[]      contacts,
+                      @NonNull DcChatlist conversations,
+                      @NonNull int[]      messages,
+                      boolean             complete)
   {
     this.query         = query;
     this.contacts      = contacts;
     this.conversations = conversations;
     this.messages      = messages;
+    this.complete      = complete;
   }
 
   public int[] getContacts() {
@@ -51,4 +65,8 @@ public class SearchResult {
   public boolean isEmpty() {
     return size() == 0;
   }
+
+  public boolean isComplete() {
+    return complete;
+  }
 }
@@ -1,9 +1,11 @@
 package org.thoughtcrime.securesms.util;
 
+import android.app.ActivityManager;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Bitmap.CompressFormat;
 import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.ColorFilter;
@@ -13,6 +15,7 @@ import android.graphics.Paint;
 import android.graphics.PorterDuff;
 import android.graphics.PorterDuffColorFilter;
 import android.graphics.Rect;
+import android.graphics.RectF;
 import android.graphics.YuvImage;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
@@ -42,7 +45,9 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Locale;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.microedition.khronos.egl.EGL10;
@@ -228,12 +233,8 @@ public class BitmapUtil {
     return bytes;
   }
 
-  /*
-   * NV21 a.k.a. YUV420sp
-   * YUV 4:2:0 planar image, with 8 bit Y samples, followed by interleaved V/U plane with 8bit 2x2
-   * subsampled chroma samples.
-   *
-   * http://www.fourcc.org/yuv.php#NV21
+  /**
+   * @see Nv21Util#rotate(byte[], int, int, int, boolean)
    */
   public static byte[] rotateNV21(@NonNull final byte[] yuv,
                                   final int width,
@@ -242,44 +243,7 @@ public class BitmapUtil {
                                   final boolean flipHorizontal)
       throws IOException
   {
-    if (rotation == 0) return yuv;
-    if (rotation % 90 != 0 || rotation < 0 || rotation > 270) {
-      throw new IllegalArgumentException("0 <= rotation < 360, rotation % 90 == 0");
-    } else if ((width * height * 3) / 2 != yuv.length) {
-      throw new IOException("provided width and height don't jive with the data length (" +
-                            yuv.length + "). Width: " + width + " height: " + height +
-                            " = data length: " + (width * height * 3) / 2);
-    }
-
-    final byte[]  output    = new byte[yuv.length];
-    final int     frameSize = width * height;
-    final boolean swap      = rotation % 180 != 0;
-    final boolean xflip     = flipHorizontal ? rotation % 270 == 0 : rotation % 270 != 0;
-    final boolean yflip     = rotation >= 180;
-
-    for (int j = 0; j < height; j++) {
-      for (int i = 0; i < width; i++) {
-        final int yIn = j * width + i;
-        final int uIn = frameSize + (j >> 1) * width + (i & ~1);
-        final int vIn = uIn       + 1;
-
-        final int wOut     = swap ? height              : width;
-        final int hOut     = swap ? width               : height;
-        final int iSwapped = swap ? j                   : i;
-        final int jSwapped = swap ? i                   : j;
-        final int iOut     = xflip ? wOut - iSwapped - 1 : iSwapped;
-        final int jOut     = yflip ? hOut - jSwapped - 1 : jSwapped;
-
-        final int yOut = jOut * wOut + iOut;
-        final int uOut = frameSize + (jOut >> 1) * wOut + (iOut & ~1);
-        final int vOut = uOut + 1;
-
-        output[yOut] = (byte)(0xff & yuv[yIn]);
-        output[uOut] = (byte)(0xff & yuv[uIn]);
-        output[vOut] = (byte)(0xff & yuv[vIn]);
-      }
-    }
-    return output;
+    return Nv21Util.rotate(yuv, width, height, rotation, flipHorizontal);
   }
 
   public static Bitmap createFromDrawable(final Drawable drawable, final int width, final int height) {
@@ -386,6 +350,14 @@ public class BitmapUtil {
   // recode jpeg
   //////////////////////////////////////////////////////////////////////////////////////////////////
 
+  // images with more pixels are decoded strip by strip using BitmapRegionDecoder
+  private static final long REGION_DECODE_MIN_PIXELS = 64L * 1000 * 1000;
+  private static final int  REGION_STRIP_MAX_BYTES   = 4 * 1024 * 1024;
+
+  // all images recoded at the same time share this budget, see acquireRecodeMemory()
+  private static Semaphore recodeBudget;
+  private static int       recodeBudgetKb;
+
   public static void recodeImageMsg(Context context, DcMsg msg)
   {
     int desiredWH = 1280;
@@ -402,64 +374,188 @@ public class BitmapUtil {
         return;
       }
 
-      Matrix matrix = new Matrix();
+      long startTime = System.currentTimeMillis();
 
       // find out scaling
       BitmapFactory.Options bmOptions = new BitmapFactory.Options();
       bmOptions.inJustDecodeBounds = true;
       BitmapFactory.decodeFile(inPath, bmOptions);
+      int inWidth = bmOptions.outWidth;
+      int inHeight = bmOptions.outHeight;
 
-      if( bmOptions.outWidth<1 || bmOptions.outHeight<1
-       || (bmOptions.outWidth <= desiredWH && bmOptions.outHeight <= desiredWH)) {
+      if( inWidth<1 || inHeight<1
+       || (inWidth <= desiredWH && inHeight <= desiredWH)) {
         Log.i(TAG, String.format("recoding of %s not needed, image is small enough", inPath));
         return;
       }
 
-      float scaleFactor = Math.min((float)desiredWH/(float)bmOptions.outWidth, (float)desiredWH/(float)bmOptions.outHeight);
-      matrix.postScale(scaleFactor, scaleFactor);
-
-      // find out rotating
-      {
-        android.media.ExifInterface exif;
-        try {
-          exif = new android.media.ExifInterface(inPath);
-          int orientation = exif.getAttributeInt(android.media.ExifInterface.TAG_ORIENTATION, 1);
-          switch (orientation) {
-            case android.media.ExifInterface.ORIENTATION_ROTATE_90:
-              matrix.postRotate(90);
-              break;
-            case android.media.ExifInterface.ORIENTATION_ROTATE_180:
-              matrix.postRotate(180);
-              break;
-            case android.media.ExifInterface.ORIENTATION_ROTATE_270:
-              matrix.postRotate(270);
-              break;
+      float scaleFactor = Math.min((float)desiredWH/(float)inWidth, (float)desiredWH/(float)inHeight);
+      int targetWidth  = Math.max(1, Math.round(inWidth * scaleFactor));
+      int targetHeight = Math.max(1, Math.round(inHeight * scaleFactor));
+      int sampleSize   = calculateInSampleSize(inWidth, inHeight, targetWidth, targetHeight);
+      int rotation     = getExifRotation(inPath);
+      boolean useRegions = (long)inWidth * inHeight >= REGION_DECODE_MIN_PIXELS;
+
+      // upper bound of the memory needed: depending on the android version,
+      // the decoder may allocate the subsampled image before scaling it to the target size;
+      // in region mode, there is the target and one strip.
+      // a rotated copy of the target is needed in addition.
+      long targetBytes = (long)targetWidth * targetHeight * 4;
+      long peakBytes = useRegions? targetBytes + REGION_STRIP_MAX_BYTES
+                                 : Math.max(targetBytes, (long)(inWidth / sampleSize) * (inHeight / sampleSize) * 4);
+      if (rotation != 0) {
+        peakBytes += targetBytes;
+      }
+
+      int acquiredKb = acquireRecodeMemory(context, peakBytes);
+      try {
+        Bitmap outBitmap = null;
+        if (useRegions) {
+          outBitmap = decodeByRegions(inPath, inWidth, inHeight, targetWidth, targetHeight, sampleSize);
+        }
+        if (outBitmap == null) {
+          useRegions = false;
+          outBitmap = decodeScaled(inPath, inWidth, targetWidth, sampleSize);
+        }
+        if (outBitmap == null) {
+          Log.w(TAG, String.format("cannot decode %s", inPath));
+          return;
+        }
+
+        if (rotation != 0) {
+          Matrix matrix = new Matrix();
+          matrix.postRotate(rotation);
+          Bitmap rotated = Bitmap.createBitmap(outBitmap, 0, 0, outBitmap.getWidth(), outBitmap.getHeight(), matrix, false);
+          if (rotated != outBitmap) {
+            outBitmap.recycle();
+            outBitmap = rotated;
+          }
+        }
+
+        String outPath = DcHelper.getContext(context).getBlobdirFile(inPath);
+        try (FileOutputStream outStream = new FileOutputStream(outPath)) {
+          if (!outBitmap.compress(Bitmap.CompressFormat.JPEG, desiredJpegQuality, outStream)) {
+            return;
           }
-        } catch (Throwable e) {
-          Log.i(TAG, String.format("cannot get exif information for %s", inPath));
         }
+
+        msg.setDimension(outBitmap.getWidth(), outBitmap.getHeight());
+        msg.setFile(outPath, null);
+        Log.i(TAG, String.format(Locale.US, "recoding for %s done: %dx%d -> %dx%d, sampleSize=%d, regions=%b, peak=%dKB, %dms",
+            inPath, inWidth, inHeight, outBitmap.getWidth(), outBitmap.getHeight(),
+            sampleSize, useRegions, peakBytes / 1024, System.currentTimeMillis() - startTime));
+        outBitmap.recycle();
+      } finally {
+        recodeBudget.release(acquiredKb);
       }
+    }
+    catch(Exception e) {
+      e.printStackTrace();
+    }
+  }
 
-      // recode file
-      Bitmap inBitmap = BitmapFactory.decodeFile(inPath, null);
-      Bitmap outBitmap = Bitmap.createBitmap(inBitmap, 0, 0, inBitmap.getWidth(), inBitmap.getHeight(), matrix, false);
-      inBitmap.recycle();
+  /**
+   * @return the largest power of two the image can be subsampled with
+   * without getting smaller than the target size.
+   */
+  private static int calculateInSampleSize(int width, int height, int targetWidth, int targetHeight) {
+    int sampleSize = 1;
+    while (width / (sampleSize * 2) >= targetWidth && height / (sampleSize * 2) >= targetHeight) {
+      sampleSize *= 2;
+    }
+    return sampleSize;
+  }
 
-      String outPath = DcHelper.getContext(context).getBlobdirFile(inPath);
-      FileOutputStream outStream = new FileOutputStream(outPath);
-      if(!outBitmap.compress(Bitmap.CompressFormat.JPEG, desiredJpegQuality, outStream)) {
-        return;
+  private static int getExifRotation(String path) {
+    try {
+      android.media.ExifInterface exif = new android.media.ExifInterface(path);
+      int orientation = exif.getAttributeInt(android.media.ExifInterface.TAG_ORIENTATION, 1);
+      switch (orientation) {
+        case android.media.ExifInterface.ORIENTATION_ROTATE_90:  return 90;
+        case android.media.ExifInterface.ORIENTATION_ROTATE_180: return 180;
+        case android.media.ExifInterface.ORIENTATION_ROTATE_270: return 270;
       }
+    } catch (Throwable e) {
+      Log.i(TAG, String.format("cannot get exif information for %s", path));
+    }
+    return 0;
+  }
+
+  /**
+   * Decodes the image subsampled and lets the decoder scale the rest of the way to the target width,
+   * so that no bitmap larger than the target size is allocated.
+   */
+  private static @Nullable Bitmap decodeScaled(String path, int width, int targetWidth, int sampleSize) {
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inSampleSize = sampleSize;
+    int sampledWidth = width / sampleSize;
+    if (sampledWidth > targetWidth) {
+      options.inScaled = true;
+      options.inDensity = sampledWidth;
+      options.inTargetDensity = targetWidth;
+    }
+    return BitmapFactory.decodeFile(path, options);
+  }
 
-      msg.setDimension(outBitmap.getWidth(), outBitmap.getHeight());
-      msg.setFile(outPath, null);
-      outBitmap.recycle();
+  /**
+   * Decodes the image in horizontal strips and draws them scaled into the target bitmap,
+   * so that only one subsampled strip is in memory besides the target.
+   *
+   * @return null if the image format is not supported by BitmapRegionDecoder.
+   */
+  private static @Nullable Bitmap decodeByRegions(String path, int width, int height, int targetWidth, int targetHeight, int sampleSize) {
+    BitmapRegionDecoder decoder;
+    try {
+      decoder = BitmapRegionDecoder.newInstance(path, false);
+    } catch (IOException e) {
+      Log.i(TAG, String.format("cannot decode %s by regions, falling back to full decoding", path));
+      return null;
+    }
 
-      Log.i(TAG, String.format("recoding for %s done", inPath));
+    try {
+      Bitmap target = Bitmap.createBitmap(targetWidth, targetHeight, Bitmap.Config.ARGB_8888);
+      Canvas canvas = new Canvas(target);
+      Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+      int stripHeight = Math.max(1, REGION_STRIP_MAX_BYTES / (Math.max(1, width / sampleSize) * 4)) * sampleSize;
+      float scaleY = (float)targetHeight / height;
+
+      BitmapFactory.Options options = new BitmapFactory.Options();
+      options.inSampleSize = sampleSize;
+      for (int top = 0; top < height; top += stripHeight) {
+        int bottom = Math.min(height, top + stripHeight);
+        Bitmap strip = decoder.decodeRegion(new Rect(0, top, width, bottom), options);
+        if (strip == null) {
+          target.recycle();
+          return null;
+        }
+        canvas.drawBitmap(strip, null, new RectF(0, top * scaleY, targetWidth, bottom * scaleY), paint);
+        strip.recycle();
+      }
+      return target;
+    } finally {
+      decoder.recycle();
     }
-    catch(Exception e) {
-      e.printStackTrace();
+  }
+
+  /**
+   * Blocks until the given number of bytes fits into the memory budget for recoding.
+   * A single image larger than the whole budget is recoded when no other image is recoded.
+   *
+   * @return the number of KB acquired; to be released on recodeBudget.
+   */
+  private static int acquireRecodeMemory(Context context, long bytes) {
+    synchronized (BitmapUtil.class) {
+      if (recodeBudget == null) {
+        // a quarter of the app's heap, leaving room for the UI and for glide
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        recodeBudgetKb = activityManager.getMemoryClass() * 1024 / 4;
+        recodeBudget = new Semaphore(recodeBudgetKb, true);
+      }
     }
+    int kb = (int) Math.min(recodeBudgetKb, (bytes + 1023) / 1024);
+    recodeBudget.acquireUninterruptibly(kb);
+    return kb;
   }
 
 
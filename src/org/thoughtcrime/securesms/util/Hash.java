@@ -8,11 +8,34 @@ import java.security.NoSuchAlgorithmException;
 public class Hash {
 
     public static String sha256(String input) {
+        byte[] digest = sha256Digest(input);
+        if (digest == null) {
+            return null;
+        }
+        return String.format("%064x", new BigInteger(1, digest));
+    }
+
+    /**
+     * @return the first 64 bits of the SHA-256 digest, this is the same as
+     *         the first 16 hex digits of sha256(); 0 if SHA-256 is not available.
+     */
+    public static long sha256Prefix(String input) {
+        byte[] digest = sha256Digest(input);
+        if (digest == null) {
+            return 0;
+        }
+        long prefix = 0;
+        for (int i = 0; i < 8; i++) {
+            prefix = (prefix << 8) | (digest[i] & 0xff);
+        }
+        return prefix;
+    }
+
+    private static byte[] sha256Digest(String input) {
         try {
             MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
             messageDigest.update(input.getBytes(Charset.forName("UTF-8")));
-            byte[] digest = messageDigest.digest();
-            return String.format("%064x", new BigInteger(1, digest));
+            return messageDigest.digest();
         } catch (NoSuchAlgorithmException e) {
             e.printStackTrace();
         }
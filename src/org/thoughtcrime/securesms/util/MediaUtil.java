@@ -1,8 +1,6 @@
 package org.thoughtcrime.securesms.util;
 
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.media.MediaMetadataRetriever;
 import android.net.Uri;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -29,9 +27,7 @@ import org.thoughtcrime.securesms.mms.Slide;
 import org.thoughtcrime.securesms.mms.VideoSlide;
 import org.thoughtcrime.securesms.providers.PersistentBlobProvider;
 
-import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.concurrent.ExecutionException;
@@ -251,36 +247,6 @@ public class MediaUtil {
     public int height;
   }
 
-  public static boolean createVideoThumbnailIfNeeded(Context context, Uri dataUri, Uri thumbnailUri, ThumbnailSize retWh) {
-    boolean success = false;
-    try {
-      File thumbnailFile = new File(thumbnailUri.getPath());
-      File dataFile = new File(dataUri.getPath());
-      if (!thumbnailFile.exists() || dataFile.lastModified()>thumbnailFile.lastModified()) {
-        Bitmap bitmap = null;
-
-        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
-        retriever.setDataSource(context, dataUri);
-        bitmap = retriever.getFrameAtTime(-1);
-        if (retWh!=null) {
-          retWh.width = bitmap.getWidth();
-          retWh.height = bitmap.getHeight();
-        }
-        retriever.release();
-
-        if (bitmap != null) {
-          FileOutputStream out = new FileOutputStream(thumbnailFile);
-          bitmap.compress(Bitmap.CompressFormat.JPEG, 90, out);
-          success = true;
-        }
-      }
-    }
-    catch (Exception e) {
-      e.printStackTrace();
-    }
-    return success;
-  }
-
   public static String getExtensionFromMimeType(String contentType) {
     String extension =  MimeTypeMap.getSingleton().getExtensionFromMimeType(contentType);
     if (extension != null) {
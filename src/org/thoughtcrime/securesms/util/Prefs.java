@@ -1,12 +1,10 @@
 package org.thoughtcrime.securesms.util;
 
-import android.content.ContentUris;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.hardware.Camera.CameraInfo;
 import android.net.Uri;
 import android.preference.PreferenceManager;
-import android.provider.ContactsContract;
 import android.provider.Settings;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -16,10 +14,8 @@ import com.mapbox.mapboxsdk.geometry.LatLng;
 
 import org.thoughtcrime.securesms.preferences.widgets.NotificationPrivacyPreference;
 
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Set;
 
 import static com.mapbox.mapboxsdk.constants.MapboxConstants.MINIMUM_ZOOM;
@@ -357,20 +353,16 @@ public class Prefs {
     }
   }
 
-  public static void setSystemContactPhotos(Context context, Set<String> contactPhotoIdentifiers) {
-    PreferenceManager.getDefaultSharedPreferences(context).edit().putStringSet(PREF_CONTACT_PHOTO_IDENTIFIERS, contactPhotoIdentifiers).apply();
+  /**
+   * The system contact photos were indexed here before the SystemContactPhotoIndex existed;
+   * only used to migrate to the index.
+   */
+  public static Set<String> getLegacySystemContactPhotos(Context context) {
+    return getStringSetPreference(context, PREF_CONTACT_PHOTO_IDENTIFIERS, new HashSet<>());
   }
 
-  public static Uri getSystemContactPhoto(Context context, String identifier) {
-    List<String> contactPhotoIdentifiers = new ArrayList<>(getStringSetPreference(context, PREF_CONTACT_PHOTO_IDENTIFIERS, new HashSet<>()));
-    for(String contactPhotoIdentifier : contactPhotoIdentifiers) {
-      if (contactPhotoIdentifier.contains(identifier)) {
-        String[] parts = contactPhotoIdentifier.split("\\|");
-        long contactId = Long.valueOf(parts[1]);
-        return ContentUris.withAppendedId(ContactsContract.Contacts.CONTENT_URI, contactId);
-      }
-    }
-    return null;
+  public static void removeLegacySystemContactPhotos(Context context) {
+    removePreference(context, PREF_CONTACT_PHOTO_IDENTIFIERS);
   }
 
 }
\ No newline at end of file
@@ -19,6 +19,11 @@ package org.thoughtcrime.securesms.util;
 
 import android.util.Log;
 
+import androidx.annotation.NonNull;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -43,22 +48,55 @@ public class Scrubber {
   }
 
   public String scrub(final String in) {
-    Log.d(TAG, "scrubbing input");
     String out = in;
     for (Pattern pattern : patterns) {
       Matcher matcher = pattern.matcher(out);
-      while (matcher.find()) {
+      if (!matcher.find()) {
+        continue;
+      }
 
-        StringBuilder builder = new StringBuilder(out.substring(0, matcher.start()));
-        final String censored = matcher.group().substring(0,1)                                      +
-                                new String(new char[matcher.group().length()-3]).replace("\0", "*") +
-                                matcher.group().substring(matcher.group().length()-2);
+      // a single pass over the input, matches are found on the original string
+      StringBuilder builder = new StringBuilder(out.length());
+      int           last    = 0;
+      do {
+        final String match    = matcher.group();
+        final String censored = censor(match);
+        builder.append(out, last, matcher.start());
         builder.append(censored);
-        builder.append(out.substring(matcher.end()));
+        last = matcher.end();
         Log.i(TAG, "replacing a match on /" + pattern.toString() + "/ => " + censored);
-        out = builder.toString();
-      }
+      } while (matcher.find());
+      builder.append(out, last, out.length());
+      out = builder.toString();
     }
     return out;
   }
+
+  /**
+   * Scrubs the lines of the reader one by one and writes them to the writer,
+   * so that large logs do not need to be held in memory.
+   * None of the patterns can match across lines.
+   *
+   * @return the number of lines written.
+   */
+  public int scrub(@NonNull BufferedReader in, @NonNull Writer out) throws IOException {
+    int    count = 0;
+    String line;
+    while ((line = in.readLine()) != null) {
+      out.write(scrub(line));
+      out.write('\n');
+      count++;
+    }
+    return count;
+  }
+
+  private static String censor(String match) {
+    StringBuilder builder = new StringBuilder(match.length());
+    builder.append(match.charAt(0));
+    for (int i = 0; i < match.length() - 3; i++) {
+      builder.append('*');
+    }
+    builder.append(match, match.length() - 2, match.length());
+    return builder.toString();
+  }
 }
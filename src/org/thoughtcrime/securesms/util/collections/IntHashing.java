@@ -0,0 +1,40 @@
+package org.thoughtcrime.securesms.util.collections;
+
+/**
+ * Hashing and sizing shared by the open addressing tables in this package.
+ */
+final class IntHashing {
+
+  static final int MAX_TABLE_SIZE = 1 << 30;
+
+  private IntHashing() {}
+
+  /**
+   * Ids are mostly consecutive numbers, they are spread over the table
+   * so that linear probing does not run into long clusters.
+   */
+  static int mix(int key) {
+    int h = key * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * @return the power of two table size that holds the given number of keys
+   *         with a load factor of at most 0.75.
+   */
+  static int tableSizeFor(int expectedSize) {
+    long minSize = Math.max(4, (long) expectedSize * 4 / 3 + 1);
+    if (minSize >= MAX_TABLE_SIZE) {
+      return MAX_TABLE_SIZE;
+    }
+    return Integer.highestOneBit((int) minSize - 1) << 1;
+  }
+
+  /**
+   * Checks if the entry at slot `to` can be moved back to the free slot `from`
+   * when deleting with backward shifting, that is, if its home slot is not between them.
+   */
+  static boolean canShift(int home, int from, int to, int mask) {
+    return ((to - home) & mask) >= ((to - from) & mask);
+  }
+}
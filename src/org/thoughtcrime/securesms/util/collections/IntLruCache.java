@@ -0,0 +1,216 @@
+package org.thoughtcrime.securesms.util.collections;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * A cache for a fixed number of objects by int key, dropping the least recently used entry when full.
+ *
+ * All memory is allocated upfront: the entries are nodes in preallocated arrays, linked in the
+ * order of use, and an open addressing table maps the keys to the nodes.
+ * So unlike a LinkedHashMap, neither get() nor put() allocate anything.
+ *
+ * The cache is not thread safe, callers that share it between threads have to synchronize on it.
+ */
+public class IntLruCache<V> {
+
+  private static final int NONE = -1;
+
+  private final int maxSize;
+
+  // the nodes, linked from the most recently used at head to the least recently used at tail
+  private final int[]    nodeKeys;
+  private final Object[] nodeValues;
+  private final int[]    prev;
+  private final int[]    next;
+  private       int      head = NONE;
+  private       int      tail = NONE;
+
+  // unused nodes, as a stack
+  private final int[] free;
+  private       int   freeCount;
+
+  // maps the keys to node + 1, 0 marks a free slot;
+  // the keys are repeated in the table, so that probing does not need to look at the nodes.
+  // as the cache is always full after a while, the table is kept at most 3/8 full to keep the probes short.
+  private final int[] table;
+  private final int[] tableKeys;
+  private final int   mask;
+
+  private int size;
+
+  public IntLruCache(int maxSize) {
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("maxSize must be positive");
+    }
+
+    this.maxSize    = maxSize;
+    this.nodeKeys   = new int[maxSize];
+    this.nodeValues = new Object[maxSize];
+    this.prev       = new int[maxSize];
+    this.next       = new int[maxSize];
+    this.free       = new int[maxSize];
+    this.table      = new int[IntHashing.tableSizeFor(maxSize * 2)];
+    this.tableKeys  = new int[table.length];
+    this.mask       = table.length - 1;
+    resetFreeNodes();
+  }
+
+  private void resetFreeNodes() {
+    for (int i = 0; i < maxSize; i++) {
+      free[i] = maxSize - 1 - i;
+    }
+    freeCount = maxSize;
+  }
+
+  private int slotOf(int key) {
+    int i = IntHashing.mix(key) & mask;
+    while (table[i] != 0) {
+      if (tableKeys[i] == key) {
+        return i;
+      }
+      i = (i + 1) & mask;
+    }
+    return -1;
+  }
+
+  /**
+   * @return the value for the key or null if it is not in the cache; a found entry becomes the most recently used one.
+   */
+  @SuppressWarnings("unchecked")
+  public @Nullable V get(int key) {
+    int slot = slotOf(key);
+    if (slot < 0) {
+      return null;
+    }
+    int node = table[slot] - 1;
+    moveToHead(node);
+    return (V) nodeValues[node];
+  }
+
+  /**
+   * @return true if the key is in the cache, without changing the order of use.
+   */
+  public boolean containsKey(int key) {
+    return slotOf(key) >= 0;
+  }
+
+  /**
+   * Adds or replaces the value for the key as the most recently used entry,
+   * dropping the least recently used entry if the cache is full.
+   */
+  public void put(int key, @NonNull V value) {
+    if (value == null) {
+      throw new NullPointerException("null values are not supported");
+    }
+
+    int slot = slotOf(key);
+    if (slot >= 0) {
+      int node = table[slot] - 1;
+      nodeValues[node] = value;
+      moveToHead(node);
+      return;
+    }
+
+    if (freeCount == 0) {
+      remove(nodeKeys[tail]);
+    }
+
+    int node = free[--freeCount];
+    nodeKeys[node]   = key;
+    nodeValues[node] = value;
+    linkAtHead(node);
+
+    int i = IntHashing.mix(key) & mask;
+    while (table[i] != 0) {
+      i = (i + 1) & mask;
+    }
+    table[i]     = node + 1;
+    tableKeys[i] = key;
+    size++;
+  }
+
+  /**
+   * @return the removed value or null if the key was not in the cache.
+   */
+  @SuppressWarnings("unchecked")
+  public @Nullable V remove(int key) {
+    int slot = slotOf(key);
+    if (slot < 0) {
+      return null;
+    }
+
+    int node  = table[slot] - 1;
+    V   value = (V) nodeValues[node];
+    removeSlot(slot);
+    unlink(node);
+    nodeValues[node] = null;
+    free[freeCount++] = node;
+    size--;
+    return value;
+  }
+
+  private void removeSlot(int freeSlot) {
+    table[freeSlot] = 0;
+    for (int i = (freeSlot + 1) & mask; table[i] != 0; i = (i + 1) & mask) {
+      int home = IntHashing.mix(tableKeys[i]) & mask;
+      if (IntHashing.canShift(home, freeSlot, i, mask)) {
+        table[freeSlot]     = table[i];
+        tableKeys[freeSlot] = tableKeys[i];
+        table[i]            = 0;
+        freeSlot            = i;
+      }
+    }
+  }
+
+  private void moveToHead(int node) {
+    if (node != head) {
+      unlink(node);
+      linkAtHead(node);
+    }
+  }
+
+  private void linkAtHead(int node) {
+    prev[node] = NONE;
+    next[node] = head;
+    if (head != NONE) {
+      prev[head] = node;
+    }
+    head = node;
+    if (tail == NONE) {
+      tail = node;
+    }
+  }
+
+  private void unlink(int node) {
+    if (prev[node] != NONE) {
+      next[prev[node]] = next[node];
+    } else {
+      head = next[node];
+    }
+    if (next[node] != NONE) {
+      prev[next[node]] = prev[node];
+    } else {
+      tail = prev[node];
+    }
+  }
+
+  public void clear() {
+    Arrays.fill(table, 0);
+    Arrays.fill(nodeValues, null);
+    head = NONE;
+    tail = NONE;
+    size = 0;
+    resetFreeNodes();
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public int maxSize() {
+    return maxSize;
+  }
+}
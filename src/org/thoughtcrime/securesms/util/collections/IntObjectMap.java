@@ -0,0 +1,206 @@
+package org.thoughtcrime.securesms.util.collections;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A map from int keys to objects, without boxing the keys.
+ *
+ * Keys and values are kept in two arrays using open addressing with linear probing;
+ * deleted entries are removed by shifting the following entries back, so there are no tombstones.
+ * Null values are not allowed, a null in the values array marks a free slot.
+ *
+ * The map is not thread safe, callers that share it between threads have to synchronize on it.
+ */
+public class IntObjectMap<V> {
+
+  public interface EntryConsumer<V> {
+    void accept(int key, @NonNull V value);
+  }
+
+  private int[]    keys;
+  private Object[] values;
+  private int      mask;
+  private int      size;
+  private int      resizeThreshold;
+
+  public IntObjectMap() {
+    this(8);
+  }
+
+  public IntObjectMap(int expectedSize) {
+    allocate(IntHashing.tableSizeFor(expectedSize));
+  }
+
+  private void allocate(int tableSize) {
+    keys            = new int[tableSize];
+    values          = new Object[tableSize];
+    mask            = tableSize - 1;
+    resizeThreshold = tableSize / 4 * 3;
+  }
+
+  private int indexOf(int key) {
+    int i = IntHashing.mix(key) & mask;
+    while (values[i] != null) {
+      if (keys[i] == key) {
+        return i;
+      }
+      i = (i + 1) & mask;
+    }
+    return -1;
+  }
+
+  @SuppressWarnings("unchecked")
+  public @Nullable V get(int key) {
+    int i = indexOf(key);
+    return i >= 0 ? (V) values[i] : null;
+  }
+
+  public boolean containsKey(int key) {
+    return indexOf(key) >= 0;
+  }
+
+  /**
+   * @return the previous value for the key or null if there was none.
+   */
+  @SuppressWarnings("unchecked")
+  public @Nullable V put(int key, @NonNull V value) {
+    if (value == null) {
+      throw new NullPointerException("null values are not supported");
+    }
+
+    int i = IntHashing.mix(key) & mask;
+    while (values[i] != null) {
+      if (keys[i] == key) {
+        V previous = (V) values[i];
+        values[i] = value;
+        return previous;
+      }
+      i = (i + 1) & mask;
+    }
+
+    keys[i]   = key;
+    values[i] = value;
+    if (++size > resizeThreshold) {
+      rehash(keys.length * 2);
+    }
+    return null;
+  }
+
+  /**
+   * @return the current value for the key; if there is none, the given value is added and null is returned.
+   */
+  public @Nullable V putIfAbsent(int key, @NonNull V value) {
+    V current = get(key);
+    if (current == null) {
+      put(key, value);
+    }
+    return current;
+  }
+
+  @SuppressWarnings("unchecked")
+  public @Nullable V remove(int key) {
+    int i = indexOf(key);
+    if (i < 0) {
+      return null;
+    }
+    V previous = (V) values[i];
+    removeAt(i);
+    return previous;
+  }
+
+  private void removeAt(int free) {
+    values[free] = null;
+    size--;
+
+    for (int i = (free + 1) & mask; values[i] != null; i = (i + 1) & mask) {
+      int home = IntHashing.mix(keys[i]) & mask;
+      if (IntHashing.canShift(home, free, i, mask)) {
+        keys[free]   = keys[i];
+        values[free] = values[i];
+        values[i]    = null;
+        free         = i;
+      }
+    }
+  }
+
+  private void rehash(int tableSize) {
+    if (tableSize > IntHashing.MAX_TABLE_SIZE) {
+      throw new IllegalStateException("map too large");
+    }
+
+    int[]    oldKeys   = keys;
+    Object[] oldValues = values;
+    allocate(tableSize);
+
+    for (int j = 0; j < oldValues.length; j++) {
+      if (oldValues[j] != null) {
+        int i = IntHashing.mix(oldKeys[j]) & mask;
+        while (values[i] != null) {
+          i = (i + 1) & mask;
+        }
+        keys[i]   = oldKeys[j];
+        values[i] = oldValues[j];
+      }
+    }
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public void clear() {
+    if (size > 0) {
+      Arrays.fill(values, null);
+      size = 0;
+    }
+  }
+
+  /**
+   * @return a copy of the keys in no particular order.
+   */
+  public @NonNull int[] keys() {
+    int[] result = new int[size];
+    int   count  = 0;
+    for (int i = 0; i < values.length; i++) {
+      if (values[i] != null) {
+        result[count++] = keys[i];
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return a copy of the values in no particular order.
+   */
+  @SuppressWarnings("unchecked")
+  public @NonNull List<V> values() {
+    List<V> result = new ArrayList<>(size);
+    for (Object value : values) {
+      if (value != null) {
+        result.add((V) value);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Calls the consumer for all entries; the map must not be modified meanwhile.
+   */
+  @SuppressWarnings("unchecked")
+  public void forEach(@NonNull EntryConsumer<? super V> consumer) {
+    for (int i = 0; i < values.length; i++) {
+      if (values[i] != null) {
+        consumer.accept(keys[i], (V) values[i]);
+      }
+    }
+  }
+}
@@ -0,0 +1,201 @@
+package org.thoughtcrime.securesms.util.collections;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * A set of ints, without boxing.
+ *
+ * The values are kept in a single array using open addressing with linear probing;
+ * 0 marks a free slot, so whether 0 itself is in the set is tracked separately.
+ * Deleted values are removed by shifting the following values back, so there are no tombstones.
+ *
+ * The set is not thread safe, callers that share it between threads have to synchronize on it.
+ */
+public class IntSet {
+
+  public interface Consumer {
+    void accept(int value);
+  }
+
+  private static final int FREE = 0;
+
+  private int[]   table;
+  private int     mask;
+  private int     size;
+  private int     resizeThreshold;
+  private boolean containsFree;
+
+  public IntSet() {
+    this(8);
+  }
+
+  public IntSet(int expectedSize) {
+    allocate(IntHashing.tableSizeFor(expectedSize));
+  }
+
+  public IntSet(@NonNull int[] values) {
+    this(values.length);
+    addAll(values);
+  }
+
+  private void allocate(int tableSize) {
+    table           = new int[tableSize];
+    mask            = tableSize - 1;
+    resizeThreshold = tableSize / 4 * 3;
+  }
+
+  public boolean contains(int value) {
+    if (value == FREE) {
+      return containsFree;
+    }
+
+    int i = IntHashing.mix(value) & mask;
+    while (table[i] != FREE) {
+      if (table[i] == value) {
+        return true;
+      }
+      i = (i + 1) & mask;
+    }
+    return false;
+  }
+
+  /**
+   * @return true if the value was not in the set before.
+   */
+  public boolean add(int value) {
+    if (value == FREE) {
+      if (containsFree) {
+        return false;
+      }
+      containsFree = true;
+      size++;
+      return true;
+    }
+
+    int i = IntHashing.mix(value) & mask;
+    while (table[i] != FREE) {
+      if (table[i] == value) {
+        return false;
+      }
+      i = (i + 1) & mask;
+    }
+
+    table[i] = value;
+    if (++size > resizeThreshold) {
+      rehash(table.length * 2);
+    }
+    return true;
+  }
+
+  public void addAll(@NonNull int[] values) {
+    for (int value : values) {
+      add(value);
+    }
+  }
+
+  /**
+   * @return true if the value was in the set.
+   */
+  public boolean remove(int value) {
+    if (value == FREE) {
+      if (!containsFree) {
+        return false;
+      }
+      containsFree = false;
+      size--;
+      return true;
+    }
+
+    int i = IntHashing.mix(value) & mask;
+    while (table[i] != value) {
+      if (table[i] == FREE) {
+        return false;
+      }
+      i = (i + 1) & mask;
+    }
+    removeAt(i);
+    return true;
+  }
+
+  private void removeAt(int free) {
+    table[free] = FREE;
+    size--;
+
+    for (int i = (free + 1) & mask; table[i] != FREE; i = (i + 1) & mask) {
+      int home = IntHashing.mix(table[i]) & mask;
+      if (IntHashing.canShift(home, free, i, mask)) {
+        table[free] = table[i];
+        table[i]    = FREE;
+        free        = i;
+      }
+    }
+  }
+
+  private void rehash(int tableSize) {
+    if (tableSize > IntHashing.MAX_TABLE_SIZE) {
+      throw new IllegalStateException("set too large");
+    }
+
+    int[] oldTable = table;
+    allocate(tableSize);
+
+    for (int value : oldTable) {
+      if (value != FREE) {
+        int i = IntHashing.mix(value) & mask;
+        while (table[i] != FREE) {
+          i = (i + 1) & mask;
+        }
+        table[i] = value;
+      }
+    }
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public void clear() {
+    if (size > 0) {
+      Arrays.fill(table, FREE);
+      containsFree = false;
+      size = 0;
+    }
+  }
+
+  /**
+   * @return a copy of the values in no particular order.
+   */
+  public @NonNull int[] toArray() {
+    int[] result = new int[size];
+    int   count  = 0;
+    if (containsFree) {
+      result[count++] = FREE;
+    }
+    for (int value : table) {
+      if (value != FREE) {
+        result[count++] = value;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Calls the consumer for all values; the set must not be modified meanwhile.
+   */
+  public void forEach(@NonNull Consumer consumer) {
+    if (containsFree) {
+      consumer.accept(FREE);
+    }
+    for (int value : table) {
+      if (value != FREE) {
+        consumer.accept(value);
+      }
+    }
+  }
+}
@@ -0,0 +1,263 @@
+package org.thoughtcrime.securesms.video;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.media.MediaMetadataRetriever;
+import android.net.Uri;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import org.thoughtcrime.securesms.util.Hash;
+import org.thoughtcrime.securesms.util.MediaUtil.ThumbnailSize;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Thumbnails of videos, stored in the cache dir.
+ *
+ * The file name of a thumbnail is the hash of path, size and modification time of the video,
+ * so a changed video gets a new thumbnail and thumbnails of different videos never overwrite each other.
+ * Frames are extracted scaled down to MAX_EDGE pixels.
+ *
+ * The modification time of a thumbnail is set on each use,
+ * when the thumbnails exceed MAX_CACHE_BYTES, the least recently used ones are deleted.
+ */
+public class VideoThumbnailCache {
+
+  private static final String TAG = VideoThumbnailCache.class.getSimpleName();
+
+  private static final String DIRECTORY = "video_thumbnails";
+
+  private static final int  MAX_EDGE        = 720;
+  private static final int  JPEG_QUALITY    = 85;
+  private static final long MAX_CACHE_BYTES = 20 * 1024 * 1024;
+
+  private static volatile VideoThumbnailCache instance;
+
+  private final File directory;
+
+  // bytes used by the thumbnails, -1 until the directory was scanned
+  private long cacheBytes = -1;
+
+  private VideoThumbnailCache(@NonNull Context context) {
+    this.directory = new File(context.getCacheDir(), DIRECTORY);
+  }
+
+  public static VideoThumbnailCache getInstance(@NonNull Context context) {
+    if (instance == null) {
+      synchronized (VideoThumbnailCache.class) {
+        if (instance == null) {
+          instance = new VideoThumbnailCache(context.getApplicationContext());
+        }
+      }
+    }
+    return instance;
+  }
+
+  /**
+   * @return the uri the thumbnail of the video has or will have; this does not create the thumbnail.
+   */
+  public @NonNull Uri getThumbnailUri(@NonNull Uri videoUri) {
+    return Uri.fromFile(getThumbnailFile(videoUri));
+  }
+
+  private @NonNull File getThumbnailFile(@NonNull Uri videoUri) {
+    String key;
+    if (ContentResolver.SCHEME_FILE.equals(videoUri.getScheme()) && videoUri.getPath() != null) {
+      File videoFile = new File(videoUri.getPath());
+      key = videoFile.getAbsolutePath() + "|" + videoFile.length() + "|" + videoFile.lastModified();
+    } else {
+      key = videoUri.toString();
+    }
+    return new File(directory, Hash.sha256(key) + ".jpg");
+  }
+
+  /**
+   * Extracts the thumbnail if it is not in the cache yet.
+   *
+   * @return true if the thumbnail is available at getThumbnailUri()
+   */
+  @WorkerThread
+  public boolean createThumbnailIfNeeded(@NonNull Context context, @NonNull Uri videoUri) {
+    File thumbnailFile = getThumbnailFile(videoUri);
+    if (thumbnailFile.exists()) {
+      thumbnailFile.setLastModified(System.currentTimeMillis());
+      return true;
+    }
+
+    Bitmap bitmap = extractScaledFrame(context, videoUri);
+    if (bitmap == null) {
+      return false;
+    }
+
+    File tempFile = null;
+    try {
+      if (!directory.exists() && !directory.mkdirs()) {
+        Log.w(TAG, "cannot create " + directory);
+        return false;
+      }
+      // extracting the same video twice at the same time must not mix up the files
+      tempFile = File.createTempFile("thumbnail", ".tmp", directory);
+      try (FileOutputStream out = new FileOutputStream(tempFile)) {
+        bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+      }
+      if (!tempFile.renameTo(thumbnailFile)) {
+        Log.w(TAG, "cannot move thumbnail to " + thumbnailFile);
+        return thumbnailFile.exists();
+      }
+      added(thumbnailFile.length());
+      return true;
+    } catch (IOException e) {
+      Log.w(TAG, "cannot write thumbnail", e);
+      return false;
+    } finally {
+      bitmap.recycle();
+      if (tempFile != null) {
+        tempFile.delete();
+      }
+    }
+  }
+
+  private static @Nullable Bitmap extractScaledFrame(@NonNull Context context, @NonNull Uri videoUri) {
+    MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+    try {
+      retriever.setDataSource(context, videoUri);
+
+      ThumbnailSize size = new ThumbnailSize(0, 0);
+      if (Build.VERSION.SDK_INT >= 27 && readVideoSize(retriever, size)) {
+        // the frame is fit into the square, keeping the aspect ratio, whatever the rotation is
+        int edge = Math.min(MAX_EDGE, Math.max(size.width, size.height));
+        return retriever.getScaledFrameAtTime(-1, MediaMetadataRetriever.OPTION_CLOSEST_SYNC, edge, edge);
+      }
+
+      Bitmap frame = retriever.getFrameAtTime(-1);
+      if (frame == null) {
+        return null;
+      }
+      float scale = Math.min(1f, (float) MAX_EDGE / Math.max(frame.getWidth(), frame.getHeight()));
+      if (scale >= 1f) {
+        return frame;
+      }
+      Bitmap scaled = Bitmap.createScaledBitmap(frame,
+                                                Math.max(1, Math.round(frame.getWidth() * scale)),
+                                                Math.max(1, Math.round(frame.getHeight() * scale)),
+                                                true);
+      if (scaled != frame) {
+        frame.recycle();
+      }
+      return scaled;
+    } catch (Exception e) {
+      Log.w(TAG, "cannot extract frame of " + videoUri, e);
+      return null;
+    } finally {
+      retriever.release();
+    }
+  }
+
+  /**
+   * Reads the size of the video as displayed, that is after rotation, without decoding a frame.
+   * If the container does not tell, the aspect ratio of the cached thumbnail is used, if any.
+   *
+   * @return true if the size could be determined
+   */
+  @WorkerThread
+  public boolean readVideoSize(@NonNull Context context, @NonNull Uri videoUri, @NonNull ThumbnailSize retWh) {
+    MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+    try {
+      retriever.setDataSource(context, videoUri);
+      if (readVideoSize(retriever, retWh)) {
+        return true;
+      }
+    } catch (Exception e) {
+      Log.w(TAG, "cannot read size of " + videoUri, e);
+    } finally {
+      retriever.release();
+    }
+
+    File thumbnailFile = getThumbnailFile(videoUri);
+    if (thumbnailFile.exists()) {
+      BitmapFactory.Options options = new BitmapFactory.Options();
+      options.inJustDecodeBounds = true;
+      BitmapFactory.decodeFile(thumbnailFile.getPath(), options);
+      if (options.outWidth > 0 && options.outHeight > 0) {
+        retWh.width  = options.outWidth;
+        retWh.height = options.outHeight;
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean readVideoSize(@NonNull MediaMetadataRetriever retriever, @NonNull ThumbnailSize retWh) {
+    try {
+      int     width    = Integer.parseInt(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_WIDTH));
+      int     height   = Integer.parseInt(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_HEIGHT));
+      String  rotation = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_ROTATION);
+      boolean rotated  = "90".equals(rotation) || "270".equals(rotation);
+      if (width <= 0 || height <= 0) {
+        return false;
+      }
+      retWh.width  = rotated ? height : width;
+      retWh.height = rotated ? width : height;
+      return true;
+    } catch (NumberFormatException e) {
+      return false;
+    }
+  }
+
+  private synchronized void added(long bytes) {
+    if (cacheBytes < 0) {
+      cacheBytes = 0;
+      File[] files = directory.listFiles();
+      if (files != null) {
+        for (File file : files) {
+          cacheBytes += file.length();
+        }
+      }
+    } else {
+      cacheBytes += bytes;
+    }
+
+    if (cacheBytes > MAX_CACHE_BYTES) {
+      trim();
+    }
+  }
+
+  /**
+   * Deletes the least recently used thumbnails until the cache is at 3/4 of its maximum size.
+   */
+  private void trim() {
+    File[] files = directory.listFiles();
+    if (files == null) {
+      return;
+    }
+
+    long[]    lastUsed = new long[files.length];
+    Integer[] order    = new Integer[files.length];
+    for (int i = 0; i < files.length; i++) {
+      lastUsed[i] = files[i].lastModified();
+      order[i]    = i;
+    }
+    Arrays.sort(order, (a, b) -> Long.compare(lastUsed[a], lastUsed[b]));
+
+    int deleted = 0;
+    for (int i = 0; i < order.length && cacheBytes > MAX_CACHE_BYTES / 4 * 3; i++) {
+      File file   = files[order[i]];
+      long length = file.length();
+      if (file.delete()) {
+        cacheBytes -= length;
+        deleted++;
+      }
+    }
+    Log.i(TAG, "deleted " + deleted + " least recently used thumbnails, " + cacheBytes + " bytes left");
+  }
+}
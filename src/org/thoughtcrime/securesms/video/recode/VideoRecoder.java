@@ -772,6 +772,11 @@ public class VideoRecoder {
   // to get a responsive ui, DcChat.prepareMsg() may be called.
   // return: true=video might be prepared, can be sent, false=error
   public static boolean prepareVideo(Context context, int chatId, DcMsg msg) {
+    return prepareVideo(context, chatId, msg, true);
+  }
+
+  // prepareEarly=false skips DcChat.prepareMsg(), eg. if the order of several messages has to be kept.
+  public static boolean prepareVideo(Context context, int chatId, DcMsg msg, boolean prepareEarly) {
 
     try {
       String inPath = msg.getFile();
@@ -844,7 +849,9 @@ public class VideoRecoder {
         msg.setDimension(vei.resultWidth, vei.resultHeight);
       }
       msg.setDuration((int) resultDurationMs);
-      DcHelper.getContext(context).prepareMsg(chatId, msg);
+      if (prepareEarly) {
+        DcHelper.getContext(context).prepareMsg(chatId, msg);
+      }
 
       // calulate bytes
       vei.estimatedBytes = VideoRecoder.calculateEstimatedSize((float) resultDurationMs / vei.originalDurationMs,
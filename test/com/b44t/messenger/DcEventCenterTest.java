@@ -0,0 +1,108 @@
+package com.b44t.messenger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DcEventCenterTest {
+
+  private static final int[] EVENTS = {
+      DcContext.DC_EVENT_MSGS_CHANGED,
+      DcContext.DC_EVENT_INCOMING_MSG,
+      DcContext.DC_EVENT_CHAT_MODIFIED,
+      DcContext.DC_EVENT_CONTACTS_CHANGED,
+  };
+
+  private DcEventCenter eventCenter;
+
+  @Before
+  public void setUp() {
+    eventCenter = new DcEventCenter();
+  }
+
+  @Test
+  public void removeObservers_removesAllEvents() {
+    RecordingDelegate observer = new RecordingDelegate();
+    for (int eventId : EVENTS) {
+      eventCenter.addObserver(eventId, observer);
+    }
+
+    eventCenter.removeObservers(observer);
+
+    for (int eventId : EVENTS) {
+      eventCenter.sendToObservers(eventId, 0, 0);
+    }
+    assertTrue(observer.events.isEmpty());
+  }
+
+  @Test
+  public void removeObservers_keepsOtherObservers() {
+    RecordingDelegate removed = new RecordingDelegate();
+    RecordingDelegate kept    = new RecordingDelegate();
+    for (int eventId : EVENTS) {
+      eventCenter.addObserver(eventId, removed);
+      if (eventId != DcContext.DC_EVENT_INCOMING_MSG) {
+        eventCenter.addObserver(eventId, kept);
+      }
+    }
+
+    eventCenter.removeObservers(removed);
+
+    for (int eventId : EVENTS) {
+      eventCenter.sendToObservers(eventId, 0, 0);
+    }
+    assertTrue(removed.events.isEmpty());
+    assertEquals(EVENTS.length - 1, kept.events.size());
+  }
+
+  @Test
+  public void removeObserver_removesAllChats() {
+    RecordingDelegate observer = new RecordingDelegate();
+    for (int chatId = 10; chatId <= 12; chatId++) {
+      eventCenter.addChatObserver(DcContext.DC_EVENT_MSGS_CHANGED, chatId, observer);
+    }
+
+    eventCenter.removeObserver(DcContext.DC_EVENT_MSGS_CHANGED, observer);
+
+    for (int chatId = 10; chatId <= 12; chatId++) {
+      eventCenter.sendToObservers(DcContext.DC_EVENT_MSGS_CHANGED, chatId, 0);
+    }
+    assertTrue(observer.events.isEmpty());
+  }
+
+  @Test
+  public void removeObserver_keepsOtherEventsAndObservers() {
+    RecordingDelegate removed = new RecordingDelegate();
+    RecordingDelegate kept    = new RecordingDelegate();
+    eventCenter.addObserver(DcContext.DC_EVENT_MSGS_CHANGED, removed);
+    for (int chatId = 10; chatId <= 12; chatId++) {
+      eventCenter.addChatObserver(DcContext.DC_EVENT_MSGS_CHANGED, chatId, removed);
+      eventCenter.addChatObserver(DcContext.DC_EVENT_INCOMING_MSG, chatId, removed);
+    }
+    eventCenter.addChatObserver(DcContext.DC_EVENT_MSGS_CHANGED, 11, kept);
+
+    eventCenter.removeObserver(DcContext.DC_EVENT_MSGS_CHANGED, removed);
+
+    for (int chatId = 10; chatId <= 12; chatId++) {
+      eventCenter.sendToObservers(DcContext.DC_EVENT_MSGS_CHANGED, chatId, 0);
+    }
+    eventCenter.sendToObservers(DcContext.DC_EVENT_INCOMING_MSG, 12, 0);
+    assertEquals(1, removed.events.size());
+    assertEquals(DcContext.DC_EVENT_INCOMING_MSG, (int) removed.events.get(0));
+    assertEquals(1, kept.events.size());
+  }
+
+  private static class RecordingDelegate implements DcEventCenter.DcEventDelegate {
+    final List<Integer> events = new ArrayList<>();
+
+    @Override
+    public void handleEvent(int eventId, Object data1, Object data2) {
+      events.add(eventId);
+    }
+  }
+}
@@ -0,0 +1,64 @@
+# compare two results of `./gradlew -p benchmark jmh`, must be executed from the repo root, needs jq.
+# the time and the allocation per operation are compared,
+# an increase by more than the threshold (default 10%) is marked as a regression.
+#
+# example: tools/compare-benchmarks.sh results-0.950.0.json results-0.960.0.json 5
+
+if [ $# -lt 2 ]
+then
+  echo "Please specify the old and the new results as the first and the second argument."
+  echo "(the results are found in benchmark/build/reports/jmh/)"
+  exit 1
+fi
+
+OLD=$1
+NEW=$2
+THRESHOLD=${3:-10}
+
+# one line per benchmark and parameters: name, time, allocation
+summarize() {
+  jq -r '.[] | [
+    .benchmark + ([.params // {} | to_entries[] | "\(.key)=\(.value)"] | if length > 0 then " (" + join(", ") + ")" else "" end),
+    .primaryMetric.score,
+    (.secondaryMetrics["·gc.alloc.rate.norm"].score // "-")
+  ] | @tsv' "$1" | sed 's/^org\.thoughtcrime\.securesms\.//;s/^com\.b44t\.messenger\.//' | sort
+}
+
+summarize "$OLD" > /tmp/compare-benchmarks-old.tsv
+summarize "$NEW" > /tmp/compare-benchmarks-new.tsv
+
+join -t "$(printf '\t')" /tmp/compare-benchmarks-old.tsv /tmp/compare-benchmarks-new.tsv | awk -F '\t' -v threshold="$THRESHOLD" '
+  function ratio(old, new, zero) {
+    if (old == "-" || new == "-") return "-"
+    if (old < zero) return (new < zero) ? 1 : "new"
+    return new / old
+  }
+  function cell(r) {
+    if (r == "-" || r == "new") return sprintf("%8s", r)
+    return sprintf("%7.2fx", r)
+  }
+  function bytes(b) {
+    return (b == "-") ? sprintf("%12s", b) : sprintf("%12.1f", b)
+  }
+  function worse(r) {
+    return r == "new" || (r != "-" && r > 1 + threshold / 100)
+  }
+  BEGIN {
+    printf "%-100s %10s %10s %8s %12s %12s %8s\n", "benchmark", "old us/op", "new us/op", "time", "old B/op", "new B/op", "alloc"
+  }
+  {
+    time  = ratio($2, $4, 0.000001)
+    alloc = ratio($3, $5, 1)  # less than a byte per operation is noise of the measurement
+    mark  = (worse(time) || worse(alloc)) ? "  <- REGRESSION" : ""
+    if (mark != "") regressions++
+    printf "%-100s %10.3f %10.3f %s %s %s %s%s\n", $1, $2, $4, cell(time), bytes($3), bytes($5), cell(alloc), mark
+  }
+  END {
+    print ""
+    print (regressions ? regressions : 0) " regression(s) above " threshold "%"
+    exit regressions ? 2 : 0
+  }'
+RESULT=$?
+
+rm /tmp/compare-benchmarks-old.tsv /tmp/compare-benchmarks-new.tsv
+exit $RESULT